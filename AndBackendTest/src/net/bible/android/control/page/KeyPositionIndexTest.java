@@ -0,0 +1,104 @@
+package net.bible.android.control.page;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.passage.DefaultLeafKeyList;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.TreeKey;
+
+public class KeyPositionIndexTest extends TestCase {
+
+	// about the size of a large lexicon
+	private static final int NUM_KEYS = 14000;
+
+	public void testTreeKeysWithSameNameAreDistinguished() {
+		TreeKey root = new TreeKey("");
+		TreeKey part1 = new TreeKey("Part 1", root);
+		TreeKey part2 = new TreeKey("Part 2", root);
+		List<Key> keys = new ArrayList<Key>();
+		keys.add(part1);
+		keys.add(new TreeKey("Introduction", part1));
+		keys.add(part2);
+		keys.add(new TreeKey("Introduction", part2));
+
+		KeyPositionIndex index = new KeyPositionIndex(keys);
+		assertEquals(3, index.indexOf(new TreeKey("Introduction", new TreeKey("Part 2", new TreeKey("")))));
+		assertEquals(1, index.indexOf(new TreeKey("Introduction", new TreeKey("Part 1", new TreeKey("")))));
+		// leaf keys match by name alone
+		assertEquals(1, index.indexOf(new DefaultLeafKeyList("Introduction")));
+		assertEquals(-1, index.indexOf(new DefaultLeafKeyList("Preface")));
+		assertEquals(-1, index.indexOf(null));
+	}
+
+	/** every key in a large dictionary, including duplicate names, is found where a scan of the list finds it
+	 */
+	public void testLeafKeysMatchScan() {
+		List<Key> keys = new ArrayList<Key>();
+		for (int i=0; i<NUM_KEYS; i++) {
+			// every 100th key repeats an earlier name
+			keys.add(new DefaultLeafKeyList(i%100==99 ? "G"+(i-50) : "G"+i));
+		}
+		KeyPositionIndex index = new KeyPositionIndex(keys);
+
+		for (Key key : keys) {
+			assertMatchesScan(index, key, keys);
+			assertMatchesScan(index, new DefaultLeafKeyList(key.getName()), keys);
+		}
+		assertMatchesScan(index, new DefaultLeafKeyList("G"+NUM_KEYS), keys);
+		assertMatchesScan(index, new TreeKey("G1"), keys);
+		assertMatchesScan(index, new TreeKey("G1", new TreeKey("")), keys);
+	}
+
+	/** a GenBook's tree and leaf keys are found where a scan of the list finds them
+	 */
+	public void testTreeKeysMatchScan() {
+		TreeKey root = new TreeKey("");
+		List<Key> keys = new ArrayList<Key>();
+		for (int part=1; part<=20; part++) {
+			TreeKey partKey = new TreeKey("Part "+part, root);
+			keys.add(partKey);
+			for (int chapter=1; chapter<=50; chapter++) {
+				// chapter names are repeated in every part
+				TreeKey chapterKey = new TreeKey("Chapter "+chapter, partKey);
+				keys.add(chapterKey);
+				keys.add(new TreeKey("Introduction", chapterKey));
+			}
+		}
+		// the same names without a parent and as leaf keys
+		keys.add(new TreeKey("Part 1"));
+		keys.add(new TreeKey("Appendix"));
+		keys.add(new DefaultLeafKeyList("Chapter 1"));
+		keys.add(new DefaultLeafKeyList("Glossary"));
+		KeyPositionIndex index = new KeyPositionIndex(keys);
+
+		for (Key key : keys) {
+			assertMatchesScan(index, key, keys);
+			assertMatchesScan(index, new DefaultLeafKeyList(key.getName()), keys);
+			assertMatchesScan(index, copy(key), keys);
+		}
+		assertMatchesScan(index, new TreeKey("Glossary"), keys);
+		assertMatchesScan(index, new TreeKey("Chapter 51", new TreeKey("Part 1", new TreeKey(""))), keys);
+		assertMatchesScan(index, new DefaultLeafKeyList("Preface"), keys);
+	}
+
+	private void assertMatchesScan(KeyPositionIndex index, Key key, List<Key> keys) {
+		int expected = TreeKeyHelper.findIndexOf(key, keys);
+		int position = index.indexOf(key);
+		assertEquals("Wrong position for "+key.getName(), expected, position);
+		if (position!=-1) {
+			assertEquals(keys.get(expected).getName(), keys.get(position).getName());
+		}
+	}
+
+	/** a new TreeKey with the same names as a key and its parents
+	 */
+	private static Key copy(Key key) {
+		if (key==null || !(key instanceof TreeKey)) {
+			return key;
+		}
+		return new TreeKey(key.getName(), copy(key.getParent()));
+	}
+}
@@ -0,0 +1,104 @@
+package net.bible.android.control.page;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.bible.service.sword.KeyCatalogue;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.DefaultKeyList;
+import org.crosswire.jsword.passage.DefaultLeafKeyList;
+import org.crosswire.jsword.passage.Key;
+
+public class KeyPrefixIndexTest extends TestCase {
+
+	private KeyPrefixIndex index;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		List<Key> keys = new ArrayList<Key>();
+		for (String name : new String[] {"Zion", "abba", "Aaron", "Abel", "abide", "Babel"}) {
+			keys.add(new DefaultLeafKeyList(name));
+		}
+		index = new KeyPrefixIndex(keys);
+	}
+
+	public void testFindIgnoresCase() {
+		KeyPrefixIndex.Matches matches = index.findMatches("AB");
+		assertEquals(3, matches.size());
+		assertEquals("abba", matches.get(0).getName());
+		assertEquals("abide", matches.get(2).getName());
+	}
+
+	public void testNarrowAndWiden() {
+		KeyPrefixIndex.Matches matches = index.findMatches("a");
+		assertEquals(4, matches.size());
+		matches = matches.findMatches("abe");
+		assertEquals(1, matches.size());
+		assertEquals("Abel", matches.get(0).getName());
+		// a prefix which does not extend the previous one searches all keys
+		matches = matches.findMatches("z");
+		assertEquals(1, matches.size());
+		assertEquals(0, matches.findMatches("x").size());
+	}
+
+	public void testPaging() {
+		KeyPrefixIndex.Matches matches = index.findMatches("");
+		assertEquals(6, matches.size());
+		assertEquals(2, matches.getKeys(4, 10).size());
+		assertEquals(0, matches.getKeys(6, 10).size());
+	}
+
+	/** searching the sorted names in a key catalogue file finds the same keys as sorting the names in memory
+	 */
+	public void testCatalogueMatchesInMemoryIndex() throws Exception {
+		final DefaultKeyList globalKeyList = new DefaultKeyList();
+		List<Key> keys = new ArrayList<Key>();
+		String[] names = {"Zion", "abba", "Aaron", "Abel", "abide", "Babel", "\u00c9lie", "\u00e9lan", "Eli", "elim", "Abel", "G1", "G10", "G2", "\u05d0"};
+		for (int i=0; i<names.length*20; i++) {
+			Key key = new DefaultLeafKeyList(names[i%names.length]+(i<names.length ? "" : " "+i));
+			globalKeyList.addAll(key);
+			keys.add(key);
+		}
+		Book dictionary = (Book)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Book.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getGlobalKeyList")) {
+					return globalKeyList;
+				} else if (method.getName().equals("getInitials")) {
+					return "Test";
+				}
+				return null;
+			}
+		});
+
+		File file = File.createTempFile("Test", KeyCatalogue.FILE_EXT);
+		try {
+			KeyCatalogue.create(dictionary, file, "test");
+			KeyPrefixIndex catalogueIndex = new KeyPrefixIndex(KeyCatalogue.load(file, "test"));
+			KeyPrefixIndex listIndex = new KeyPrefixIndex(keys);
+			assertEquals(listIndex.size(), catalogueIndex.size());
+
+			for (String prefix : new String[] {"", "a", "AB", "abe", "Abel ", "\u00e9", "\u00c9L", "e", "EL", "g1", "G2", "\u05d0", "zz", "x"}) {
+				assertEquals(prefix, getNames(listIndex.findMatches(prefix)), getNames(catalogueIndex.findMatches(prefix)));
+			}
+			// narrowed matches
+			KeyPrefixIndex.Matches matches = catalogueIndex.findMatches("a").findMatches("abe");
+			assertEquals(getNames(listIndex.findMatches("abe")), getNames(matches));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private List<String> getNames(KeyPrefixIndex.Matches matches) {
+		List<String> names = new ArrayList<String>();
+		for (Key key : matches.getKeys(0, matches.size())) {
+			names.add(key.getName());
+		}
+		return names;
+	}
+}
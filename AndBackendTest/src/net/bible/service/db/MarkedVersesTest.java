@@ -0,0 +1,107 @@
+package net.bible.service.db;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.VerseBitSet;
+
+public class MarkedVersesTest extends TestCase {
+
+	// stands in for the start ordinal column of the db table
+	private VerseBitSet database = new VerseBitSet();
+
+	private int loadCount;
+
+	private boolean isLoadFailing;
+
+	private MarkedVerses markedVerses = new MarkedVerses("Test") {
+		@Override
+		protected VerseBitSet loadMarkedVerses() {
+			loadCount++;
+			if (isLoadFailing) {
+				throw new RuntimeException("Test db error");
+			}
+			return VerseBitSet.valueOf(database);
+		}
+	};
+
+	public void testLoadedWhenFirstNeeded() throws Exception {
+		insert("Gen 1:1");
+		insert("Matt 5:3");
+		assertEquals(0, loadCount);
+
+		VerseBitSet verses = markedVerses.getMarkedVerses();
+		assertTrue(verses.containsOrdinal(getOrdinal("Gen 1:1")));
+		assertTrue(verses.containsOrdinal(getOrdinal("Matt 5:3")));
+		assertFalse(verses.containsOrdinal(getOrdinal("Gen 1:2")));
+
+		markedVerses.getMarkedVerses();
+		assertEquals(1, loadCount);
+	}
+
+	public void testAddAndRemove() throws Exception {
+		VerseBitSet empty = markedVerses.getMarkedVerses();
+
+		insert("John 3:16");
+		VerseBitSet verses = markedVerses.getMarkedVerses();
+		assertTrue(verses.containsOrdinal(getOrdinal("John 3:16")));
+		assertFalse("Sets being rendered must not change", empty.containsOrdinal(getOrdinal("John 3:16")));
+
+		delete("John 3:16");
+		assertFalse(markedVerses.getMarkedVerses().containsOrdinal(getOrdinal("John 3:16")));
+		assertTrue(verses.containsOrdinal(getOrdinal("John 3:16")));
+	}
+
+	/** a verse is still marked if another row starts at it
+	 */
+	public void testRemoveOneOfTwoRows() throws Exception {
+		insert("Ps 23:1");
+		markedVerses.getMarkedVerses();
+
+		// an overlapping row starting at the same verse
+		insert("Ps 23:1-3");
+		assertTrue(markedVerses.getMarkedVerses().containsOrdinal(getOrdinal("Ps 23:1")));
+
+		// the first row is deleted but the other remains
+		markedVerses.removed(PassageKeyFactory.instance().getKey("Ps 23:1"), true);
+		assertTrue(markedVerses.getMarkedVerses().containsOrdinal(getOrdinal("Ps 23:1")));
+	}
+
+	/** changes before the first load are read from the db by the load
+	 */
+	public void testChangeBeforeLoad() throws Exception {
+		insert("Rev 22:21");
+		delete("Rev 22:21");
+		insert("Jude 1:1");
+		VerseBitSet verses = markedVerses.getMarkedVerses();
+		assertFalse(verses.containsOrdinal(getOrdinal("Rev 22:21")));
+		assertTrue(verses.containsOrdinal(getOrdinal("Jude 1:1")));
+	}
+
+	public void testLoadRetriedAfterError() throws Exception {
+		insert("Gen 1:1");
+		isLoadFailing = true;
+		assertNull(markedVerses.getMarkedVerses());
+
+		isLoadFailing = false;
+		assertTrue(markedVerses.getMarkedVerses().containsOrdinal(getOrdinal("Gen 1:1")));
+		assertEquals(2, loadCount);
+	}
+
+	private void insert(String osisRef) throws Exception {
+		Key key = PassageKeyFactory.instance().getKey(osisRef);
+		database.addOrdinal(getOrdinal(osisRef));
+		markedVerses.added(key);
+	}
+
+	private void delete(String osisRef) throws Exception {
+		Key key = PassageKeyFactory.instance().getKey(osisRef);
+		database.removeOrdinal(getOrdinal(osisRef));
+		markedVerses.removed(key, database.containsOrdinal(getOrdinal(osisRef)));
+	}
+
+	private int getOrdinal(String osisRef) throws Exception {
+		return VerseOrdinalColumns.getOrdinalRange(PassageKeyFactory.instance().getKey(osisRef))[0];
+	}
+}
@@ -0,0 +1,90 @@
+package net.bible.service.format;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import junit.framework.TestCase;
+import net.bible.android.TestUtil;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+
+/** Compare the bytes allocated per chapter when streaming raw verse bytes with the old String per verse method
+ *
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class OSISInputStreamAllocationTest extends TestCase {
+
+	private static final String[] BOOK_INITIALS = {"KJV", "ESV"};
+	private static final String BIBLE_BOOK = "Gen";
+	private static final int NUM_CHAPTERS = 50;
+
+	private byte[] readBuffer = new byte[8192];
+
+	public void testBytesAllocatedPerChapter() throws Exception {
+		for (String initials : BOOK_INITIALS) {
+			Book book = TestUtil.getBook(initials);
+			if (book==null) {
+				System.out.println("Skipping "+initials+" - not installed");
+				continue;
+			}
+
+			// check both methods produce the same OSIS
+			Key gen1 = PassageKeyFactory.instance().getKey(BIBLE_BOOK+" 1");
+			assertEquals("Raw byte stream differs from String stream for "+initials,
+						TestUtil.convertStreamToString(new OSISInputStream(book, gen1, false)),
+						TestUtil.convertStreamToString(new OSISInputStream(book, gen1, true)));
+
+			// warm up
+			readChapters(book, false);
+			readChapters(book, true);
+
+			long stringBytes = readChapters(book, false);
+			long rawBytes = readChapters(book, true);
+			if (stringBytes<0) {
+				System.out.println("Skipping allocation comparison - not supported by this JVM");
+				return;
+			}
+
+			boolean isStreamingRawBytes = new OSISInputStream(book, gen1).isStreamingRawBytes();
+			System.out.println(initials+" bytes allocated per chapter. String:"+(stringBytes/NUM_CHAPTERS)+" Raw:"+(rawBytes/NUM_CHAPTERS)+
+								" Streaming raw bytes:"+isStreamingRawBytes);
+			if (isStreamingRawBytes) {
+				assertTrue("Streaming raw bytes did not reduce allocation", rawBytes<stringBytes);
+			}
+		}
+	}
+
+	/** read each chapter and return the total number of bytes allocated by this thread or -1 if not measurable
+	 */
+	private long readChapters(Book book, boolean isRawBytesAllowed) throws Exception {
+		// create the keys before measuring so only stream allocation is counted
+		Key[] chapters = new Key[NUM_CHAPTERS];
+		for (int i=0; i<NUM_CHAPTERS; i++) {
+			chapters[i] = PassageKeyFactory.instance().getKey(BIBLE_BOOK+" "+(i+1));
+		}
+
+		long start = getAllocatedBytes();
+		for (Key chapter : chapters) {
+			InputStream is = new OSISInputStream(book, chapter, isRawBytesAllowed);
+			while (is.read(readBuffer, 0, readBuffer.length)!=-1) {
+				// just consume the stream
+			}
+		}
+		long end = getAllocatedBytes();
+
+		return start<0 ? -1 : end-start;
+	}
+
+	private long getAllocatedBytes() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -74,4 +74,28 @@ public class OsisToHtmlSaxHandlerTest extends TestCase {
 		System.out.println(result);
 	}
 
+	/** titles inserted before a verse are in the same place whether or not the html before the verse has been streamed
+	 */
+	public void testHtmlTextWriterStreamedInsert() throws Exception {
+		StringBuilder out = new StringBuilder();
+		HtmlTextWriter streamed = new HtmlTextWriter(out);
+		HtmlTextWriter inMemory = new HtmlTextWriter();
+		for (HtmlTextWriter writer : new HtmlTextWriter[] {streamed, inMemory}) {
+			for (int verse=1; verse<=1000; verse++) {
+				int versePosition = writer.getPosition();
+				writer.flushBefore(versePosition);
+				writer.write("<span id='"+verse+"'>"+verse+"</span>");
+				if (verse%100==0) {
+					writer.beginInsertAt(versePosition);
+					writer.write("<h1>Title "+verse+"</h1>");
+					writer.finishInserting();
+				}
+				writer.write(" verse text "+verse);
+			}
+			writer.finish();
+		}
+		assertTrue("Nothing streamed", out.length()>0);
+		assertEquals(inMemory.getHtml(), out.toString());
+	}
+
 }
@@ -0,0 +1,91 @@
+package net.bible.service.format.osistohtml;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+/** Check Strongs output and that html is unchanged by the table of tag handlers
+ *
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class OsisToHtmlStrongsTest extends TestCase {
+
+	private SAXParser parser;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setValidating(false);
+		parser = spf.newSAXParser();
+	}
+
+	/** lemmas are output in reverse order and morphology is only shown for Robinson codes
+	 */
+	public void testStrongsAndMorphology() throws Exception {
+		String osis = "<div><verse osisID='Gen.1.1'><w lemma=\"strong:H0853 strong:H01254\" morph=\"strongMorph:TH8804\">created</w></verse>" +
+					  "<verse osisID='Gen.1.2'><w lemma=\"strong:G652\" morph=\"robinson:N-NSM\">an apostle</w></verse></div>";
+		String html = convert(osis.getBytes("UTF-8"), getStrongsParameters());
+
+		assertTrue(html, html.contains("created <a href='hdef:01254' class='strongs'>01254</a> <a href='hdef:00853' class='strongs'>0853</a> "));
+		assertTrue(html, html.contains("an apostle <a href='gdef:00652' class='strongs'>652</a><a href='robinson:N-NSM' class='morphology'>N-NSM</a> "));
+	}
+
+	/** the expected html is the output of the if/else chain of tag handlers which preceded the table
+	 */
+	public void testHtmlMatchesPreviousOutput() throws Exception {
+		// more refs than are usually in a single w element
+		StringBuilder manyLemmas = new StringBuilder();
+		StringBuilder manyLinks = new StringBuilder();
+		for (int i=1; i<=20; i++) {
+			if (i>1) {
+				manyLemmas.append(" ");
+			}
+			manyLemmas.append("strong:G"+(1000+i));
+		}
+		for (int i=20; i>=3; i--) {
+			manyLinks.append(" <a href='gdef:0"+(1000+i)+"' class='strongs'>"+(1000+i)+"</a>");
+		}
+
+		String osis = "<div><title>The Creation</title>" +
+					  "<verse osisID='Gen.1.1'><w lemma=\"strong:H07225\">In the beginning</w> <w lemma=\"strong:H0430\">God</w> <transChange type=\"added\">did</transChange> " +
+					  "<w lemma=\"strong:H0853 strong:H01254\" morph=\"strongMorph:TH8804\">create</w> <hi type=\"italic\">the</hi> <q who=\"Jesus\" marker=\"\">heaven</q>" +
+					  "<note type=\"x-StudyNote\">a note</note><milestone type=\"line\"/><l>and the</l><l>earth</l></verse>" +
+					  "<verse osisID='Gen.1.2'><w lemma=\""+manyLemmas+"\" morph=\"robinson:N-NSM robinson:V-PAI-3S\">many</w> <w lemma=\"strong:G652\" morph=\"robinson:N-NSM\">an apostle</w></verse></div>";
+
+		String expected = "<span class='verse' id='1'>1</span>&#160;In the beginning <a href='hdef:07225' class='strongs'>07225</a>  God <a href='hdef:00430' class='strongs'>0430</a>  " +
+						  "<span class='transChange'>did</span> create <a href='hdef:01254' class='strongs'>01254</a> <a href='hdef:00853' class='strongs'>0853</a>  " +
+						  "<span class='hi_italic'>the</span> heaven<span class='noteRef'>a</span> <br />and the<br />earth<br /> " +
+						  "<span class='verse' id='2'>2</span>&#160;many"+manyLinks+" <a href='gdef:01002' class='strongs'>1002</a><a href='robinson:V-PAI-3S' class='morphology'>V-PAI-3S</a>" +
+						  " <a href='gdef:01001' class='strongs'>1001</a><a href='robinson:N-NSM' class='morphology'>N-NSM</a>  " +
+						  "an apostle <a href='gdef:00652' class='strongs'>652</a><a href='robinson:N-NSM' class='morphology'>N-NSM</a> ";
+
+		OsisToHtmlParameters parameters = getStrongsParameters();
+		parameters.setShowTitles(true);
+		parameters.setShowNotes(true);
+		String html = convert(osis.getBytes("UTF-8"), parameters);
+
+		assertTrue(html, html.contains("<h1>The Creation</h1>"));
+		assertTrue(html, html.contains(expected+"</body>"));
+	}
+
+	private String convert(byte[] osis, OsisToHtmlParameters parameters) throws Exception {
+		InputStream is = new ByteArrayInputStream(osis);
+		OsisToHtmlSaxHandler osisToHtml = new OsisToHtmlSaxHandler(parameters);
+		parser.parse(is, osisToHtml);
+		return osisToHtml.toString();
+	}
+
+	private OsisToHtmlParameters getStrongsParameters() {
+		OsisToHtmlParameters parameters = new OsisToHtmlParameters();
+		parameters.setShowStrongs(true);
+		parameters.setShowMorphology(true);
+		parameters.setShowVerseNumbers(true);
+		return parameters;
+	}
+}
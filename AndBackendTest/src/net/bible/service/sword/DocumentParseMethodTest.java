@@ -0,0 +1,107 @@
+package net.bible.service.sword;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+import net.bible.android.TestUtil;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+
+public class DocumentParseMethodTest extends TestCase {
+
+	private Book kjv;
+	private File learnedFailuresFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		kjv = TestUtil.getBook("KJV");
+		learnedFailuresFile = File.createTempFile("parsemethod", ".properties");
+		learnedFailuresFile.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		learnedFailuresFile.delete();
+		super.tearDown();
+	}
+
+	public void testFailuresRememberedAfterRestart() throws Exception {
+		Key ps1 = PassageKeyFactory.instance().getKey("Ps 1");
+		Key ps2 = PassageKeyFactory.instance().getKey("Ps 2");
+		Key ps2v3 = PassageKeyFactory.instance().getKey("Ps 2:3");
+
+		DocumentParseMethod parseMethod = new DocumentParseMethod(learnedFailuresFile);
+		assertTrue(parseMethod.isFastParseOkay(kjv, ps2));
+		parseMethod.failedToParse(kjv, ps2);
+		parseMethod.waitForSave();
+		
+		// simulate restart
+		parseMethod = new DocumentParseMethod(learnedFailuresFile);
+		assertFalse("Failure not remembered", parseMethod.isFastParseOkay(kjv, ps2v3));
+		// a failure in the middle of a book suggests the whole document is bad until it is validated
+		assertFalse(parseMethod.isFastParseOkay(kjv, ps1));
+		
+		parseMethod.validated(kjv);
+		parseMethod.waitForSave();
+		parseMethod = new DocumentParseMethod(learnedFailuresFile);
+		assertTrue(parseMethod.isValidated(kjv));
+		assertTrue("Validated chapter should use fast parse", parseMethod.isFastParseOkay(kjv, ps1));
+		assertFalse(parseMethod.isFastParseOkay(kjv, ps2));
+
+		parseMethod.forget(kjv);
+		parseMethod.waitForSave();
+		parseMethod = new DocumentParseMethod(learnedFailuresFile);
+		assertFalse(parseMethod.isValidated(kjv));
+		assertTrue(parseMethod.isFastParseOkay(kjv, ps2));
+	}
+
+	/** learned failures may add to the known bad documents but never remove them
+	 */
+	public void testKnownBadDocumentsAlwaysUseFallback() throws Exception {
+		Book web = createBook("WEB");
+		Book hnv = createBook("HNV");
+		Key rev22 = PassageKeyFactory.instance().getKey("Rev 22");
+		Key rev21 = PassageKeyFactory.instance().getKey("Rev 21");
+		Key rev1 = PassageKeyFactory.instance().getKey("Rev 1");
+
+		DocumentParseMethod parseMethod = new DocumentParseMethod(learnedFailuresFile);
+		parseMethod.validated(web);
+		parseMethod.validated(hnv);
+		assertFalse(parseMethod.isFastParseOkay(web, rev21));
+		assertFalse(parseMethod.isFastParseOkay(hnv, rev22));
+		assertTrue(parseMethod.isFastParseOkay(hnv, rev21));
+
+		parseMethod.failedToParse(hnv, rev1);
+		parseMethod.waitForSave();
+		parseMethod = new DocumentParseMethod(learnedFailuresFile);
+		assertFalse(parseMethod.isFastParseOkay(web, rev21));
+		assertFalse(parseMethod.isFastParseOkay(hnv, rev22));
+		assertFalse(parseMethod.isFastParseOkay(hnv, rev1));
+		assertTrue(parseMethod.isFastParseOkay(hnv, rev21));
+	}
+
+	/** a book with just initials and a version
+	 */
+	private Book createBook(final String initials) {
+		final BookMetaData bookMetaData = (BookMetaData)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {BookMetaData.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return method.getName().equals("getProperty") ? "1.0" : null;
+			}
+		});
+		return (Book)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Book.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getInitials")) {
+					return initials;
+				} else if (method.getName().equals("getBookMetaData")) {
+					return bookMetaData;
+				}
+				return null;
+			}
+		});
+	}
+}
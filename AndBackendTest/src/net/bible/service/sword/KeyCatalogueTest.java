@@ -0,0 +1,45 @@
+package net.bible.service.sword;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.bible.android.TestUtil;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
+
+public class KeyCatalogueTest extends TestCase {
+
+	public void testCatalogueMatchesGlobalKeyList() throws Exception {
+		Book dictionary = TestUtil.getBook("StrongsGreek");
+		if (dictionary==null) {
+			System.out.println("Skipping StrongsGreek - not installed");
+			return;
+		}
+
+		File file = File.createTempFile("StrongsGreek", KeyCatalogue.FILE_EXT);
+		try {
+			KeyCatalogue.create(dictionary, file, "test");
+			assertNull("Catalogue of another version should not be loaded", KeyCatalogue.load(file, "other"));
+			KeyCatalogue keyCatalogue = KeyCatalogue.load(file, "test");
+
+			List<Key> keyList = keyCatalogue.getKeyList();
+			int i = 0;
+			for (Key key : dictionary.getGlobalKeyList()) {
+				if (key.getName().length()>0) {
+					assertEquals(key.getName(), keyList.get(i).getName());
+					i++;
+				}
+			}
+			assertEquals(i, keyCatalogue.size());
+
+			// catalogue keys must be usable to read the dictionary
+			Key last = keyList.get(keyList.size()-1);
+			assertEquals(keyList.size()-1, keyCatalogue.indexOf(last.getName()));
+			assertTrue(dictionary.getRawText(last).length()>0);
+		} finally {
+			file.delete();
+		}
+	}
+}
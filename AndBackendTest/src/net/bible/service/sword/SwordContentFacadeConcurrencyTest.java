@@ -0,0 +1,137 @@
+package net.bible.service.sword;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import net.bible.android.TestUtil;
+import net.bible.service.format.FormattedDocument;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+
+/** Check that chapters from different books can be rendered in parallel
+ *
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class SwordContentFacadeConcurrencyTest extends TestCase {
+
+	private static final String[] BOOK_INITIALS = {"KJV", "ESV", "Darby", "RST"};
+	private static final String[] BIBLE_BOOKS = {"Gen", "Exod", "Matt", "Acts"};
+	private static final int CHAPTERS_PER_BIBLE_BOOK = 20;
+	// generous because rendering must only finish, not be fast
+	private static final long TIMEOUT_SECONDS = 300;
+
+	private List<Book> books;
+	private int numThreads;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SwordContentFacade.setAndroid(false);
+
+		books = new ArrayList<Book>();
+		for (String initials : BOOK_INITIALS) {
+			Book book = TestUtil.getBook(initials);
+			if (book!=null) {
+				books.add(book);
+			}
+		}
+		assertFalse("No test Bibles installed", books.isEmpty());
+		numThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	/** render pages from several books at the same time and check the html is the same as when rendered one at a time
+	 */
+	public void testParallelRenderingIsCorrect() throws Exception {
+		List<Callable<String>> tasks = createChapterTasks(1, 3);
+		List<String> expected = runRenderTasks(tasks, 1);
+		clearCachedHtml();
+		
+		List<String> actual = runRenderTasks(tasks, numThreads);
+		for (int i=0; i<expected.size(); i++) {
+			assertEquals("Html differs when rendered concurrently", expected.get(i), actual.get(i));
+		}
+	}
+
+	/** several threads render the same pages of every book at once, which must neither deadlock nor change the html
+	 */
+	public void testSamePagesRenderedConcurrently() throws Exception {
+		List<Callable<String>> pageTasks = createChapterTasks(1, CHAPTERS_PER_BIBLE_BOOK);
+		List<String> expected = runRenderTasks(pageTasks, 1);
+
+		// each page is requested by several threads at the same time
+		List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+		for (Callable<String> pageTask : pageTasks) {
+			for (int i=0; i<numThreads; i++) {
+				tasks.add(pageTask);
+			}
+		}
+		clearCachedHtml();
+
+		List<String> actual = runRenderTasks(tasks, numThreads);
+		for (int i=0; i<actual.size(); i++) {
+			assertEquals("Html differs when rendered concurrently", expected.get(i/numThreads), actual.get(i));
+		}
+	}
+
+	/** create tasks to render a range of chapters from several bible books in each document
+	 */
+	private List<Callable<String>> createChapterTasks(int firstChapter, int numChapters) throws Exception {
+		List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+		for (int chapter=firstChapter; chapter<firstChapter+numChapters; chapter++) {
+			for (String bibleBook : BIBLE_BOOKS) {
+				Key key = PassageKeyFactory.instance().getKey(bibleBook+" "+chapter);
+				for (Book book : books) {
+					tasks.add(createRenderTask(book, key));
+				}
+			}
+		}
+		return tasks;
+	}
+
+	private Callable<String> createRenderTask(final Book book, final Key key) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				FormattedDocument formattedDocument = SwordContentFacade.getInstance().readHtmlText(book, key);
+				return formattedDocument.getHtmlPassage();
+			}
+		};
+	}
+
+	/** run the tasks and return the html in the same order as the tasks
+	 */
+	private List<String> runRenderTasks(List<Callable<String>> tasks, int threads) throws Exception {
+		List<String> htmlList = new ArrayList<String>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<String> result : executor.invokeAll(tasks, TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				assertFalse("Rendering did not finish - possible deadlock", result.isCancelled());
+				String html = result.get();
+				assertTrue("No html", html.length()>0);
+				htmlList.add(html);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return htmlList;
+	}
+
+	private void clearCachedHtml() {
+		for (Book book : books) {
+			SwordContentFacade.getInstance().clearCachedDocument(book);
+		}
+	}
+}
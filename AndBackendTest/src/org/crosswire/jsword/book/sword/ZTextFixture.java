@@ -0,0 +1,143 @@
+package org.crosswire.jsword.book.sword;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.BibleInfo;
+
+/** A tiny zText module with one compressed block per chapter, written to a temporary directory
+ * so the backend can be tested without any installed Bibles
+ *
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class ZTextFixture {
+
+	public static final String CHAPTERS = "Gen 1, Gen 2, Matt 1";
+
+	private static final String DATA_PATH = "./modules/texts/ztext/fixture/";
+	private static final String CONF = "[Fixture]\n"+
+										"DataPath="+DATA_PATH+"\n"+
+										"ModDrv=zText\n"+
+										"BlockType=CHAPTER\n"+
+										"CompressType=ZIP\n"+
+										"SourceType=OSIS\n"+
+										"Encoding=UTF-8\n"+
+										"Lang=en\n"+
+										"Version=1.0\n"+
+										"Description=Backend test fixture\n";
+
+	private File root;
+	private Map<String, String> verseTexts = new HashMap<String, String>();
+
+	/** write the module files
+	 */
+	public ZTextFixture() throws Exception {
+		root = File.createTempFile("ztext", "");
+		root.delete();
+		File dataDir = new File(root, DATA_PATH);
+		dataDir.mkdirs();
+
+		writeTestament(dataDir, SwordConstants.FILE_OT, new BibleBook[] {BibleBook.GEN}, new int[] {1, 2}, new Verse(BibleBook.MAL, 4, 6));
+		writeTestament(dataDir, SwordConstants.FILE_NT, new BibleBook[] {BibleBook.MATT}, new int[] {1}, new Verse(BibleBook.REV, 22, 21));
+	}
+
+	/** create a backend reading the module
+	 */
+	public ZVerseBackend createBackend() throws Exception {
+		SwordBookMetaData sbmd = new SwordBookMetaData(CONF.getBytes("UTF-8"), "Fixture");
+		sbmd.setLibrary(root.toURI());
+		return new ZVerseBackend(sbmd, BlockType.BLOCK_CHAPTER);
+	}
+
+	/** the text written for a verse
+	 */
+	public String getVerseText(Key verse) {
+		return verseTexts.get(verse.getOsisID());
+	}
+
+	/** the directory containing the module's data files
+	 */
+	public File getDataDir() {
+		return new File(root, DATA_PATH);
+	}
+
+	public void delete() {
+		FileUtil.delete(root);
+	}
+
+	/** every chapter of each book in turn is a block
+	 */
+	private void writeTestament(File dataDir, String testamentFile, BibleBook[] books, int[] chapters, Verse lastVerse) throws Exception {
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		ByteArrayOutputStream blockIndex = new ByteArrayOutputStream();
+		// like a real module every verse in the testament has an entry, which is empty if the verse is missing
+		byte[] verseIndex = new byte[(SwordConstants.getIndex(lastVerse)+1)*10];
+
+		int blockNum = 0;
+		for (BibleBook book : books) {
+			for (int chapter : chapters) {
+				ByteArrayOutputStream block = new ByteArrayOutputStream();
+				for (int verseNo=1; verseNo<=BibleInfo.versesInChapter(book, chapter); verseNo++) {
+					Verse verse = new Verse(book, chapter, verseNo);
+					// multi byte characters so byte and char lengths differ
+					String verseText = "<w lemma=\"strong:H"+verseNo+"\">"+verse.getOsisID()+"</w> \u03b1\u03b2\u03b3 \u05d0 "+verseNo;
+					verseTexts.put(verse.getOsisID(), verseText);
+					byte[] verseBytes = verseText.getBytes("UTF-8");
+
+					int pos = SwordConstants.getIndex(verse)*10;
+					putLittleEndian32(verseIndex, pos, blockNum);
+					putLittleEndian32(verseIndex, pos+4, block.size());
+					verseIndex[pos+8] = (byte)verseBytes.length;
+					verseIndex[pos+9] = (byte)(verseBytes.length>>8);
+					block.write(verseBytes);
+				}
+
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+				DeflaterOutputStream deflater = new DeflaterOutputStream(compressed);
+				block.writeTo(deflater);
+				deflater.close();
+
+				byte[] blockEntry = new byte[12];
+				putLittleEndian32(blockEntry, 0, text.size());
+				putLittleEndian32(blockEntry, 4, compressed.size());
+				putLittleEndian32(blockEntry, 8, block.size());
+				blockIndex.write(blockEntry);
+				compressed.writeTo(text);
+				blockNum++;
+			}
+		}
+
+		String allButLast = testamentFile+"."+BlockType.BLOCK_CHAPTER.getIndicator()+"z";
+		writeFile(new File(dataDir, allButLast+"z"), text.toByteArray());
+		writeFile(new File(dataDir, allButLast+"s"), blockIndex.toByteArray());
+		writeFile(new File(dataDir, allButLast+"v"), verseIndex);
+	}
+
+	private static void putLittleEndian32(byte[] data, int pos, int value) {
+		data[pos] = (byte)value;
+		data[pos+1] = (byte)(value>>8);
+		data[pos+2] = (byte)(value>>16);
+		data[pos+3] = (byte)(value>>24);
+	}
+
+	private static void writeFile(File file, byte[] data) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+}
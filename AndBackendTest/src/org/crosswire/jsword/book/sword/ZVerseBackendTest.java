@@ -0,0 +1,162 @@
+package org.crosswire.jsword.book.sword;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.crosswire.common.activate.Activator;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+
+public class ZVerseBackendTest extends TestCase {
+
+	private ZTextFixture fixture;
+	private ZVerseBackend backend;
+	private Key chapters;
+
+	private static final long TABLE_BUILD_TIMEOUT_MILLIS = 60000;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fixture = new ZTextFixture();
+		backend = fixture.createBackend();
+		chapters = PassageKeyFactory.instance().getKey(ZTextFixture.CHAPTERS);
+	}
+
+	protected void tearDown() throws Exception {
+		ZVerseBackend.setMemoryMapIndexes(true);
+		ZVerseBackend.setUseVerseOffsetTable(true);
+		// finish writing the table before the fixture is deleted
+		backend.awaitVerseOffsetTable(TABLE_BUILD_TIMEOUT_MILLIS);
+		Activator.deactivate(backend);
+		fixture.delete();
+		super.tearDown();
+	}
+
+	public void testBlockCacheHitsAndMisses() throws Exception {
+		Key gen1 = PassageKeyFactory.instance().getKey("Gen 1");
+		Key matt1 = PassageKeyFactory.instance().getKey("Matt 1");
+
+		// each chapter is one block which is uncompressed for its first verse
+		readAllVerses(gen1);
+		assertEquals(1, backend.getBlockCacheMisses());
+		assertEquals(gen1.getCardinality()-1, backend.getBlockCacheHits());
+		readAllVerses(matt1);
+		assertEquals(2, backend.getBlockCacheMisses());
+		assertEquals(gen1.getCardinality()+matt1.getCardinality()-2, backend.getBlockCacheHits());
+		long hits = backend.getBlockCacheHits();
+
+		// alternating between testaments used to uncompress a block for every change
+		readAllVerses(gen1);
+		readAllVerses(matt1);
+		assertEquals("Blocks should still be cached", 2, backend.getBlockCacheMisses());
+		assertEquals("Every verse should be a cache hit", hits+gen1.getCardinality()+matt1.getCardinality(), backend.getBlockCacheHits());
+	}
+
+	public void testBulkReadMatchesVerseRead() throws Exception {
+		int[] verseLocations = new int[2*chapters.getCardinality()];
+		byte[][] verseBlocks = backend.getRawVerseBlocks(chapters, verseLocations);
+
+		int i = 0;
+		for (Key verse : chapters) {
+			String expected = fixture.getVerseText(verse);
+			assertEquals("Wrong verse length for "+verse, expected.getBytes("UTF-8").length, verseLocations[2*i+1]);
+			String bulkText = new String(verseBlocks[i], verseLocations[2*i], verseLocations[2*i+1], "UTF-8");
+			assertEquals("Bulk read differs for "+verse, expected, bulkText);
+			assertEquals("Verse read differs for "+verse, expected, backend.getRawText(verse));
+			i++;
+		}
+	}
+
+	/** the memory mapped comp and idx files must find the same verses as seeking and reading the files
+	 */
+	public void testMemoryMappedIndexMatchesFileIndex() throws Exception {
+		Key key = PassageKeyFactory.instance().getKey("Gen 1-3, Matt 1-2");
+
+		ZVerseBackend.setMemoryMapIndexes(false);
+		Activator.deactivate(backend);
+		List<String> expected = readAllVerses(key);
+
+		ZVerseBackend.setMemoryMapIndexes(true);
+		Activator.deactivate(backend);
+		assertEquals(expected, readAllVerses(key));
+	}
+
+	/** verses found using the precompiled verse offset table must match those found from the module index files
+	 */
+	public void testVerseOffsetTableMatchesIndex() throws Exception {
+		Key key = PassageKeyFactory.instance().getKey("Gen 1-3, Matt 1-2");
+
+		ZVerseBackend.setUseVerseOffsetTable(false);
+		Activator.deactivate(backend);
+		List<String> expected = readAllVerses(key);
+		assertFalse(backend.awaitVerseOffsetTable(TABLE_BUILD_TIMEOUT_MILLIS));
+
+		// the table does not depend on the index files being memory mapped
+		ZVerseBackend.setUseVerseOffsetTable(true);
+		ZVerseBackend.setMemoryMapIndexes(false);
+		Activator.deactivate(backend);
+		// verses are read from the index files while the table is built
+		assertEquals(expected, readAllVerses(key));
+		assertTrue("Verse offset table not built", backend.awaitVerseOffsetTable(TABLE_BUILD_TIMEOUT_MILLIS));
+		assertEquals(expected, readAllVerses(key));
+
+		// the next activation loads the table instead of building it again
+		File table = getVerseOffsetTableFile();
+		long built = table.lastModified();
+		Activator.deactivate(backend);
+		assertEquals(expected, readAllVerses(key));
+		assertTrue(backend.awaitVerseOffsetTable(0));
+		assertEquals(built, table.lastModified());
+	}
+
+	/** a table which cannot be used must be replaced, with verses read from the index files meanwhile
+	 */
+	public void testDamagedVerseOffsetTableIsRebuilt() throws Exception {
+		Key key = PassageKeyFactory.instance().getKey("Gen 1-3, Matt 1-2");
+		List<String> expected = readAllVerses(key);
+		assertTrue(backend.awaitVerseOffsetTable(TABLE_BUILD_TIMEOUT_MILLIS));
+		Activator.deactivate(backend);
+
+		// truncated header
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(getVerseOffsetTableFile()));
+		out.writeInt(0x41425654);
+		out.writeShort(1);
+		out.close();
+		assertEquals(expected, readAllVerses(key));
+		assertTrue("Damaged table not rebuilt", backend.awaitVerseOffsetTable(TABLE_BUILD_TIMEOUT_MILLIS));
+		assertEquals(expected, readAllVerses(key));
+		Activator.deactivate(backend);
+
+		// written by an older version
+		out = new DataOutputStream(new FileOutputStream(getVerseOffsetTableFile()));
+		out.writeInt(0x41425654);
+		out.writeInt(0);
+		out.writeUTF("old");
+		out.writeInt(0);
+		out.close();
+		assertEquals(expected, readAllVerses(key));
+		assertTrue("Old table not rebuilt", backend.awaitVerseOffsetTable(TABLE_BUILD_TIMEOUT_MILLIS));
+		assertEquals(expected, readAllVerses(key));
+	}
+
+	private File getVerseOffsetTableFile() {
+		return new File(fixture.getDataDir(), VerseOffsetTable.FILE_NAME);
+	}
+
+	private List<String> readAllVerses(Key key) throws Exception {
+		List<String> texts = new ArrayList<String>();
+		for (Key verse : key) {
+			String text = backend.getRawText(verse);
+			// verses outside the fixture chapters are empty
+			String expected = fixture.getVerseText(verse);
+			assertEquals("Wrong text for "+verse, expected==null ? "" : expected, text);
+			texts.add(text);
+		}
+		return texts;
+	}
+}
@@ -0,0 +1,134 @@
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.bible.service.common.CommonUtils;
+
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+
+public class IndexCheckpointTest extends TestCase {
+
+	private File checkpointFile;
+	private File indexPath;
+	private File partitionsPath;
+
+	private Key gen;
+	private Key exod;
+	private Key lev;
+	private Key num;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		checkpointFile = File.createTempFile("index", ".checkpoint");
+		checkpointFile.delete();
+		indexPath = new File(checkpointFile.getPath()+".creating");
+		partitionsPath = new File(checkpointFile.getPath()+".partitions");
+
+		gen = PassageKeyFactory.instance().getKey("Gen");
+		exod = PassageKeyFactory.instance().getKey("Exod");
+		lev = PassageKeyFactory.instance().getKey("Lev");
+		num = PassageKeyFactory.instance().getKey("Num");
+	}
+
+	protected void tearDown() throws Exception {
+		checkpointFile.delete();
+		CommonUtils.deleteDirectory(indexPath);
+		CommonUtils.deleteDirectory(partitionsPath);
+		super.tearDown();
+	}
+
+	public void testCompletedPartitionsSurviveRestart() throws Exception {
+		IndexCheckpoint checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		assertFalse("No checkpoint expected", checkpoint.load(indexPath, partitionsPath));
+		checkpoint.start();
+		IndexWriter writer = createWriter(indexPath);
+		addDocument(writer);
+		writer.commit(checkpoint.getCommitUserData(Arrays.asList(gen, exod)));
+		writer.close();
+
+		// simulate restart
+		checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		assertTrue(checkpoint.load(indexPath, partitionsPath));
+		assertTrue(checkpoint.isCompleted(gen));
+		assertTrue(checkpoint.isCompleted(exod));
+		assertFalse(checkpoint.isCompleted(lev));
+		assertFalse(checkpoint.isMerged());
+
+		// a checkpoint for a different version of the book must be ignored
+		checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.4");
+		assertFalse(checkpoint.load(indexPath, partitionsPath));
+		assertFalse(checkpoint.isCompleted(gen));
+	}
+
+	/** partitions indexed after the last commit are not completed, even if the checkpoint was told about them
+	 */
+	public void testUncommittedPartitionsAreNotCompleted() throws Exception {
+		IndexCheckpoint checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		checkpoint.start();
+		IndexWriter writer = createWriter(indexPath);
+		addDocument(writer);
+		writer.commit(checkpoint.getCommitUserData(Arrays.asList(gen)));
+		addDocument(writer);
+		checkpoint.getCommitUserData(Arrays.asList(gen, exod));
+		// killed before the commit
+		writer.rollback();
+
+		checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		assertTrue(checkpoint.load(indexPath, partitionsPath));
+		assertTrue(checkpoint.isCompleted(gen));
+		assertFalse("Exod was never committed", checkpoint.isCompleted(exod));
+	}
+
+	public void testPartitionIndexesAndMerge() throws Exception {
+		IndexCheckpoint checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		checkpoint.start();
+		createWriter(indexPath).close();
+		IndexWriter partitionWriter = createWriter(new File(partitionsPath, "0"));
+		addDocument(partitionWriter);
+		partitionWriter.commit(checkpoint.getCommitUserData(Arrays.asList(gen, exod)));
+		partitionWriter.close();
+		partitionWriter = createWriter(new File(partitionsPath, "1"));
+		addDocument(partitionWriter);
+		partitionWriter.commit(checkpoint.getCommitUserData(Arrays.asList(lev)));
+		partitionWriter.close();
+
+		checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		assertTrue(checkpoint.load(indexPath, partitionsPath));
+		assertTrue(checkpoint.isCompleted(gen));
+		assertTrue(checkpoint.isCompleted(exod));
+		assertTrue(checkpoint.isCompleted(lev));
+		assertFalse(checkpoint.isCompleted(num));
+		assertFalse(checkpoint.isMerged());
+
+		IndexWriter writer = new IndexWriter(FSDirectory.open(indexPath), new SimpleAnalyzer(), false, IndexWriter.MaxFieldLength.UNLIMITED);
+		writer.addIndexesNoOptimize(new Directory[] {FSDirectory.open(new File(partitionsPath, "0")), FSDirectory.open(new File(partitionsPath, "1"))});
+		writer.commit(checkpoint.getMergedCommitUserData());
+		writer.close();
+		CommonUtils.deleteDirectory(partitionsPath);
+
+		checkpoint = new IndexCheckpoint(checkpointFile, "KJV 2.3");
+		assertTrue(checkpoint.load(indexPath, partitionsPath));
+		assertTrue(checkpoint.isMerged());
+		assertTrue(checkpoint.isCompleted(gen));
+		assertTrue(checkpoint.isCompleted(lev));
+	}
+
+	private IndexWriter createWriter(File path) throws Exception {
+		return new IndexWriter(FSDirectory.open(path), new SimpleAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+	}
+
+	private void addDocument(IndexWriter writer) throws Exception {
+		Document doc = new Document();
+		doc.add(new Field("key", "Gen.1.1", Field.Store.YES, Field.Index.NOT_ANALYZED));
+		writer.addDocument(doc);
+	}
+}
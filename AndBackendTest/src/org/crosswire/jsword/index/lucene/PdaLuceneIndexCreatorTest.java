@@ -0,0 +1,68 @@
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import net.bible.service.common.CommonUtils;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.index.IndexStatus;
+
+/** Compare creating a Bible index serially with creating it in parallel partitions
+ */
+public class PdaLuceneIndexCreatorTest extends TestCase {
+
+	private Book kjv;
+	private IndexStatus originalIndexStatus;
+	private int originalNumIndexThreads;
+	private File tempDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		kjv = Books.installed().getBook("KJV");
+		originalIndexStatus = kjv.getIndexStatus();
+		originalNumIndexThreads = PdaLuceneIndexCreator.getNumIndexThreads();
+		tempDir = File.createTempFile("index", "test");
+		tempDir.delete();
+		tempDir.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		// the creator updates the book's index status
+		kjv.setIndexStatus(originalIndexStatus);
+		PdaLuceneIndexCreator.setNumIndexThreads(originalNumIndexThreads);
+		CommonUtils.deleteDirectory(tempDir);
+		super.tearDown();
+	}
+
+	public void testPartitionedIndexMatchesSerialIndex() throws Exception {
+		File serialIndex = new File(tempDir, "serial");
+		PdaLuceneIndexCreator.setNumIndexThreads(1);
+		long start = System.currentTimeMillis();
+		new PdaLuceneIndexCreator(kjv, serialIndex.toURI(), true);
+		long serialMillis = System.currentTimeMillis()-start;
+
+		File partitionedIndex = new File(tempDir, "partitioned");
+		PdaLuceneIndexCreator.setNumIndexThreads(4);
+		start = System.currentTimeMillis();
+		new PdaLuceneIndexCreator(kjv, partitionedIndex.toURI(), true);
+		long partitionedMillis = System.currentTimeMillis()-start;
+
+		System.out.println("Index creation ms. Serial:"+serialMillis+" Partitioned:"+partitionedMillis+" Processors:"+Runtime.getRuntime().availableProcessors());
+
+		assertEquals("Partitioned index has different number of verses", getNumDocs(serialIndex), getNumDocs(partitionedIndex));
+		assertFalse("Partitions not deleted", new File(partitionedIndex.getPath()+".partitions").exists());
+	}
+
+	private int getNumDocs(File indexDir) throws Exception {
+		IndexReader reader = IndexReader.open(FSDirectory.open(indexDir), true);
+		try {
+			return reader.numDocs();
+		} finally {
+			reader.close();
+		}
+	}
+}
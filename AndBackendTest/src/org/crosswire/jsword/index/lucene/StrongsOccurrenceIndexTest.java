@@ -0,0 +1,58 @@
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+
+public class StrongsOccurrenceIndexTest extends TestCase {
+
+	private File indexFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		indexFile = File.createTempFile("index", StrongsOccurrenceIndex.FILE_SUFFIX);
+		indexFile.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		indexFile.delete();
+		super.tearDown();
+	}
+
+	public void testOccurrences() throws Exception {
+		StrongsOccurrenceIndex.Builder builder = new StrongsOccurrenceIndex.Builder();
+		// verses may be added out of order by different indexing threads
+		builder.add(26046, "G0746 G2258 G3056 G3588 G3056");
+		builder.add(1, "H07225 H01254 H0430");
+		builder.add(26048, "G3778 G2258 G1722 G0746");
+		builder.add(26047, "G0746");
+		builder.write(indexFile, "KJV 2.3");
+
+		StrongsOccurrenceIndex occurrenceIndex = StrongsOccurrenceIndex.load(indexFile, "KJV 2.3");
+		assertNotNull(occurrenceIndex);
+		assertEquals(3, occurrenceIndex.getCount("g746"));
+		assertEquals(1, occurrenceIndex.getCount("H7225"));
+		assertEquals("Verse counted once however often the word occurs", 1, occurrenceIndex.getCount("G3056"));
+		assertEquals(0, occurrenceIndex.getCount("G9999"));
+		assertEquals(0, occurrenceIndex.getCount("rubbish"));
+
+		int[] ordinals = occurrenceIndex.getOrdinals("G2258");
+		assertEquals(2, ordinals.length);
+		assertEquals(26046, ordinals[0]);
+		assertEquals(26048, ordinals[1]);
+
+		Key john1 = PassageKeyFactory.instance().getKey("John 1:1-3");
+		assertEquals(john1, occurrenceIndex.getOccurrences("G746"));
+	}
+
+	public void testDifferentVersionIgnored() throws Exception {
+		StrongsOccurrenceIndex.Builder builder = new StrongsOccurrenceIndex.Builder();
+		builder.add(1, "H07225");
+		builder.write(indexFile, "KJV 2.3");
+
+		assertNull(StrongsOccurrenceIndex.load(indexFile, "KJV 2.4"));
+	}
+}
@@ -0,0 +1,40 @@
+package org.crosswire.jsword.passage;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.crosswire.jsword.versification.BibleBook;
+
+public class VerseBitSetTest extends TestCase {
+
+	public void testSectionFilter() throws Exception {
+		Key results = PassageKeyFactory.instance().getKey("Gen 1:1, Ps 23:1, John 3:16, Rev 22:21");
+		VerseBitSet nt = VerseBitSet.range(new Verse(BibleBook.MATT, 1, 1), new Verse(BibleBook.REV, 22, 21));
+
+		VerseBitSet verses = VerseBitSet.valueOf(results);
+		assertEquals(4, verses.countVerses());
+		verses.and(nt);
+		assertEquals(2, verses.countVerses());
+		assertEquals(PassageKeyFactory.instance().getKey("John 3:16, Rev 22:21"), verses);
+	}
+
+	public void testCountVersesIn() throws Exception {
+		VerseBitSet verses = VerseBitSet.valueOf(PassageKeyFactory.instance().getKey("Gen 1:1, Ps 23:1, John 3:16"));
+		VerseBitSet ot = VerseBitSet.range(new Verse(BibleBook.GEN, 1, 1), new Verse(BibleBook.MAL, 4, 6));
+		assertEquals(2, verses.countVersesIn(ot));
+		// neither set is changed
+		assertEquals(3, verses.countVerses());
+		assertEquals(23145, ot.countVerses());
+	}
+
+	public void testGetVerses() throws Exception {
+		VerseBitSet verses = VerseBitSet.fromOrdinals(new int[] {26048, 1, 26046});
+		List<Key> first = verses.getVerses(2);
+		assertEquals(2, first.size());
+		assertEquals("Gen.1.1", first.get(0).getOsisRef());
+		assertEquals("John.1.1", first.get(1).getOsisRef());
+		assertEquals(26048, verses.nextOrdinal(26047));
+		assertEquals(-1, verses.nextOrdinal(26049));
+	}
+}
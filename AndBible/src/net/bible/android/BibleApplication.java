@@ -7,6 +7,7 @@ import net.bible.android.activity.R;
 import net.bible.android.device.ProgressNotificationManager;
 import net.bible.android.view.activity.base.Dialogs;
 import net.bible.service.common.CommonUtils;
+import net.bible.service.sword.SwordContentFacade;
 import net.bible.service.sword.SwordDocumentFacade;
 
 import org.apache.commons.lang.StringUtils;
@@ -197,6 +198,15 @@ public class BibleApplication extends Application{
         });
     }
     
+	/** free up memory used by caches
+	 */
+	@Override
+	public void onLowMemory() {
+		Log.i(TAG, "onLowMemory");
+		SwordContentFacade.getInstance().onLowMemory();
+		super.onLowMemory();
+	}
+
 	@Override
 	public void onTerminate() {
 		Log.i(TAG, "onTerminate");
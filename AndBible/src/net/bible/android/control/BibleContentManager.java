@@ -1,22 +1,32 @@
 package net.bible.android.control;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.bible.android.BibleApplication;
 import net.bible.android.activity.R;
 import net.bible.android.control.page.CurrentBiblePage;
 import net.bible.android.control.page.CurrentPage;
 import net.bible.android.control.page.CurrentPageManager;
 import net.bible.android.view.activity.base.DocumentView;
 import net.bible.android.view.activity.page.DocumentViewManager;
+import net.bible.service.common.ParseException;
 import net.bible.service.format.FormattedDocument;
 import net.bible.service.format.HtmlMessageFormatter;
 import net.bible.service.format.Note;
+import net.bible.service.sword.SwordContentFacade;
 
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.Key;
 
 import android.os.AsyncTask;
+import android.os.Process;
 import android.util.Log;
 
 /** Control content of main view screen
@@ -32,8 +42,17 @@ public class BibleContentManager {
 	private Key displayedVerse;
 	private List<Note> notesList;
 
+	// renders the pages either side of the current page so they are ready before the user moves
+	private PrefetchTask prefetchTask;
+
 	private DocumentViewManager documentViewManager;
 	
+	// pages too large to hold in memory as a String are streamed to a new file for each update and loaded from there
+	// so a page being loaded is never overwritten, and the file of the page shown is deleted when it is replaced
+	private File shownLargePageFile;
+	private static final String LARGE_PAGE_FILE_PREFIX = "large_page";
+	private static final String LARGE_PAGE_FILE_SUFFIX = ".html";
+	
 	private static final String TAG = "BibleContentManager";
 	
 	public BibleContentManager(DocumentViewManager documentViewManager) {
@@ -55,12 +74,17 @@ public class BibleContentManager {
 		if (!forceUpdate && document.equals(displayedBible) && key.equals(displayedVerse)) {
 			Log.w(TAG, "Duplicated screen update. Doc:"+document.getInitials()+" Key:"+key);
 		}
+		// prefetched pages are no longer adjacent so do not let them delay the new page
+		cancelPrefetch();
+		
 		new UpdateTextTask().execute(currentPage);
     }
 
     private class UpdateTextTask extends AsyncTask<CurrentPage, Integer, String> {
+    	private CurrentPage currentPage;
     	private int verseNo;
     	private float yScreenOffsetRatio;
+    	private File largePageFile;
     	@Override
     	protected void onPreExecute() {
     		PassageChangeMediator.getInstance().contentChangeStarted();
@@ -71,7 +95,7 @@ public class BibleContentManager {
             Log.d(TAG, "Loading html in background");
         	String text = "Error";
         	try {
-        		CurrentPage currentPage = currentPageArgs[0]; 
+        		currentPage = currentPageArgs[0]; 
 	    		Book document = currentPage.getCurrentDocument();
 	    		// if bible show whole chapter
 	    		Key key = currentPage.getKey();
@@ -85,9 +109,13 @@ public class BibleContentManager {
 	            
 	            notesList = new ArrayList<Note>();
 	            
-	            FormattedDocument formattedDocument = currentPage.getCurrentPageContent();
-	            text = formattedDocument.getHtmlPassage();
-	            notesList = formattedDocument.getNotesList();
+	            if (SwordContentFacade.getInstance().isLargePage(document, key)) {
+	            	largePageFile = writeLargePage(currentPage);
+	            } else {
+		            FormattedDocument formattedDocument = currentPage.getCurrentPageContent();
+		            text = formattedDocument.getHtmlPassage();
+		            notesList = formattedDocument.getNotesList();
+	            }
 	
 	            displayedBible = document;
 	            displayedVerse = key;
@@ -105,11 +133,135 @@ public class BibleContentManager {
         }
 
         protected void onPostExecute(String htmlFromDoInBackground) {
-            Log.d(TAG, "Loading html:"+htmlFromDoInBackground);
-            showText(htmlFromDoInBackground, verseNo, yScreenOffsetRatio);
+        	if (largePageFile!=null) {
+                Log.d(TAG, "Loading large page from file");
+        		showUrl("file://"+largePageFile.getAbsolutePath(), verseNo, yScreenOffsetRatio);
+        	} else {
+	            Log.d(TAG, "Loading html:"+htmlFromDoInBackground);
+	            showText(htmlFromDoInBackground, verseNo, yScreenOffsetRatio);
+        	}
+        	// the previous large page has been replaced in the view
+        	if (shownLargePageFile!=null) {
+        		shownLargePageFile.delete();
+        	}
+        	shownLargePageFile = largePageFile;
     		PassageChangeMediator.getInstance().contentChangeFinished();
+    		
+    		if (currentPage!=null) {
+    			prefetchAdjacentPages(currentPage);
+    		}
         }
     }
+
+    /** stream the html of a page too large to be held in memory to a file
+     * 
+     * @return the file containing the html
+     */
+    private File writeLargePage(CurrentPage currentPage) throws Exception {
+    	File file = File.createTempFile(LARGE_PAGE_FILE_PREFIX, LARGE_PAGE_FILE_SUFFIX, BibleApplication.getApplication().getCacheDir());
+    	Log.d(TAG, "Streaming large page to file");
+    	Book document = currentPage.getCurrentDocument();
+    	Key key = currentPage.getKey();
+    	boolean isWritten = false;
+    	try {
+	    	FormattedDocument formattedDocument;
+	    	Writer out = openLargePageFile(file);
+	    	try {
+	    		formattedDocument = SwordContentFacade.getInstance().writeHtmlText(document, key, out);
+	    	} catch (ParseException pe) {
+	    		Log.w(TAG, "Fast parse of large page failed so using JSword parser");
+	    		// discard any html already written
+	    		out.close();
+	    		out = openLargePageFile(file);
+	    		formattedDocument = SwordContentFacade.getInstance().writeHtmlTextStandardJSwordMethod(document, key, out);
+	    	} finally {
+	    		out.close();
+	    	}
+	    	notesList = formattedDocument.getNotesList();
+	    	isWritten = true;
+    	} finally {
+    		if (!isWritten) {
+    			file.delete();
+    		}
+    	}
+    	return file;
+    }
+
+    private Writer openLargePageFile(File file) throws IOException {
+    	return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    /** once the current page is shown render the next and previous pages in the background so that they are in the html cache if the user moves to them
+     */
+    private void prefetchAdjacentPages(CurrentPage currentPage) {
+    	cancelPrefetch();
+    	try {
+	    	// calculate keys now because the current page may change while the prefetch is running
+	    	Book document = currentPage.getCurrentDocument();
+	    	Key currentKey = currentPage.getKey();
+	    	Key nextPage = currentPage.getPagePlus(1);
+	    	Key previousPage = currentPage.getPagePlus(-1);
+	    	
+	    	// large pages are streamed to a file when shown so must not be built in memory and cached
+	    	SwordContentFacade swordContentFacade = SwordContentFacade.getInstance();
+	    	List<Key> keysToPrefetch = new ArrayList<Key>();
+	    	if (nextPage!=null && !nextPage.equals(currentKey) && !swordContentFacade.isLargePage(document, nextPage)) {
+	    		keysToPrefetch.add(nextPage);
+	    	}
+	    	if (previousPage!=null && !previousPage.equals(currentKey) && !swordContentFacade.isLargePage(document, previousPage)) {
+	    		keysToPrefetch.add(previousPage);
+	    	}
+	    	if (keysToPrefetch.size()>0) {
+		    	prefetchTask = new PrefetchTask(currentPage);
+		    	prefetchTask.execute(keysToPrefetch.toArray(new Key[keysToPrefetch.size()]));
+	    	}
+    	} catch (Exception e) {
+    		Log.w(TAG, "Unable to prefetch adjacent pages", e);
+    	}
+    }
+    
+    private void cancelPrefetch() {
+    	if (prefetchTask!=null) {
+    		// do not interrupt because the document may be part way through reading a module file
+    		prefetchTask.cancel(false);
+    		prefetchTask = null;
+    	}
+    }
+
+    private static class PrefetchTask extends AsyncTask<Key, Void, Void> {
+    	private CurrentPage currentPage;
+    	
+    	public PrefetchTask(CurrentPage currentPage) {
+    		this.currentPage = currentPage;
+    	}
+    	
+		@Override
+		protected Void doInBackground(Key... keys) {
+			// do not compete with the ui or the fetch of the page the user is waiting for
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND+Process.THREAD_PRIORITY_LESS_FAVORABLE);
+			
+			for (Key key : keys) {
+				if (isCancelled()) {
+					Log.d(TAG, "Prefetch cancelled");
+					break;
+				}
+				try {
+					if (SwordContentFacade.getInstance().isLargePage(currentPage.getCurrentDocument(), key)) {
+						Log.d(TAG, "Not prefetching large page "+key);
+						continue;
+					}
+					Log.d(TAG, "Prefetching "+key);
+					currentPage.getPageContent(key);
+				} catch (Exception e) {
+					Log.w(TAG, "Error prefetching "+key, e);
+				} catch (OutOfMemoryError oom) {
+					Log.w(TAG, "Out of memory prefetching "+key);
+					break;
+				}
+			}
+			return null;
+		}
+    }
 	private void showText(String text, int verseNo, float yOffsetRatio) {
 		if (documentViewManager!=null) {
 			DocumentView view = documentViewManager.getDocumentView();
@@ -119,6 +271,15 @@ public class BibleContentManager {
 		}
     }
 
+	private void showUrl(String url, int verseNo, float yOffsetRatio) {
+		if (documentViewManager!=null) {
+			DocumentView view = documentViewManager.getDocumentView();
+			view.showUrl(url, verseNo, yOffsetRatio);
+		} else {
+			Log.w(TAG, "Document view not yet registered");
+		}
+    }
+
 	public List<Note> getNotesList() {
 		return notesList;
 	}
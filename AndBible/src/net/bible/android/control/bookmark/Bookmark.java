@@ -3,6 +3,7 @@ package net.bible.android.control.bookmark;
 import java.util.List;
 
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 import net.bible.service.db.bookmark.BookmarkDto;
 import net.bible.service.db.bookmark.LabelDto;
@@ -54,4 +55,7 @@ public interface Bookmark {
 	/** get a list of Keys which have bookmarks in the passage (normally a chapter) */
 	List<Key> getKeysWithBookmarksInPassage(Key passage);
 
+	/** get the verses at which bookmarks start, which include those in the passage and may include others */
+	VerseBitSet getVersesWithBookmarks(Key passage);
+
 }
@@ -11,6 +11,7 @@ import net.bible.android.activity.R;
 import net.bible.android.control.page.CurrentPageManager;
 import net.bible.android.view.activity.base.Dialogs;
 import net.bible.service.common.CommonUtils;
+import net.bible.service.db.MarkedVerses;
 import net.bible.service.db.bookmark.BookmarkDBAdapter;
 import net.bible.service.db.bookmark.BookmarkDto;
 import net.bible.service.db.bookmark.LabelDto;
@@ -19,6 +20,8 @@ import net.bible.service.db.mynote.MyNoteDto;
 import net.bible.service.sword.SwordContentFacade;
 
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 import android.util.Log;
 import android.widget.Toast;
@@ -32,8 +35,22 @@ public class BookmarkControl implements Bookmark {
 		LABEL_ALL.setId(new Long(-999));
 	}
 	
+	// every page shows bookmarks so avoid querying the db for each page
+	private MarkedVerses bookmarkedVerses = new MarkedVerses("Bookmarks") {
+		@Override
+		protected VerseBitSet loadMarkedVerses() {
+			BookmarkDBAdapter db = new BookmarkDBAdapter(BibleApplication.getApplication().getApplicationContext());
+			db.open();
+			try {
+				return db.getVersesWithBookmarks();
+			} finally {
+				db.close();
+			}
+		}
+	};
+
 	private static final String TAG = "BookmarkControl";
-	
+
 	@Override
 	public boolean bookmarkCurrentVerse() {
 		boolean bOk = false;
@@ -100,6 +117,10 @@ public class BookmarkControl implements Bookmark {
 		} finally {
 			db.close();
 		}
+		if (newBookmark!=null) {
+			bookmarkedVerses.added(newBookmark.getKey());
+			SwordContentFacade.getInstance().passageMarksChanged(newBookmark.getKey());
+		}
 		return newBookmark;
 	}
 
@@ -137,7 +158,18 @@ public class BookmarkControl implements Bookmark {
 		if (bookmark!=null && bookmark.getId()!=null) {
 			BookmarkDBAdapter db = new BookmarkDBAdapter(BibleApplication.getApplication().getApplicationContext());
 			db.open();
-			bOk = db.removeBookmark(bookmark);
+			try {
+				bOk = db.removeBookmark(bookmark);
+				if (bOk) {
+					// another bookmark may start at the same verse
+					bookmarkedVerses.removed(bookmark.getKey(), db.isBookmarkStartingAt(bookmark.getKey()));
+				}
+			} finally {
+				db.close();
+			}
+			if (bOk) {
+				SwordContentFacade.getInstance().passageMarksChanged(bookmark.getKey());
+			}
 		}		
 		return bOk;
 	}
@@ -279,4 +311,17 @@ public class BookmarkControl implements Bookmark {
 		}
 		return keysWithBookmarks;
 	}
+
+	@Override
+	public VerseBitSet getVersesWithBookmarks(Key passage) {
+		VerseBitSet verses = bookmarkedVerses.getMarkedVerses();
+		if (verses==null) {
+			// could not be loaded so query the db
+			verses = new VerseBitSet();
+			for (Key key : getKeysWithBookmarksInPassage(passage)) {
+				verses.addOrdinal(KeyUtil.getVerse(key).getOrdinal());
+			}
+		}
+		return verses;
+	}
 }
@@ -10,6 +10,7 @@ import net.bible.android.view.activity.base.Dialogs;
 import net.bible.android.view.activity.search.SearchIndex;
 import net.bible.android.view.activity.search.SearchResults;
 import net.bible.service.common.Constants;
+import net.bible.service.sword.SwordContentFacade;
 import net.bible.service.sword.SwordDocumentFacade;
 
 import org.crosswire.jsword.book.Book;
@@ -20,6 +21,8 @@ import org.crosswire.jsword.index.IndexStatus;
 import org.crosswire.jsword.index.search.SearchType;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -133,7 +136,8 @@ public class LinkControl {
     	if (strongsBible == null) {
     		Dialogs.getInstance().showErrorMsg(R.string.no_indexed_bible_with_strongs_ref);
     		return;
-    	} else if (currentBible.equals(strongsBible) && !checkStrongs(currentBible)) {
+    	} else if (currentBible.equals(strongsBible) && SwordContentFacade.getInstance().getStrongsOccurrenceIndex(currentBible)==null && !checkStrongs(currentBible)) {
+    		// Strong's occurrences are found without the Lucene index if they were collected when the Bible was indexed
     		Log.d(TAG, "Index status is NOT DONE");
     		needToDownloadIndex = true;
     	}
@@ -167,10 +171,20 @@ public class LinkControl {
 	 */
 	private boolean checkStrongs(Book bible) {
 		try {
-			return bible.getIndexStatus().equals(IndexStatus.DONE) &&
-				   (bible.find("+[Gen 1:1] strong:h7225").getCardinality()>0 ||
-					bible.find("+[John 1:1] strong:g746").getCardinality()>0 ||
-					bible.find("+[Gen 1:1] strong:g746").getCardinality()>0);
+			if (!bible.getIndexStatus().equals(IndexStatus.DONE)) {
+				return false;
+			}
+			// search with the book's open searcher and check the results contain the probe verses instead of using JSword range queries
+			SwordContentFacade swordContentFacade = SwordContentFacade.getInstance();
+			Key gen1v1 = new Verse(BibleBook.GEN, 1, 1);
+			Key john1v1 = new Verse(BibleBook.JOHN, 1, 1);
+			Key beginning = swordContentFacade.search(bible, "strong:h7225");
+			if (beginning.contains(gen1v1)) {
+				return true;
+			}
+			// Greek Strongs in the NT or in a Septuagint
+			Key greekBeginning = swordContentFacade.search(bible, "strong:g746");
+			return greekBeginning.contains(john1v1) || greekBeginning.contains(gen1v1);
 		} catch (BookException be) {
 			Log.e(TAG, "Error checking strongs numbers", be);
 			return false;
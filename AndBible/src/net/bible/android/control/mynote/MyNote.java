@@ -8,6 +8,7 @@ import java.util.List;
 import net.bible.service.db.mynote.MyNoteDto;
 
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 /**
  * Control MyNote functionality
@@ -21,6 +22,9 @@ public interface MyNote {
 
 	/** get a list of Keys which have notes in the passage (normally a chapter) */
 	List<Key> getKeysWithNotesInPassage(Key passage);
+
+	/** get the verses at which notes start, which include those in the passage and may include others */
+	VerseBitSet getVersesWithNotes(Key passage);
 	
 	/** show add or edit depending on existence of note */
 	public int getAddEditMenuText();
@@ -12,10 +12,14 @@ import net.bible.android.activity.R;
 import net.bible.android.control.ControlFactory;
 import net.bible.android.control.page.CurrentPageManager;
 import net.bible.service.common.CommonUtils;
+import net.bible.service.db.MarkedVerses;
 import net.bible.service.db.mynote.MyNoteDBAdapter;
 import net.bible.service.db.mynote.MyNoteDto;
+import net.bible.service.sword.SwordContentFacade;
 
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 import android.util.Log;
 import android.widget.Toast;
@@ -30,6 +34,20 @@ import android.widget.Toast;
  */
 public class MyNoteControl implements MyNote {
 	
+	// every page shows notes so avoid querying the db for each page
+	private MarkedVerses annotatedVerses = new MarkedVerses("MyNotes") {
+		@Override
+		protected VerseBitSet loadMarkedVerses() {
+			MyNoteDBAdapter db = new MyNoteDBAdapter(BibleApplication.getApplication().getApplicationContext());
+			db.open();
+			try {
+				return db.getVersesWithNotes();
+			} finally {
+				db.close();
+			}
+		}
+	};
+
 	private static final String TAG = "MyNoteControl";
 
 	public int getAddEditMenuText() {
@@ -183,7 +201,18 @@ public class MyNoteControl implements MyNote {
 		if (myNote!=null && myNote.getId()!=null) {
 			MyNoteDBAdapter db = new MyNoteDBAdapter(BibleApplication.getApplication().getApplicationContext());
 			db.open();
-			bOk = db.removeMyNote(myNote);
+			try {
+				bOk = db.removeMyNote(myNote);
+				if (bOk) {
+					// another note may start at the same verse
+					annotatedVerses.removed(myNote.getKey(), db.isNoteStartingAt(myNote.getKey()));
+				}
+			} finally {
+				db.close();
+			}
+			if (bOk) {
+				SwordContentFacade.getInstance().passageMarksChanged(myNote.getKey());
+			}
 		}		
 		return bOk;
 	}
@@ -198,6 +227,10 @@ public class MyNoteControl implements MyNote {
 		} finally {
 			db.close();
 		}
+		if (newMyNote!=null) {
+			annotatedVerses.added(newMyNote.getKey());
+			SwordContentFacade.getInstance().passageMarksChanged(newMyNote.getKey());
+		}
 		return newMyNote;
 	}
 
@@ -234,4 +267,17 @@ public class MyNoteControl implements MyNote {
 		}
 		return keysWithNotes;
 	}
+
+	@Override
+	public VerseBitSet getVersesWithNotes(Key passage) {
+		VerseBitSet verses = annotatedVerses.getMarkedVerses();
+		if (verses==null) {
+			// could not be loaded so query the db
+			verses = new VerseBitSet();
+			for (Key key : getKeysWithNotesInPassage(passage)) {
+				verses.addOrdinal(KeyUtil.getVerse(key).getOrdinal());
+			}
+		}
+		return verses;
+	}
 }
@@ -5,6 +5,8 @@ import java.util.List;
 
 import net.bible.android.activity.R;
 import net.bible.android.view.activity.base.Dialogs;
+import net.bible.service.sword.KeyCatalogue;
+import net.bible.service.sword.SwordDocumentFacade;
 
 import org.apache.commons.lang.StringUtils;
 import org.crosswire.jsword.book.Book;
@@ -15,6 +17,11 @@ import android.util.Log;
 abstract public class CachedKeyPage extends CurrentPageBase  {
 
 	private List<Key> mCachedGlobalKeyList;
+	private KeyPrefixIndex mKeyPrefixIndex;
+	private KeyPositionIndex mKeyPositionIndex;
+	
+	// dictionary keys are listed from a memory mapped file instead of being held in memory
+	private KeyCatalogue mKeyCatalogue;
 
 	private static String TAG = "CachedKeyPage";
 	
@@ -27,12 +34,15 @@ abstract public class CachedKeyPage extends CurrentPageBase  {
 		// if doc changes then clear any caches from the previous doc
 		if (doc!=null && !doc.equals(getCurrentDocument())) {
 			mCachedGlobalKeyList = null;
+			mKeyPrefixIndex = null;
+			mKeyPositionIndex = null;
+			mKeyCatalogue = null;
 		}
 		super.setCurrentDocument(doc);
 	}
 
-	//TODO remove this and do binary search of globalkeylist
 	/** make dictionary key lookup much faster
+	 * Dictionary keys are read from the dictionary's key catalogue which is only slow to open the first time
 	 * 
 	 * @return
 	 */
@@ -41,14 +51,19 @@ abstract public class CachedKeyPage extends CurrentPageBase  {
 			try {
 				Log.d(TAG, "Start to create cached key list for "+getCurrentDocument());
 				// this cache is cleared in setCurrentDoc
-		    	mCachedGlobalKeyList = new ArrayList<Key>();
-
-		    	for (Key key : getCurrentDocument().getGlobalKeyList()) {
-		    		// root key has no name and can be ignored but also check for any other keys with no name
-		    		if (!StringUtils.isEmpty(key.getName())) {
-						mCachedGlobalKeyList.add(key);
-		    		}
-		    	}
+				mKeyCatalogue = SwordDocumentFacade.getInstance().getKeyCatalogue(getCurrentDocument());
+				if (mKeyCatalogue!=null) {
+					mCachedGlobalKeyList = mKeyCatalogue.getKeyList();
+				} else {
+			    	mCachedGlobalKeyList = new ArrayList<Key>();
+	
+			    	for (Key key : getCurrentDocument().getGlobalKeyList()) {
+			    		// root key has no name and can be ignored but also check for any other keys with no name
+			    		if (!StringUtils.isEmpty(key.getName())) {
+							mCachedGlobalKeyList.add(key);
+			    		}
+			    	}
+				}
 
 			} catch (OutOfMemoryError oom) {
 				mCachedGlobalKeyList = null;
@@ -66,6 +81,22 @@ abstract public class CachedKeyPage extends CurrentPageBase  {
 		return mCachedGlobalKeyList;
 	}
 
+	/** keys sorted by case folded name for finding keys which start with some text
+	 * 
+	 * @return the index or null if there is no current document or its keys could not be read
+	 */
+	public KeyPrefixIndex getKeyPrefixIndex() {
+		List<Key> keyList = getCachedGlobalKeyList();
+		// this index is cleared along with the cached key list in setCurrentDoc
+		if (mKeyPrefixIndex==null && keyList!=null) {
+			Log.d(TAG, "Start to create key prefix index for "+getCurrentDocument());
+			// the catalogue's sorted names are used so no name is held in memory for each key
+			mKeyPrefixIndex = mKeyCatalogue!=null ? new KeyPrefixIndex(mKeyCatalogue) : new KeyPrefixIndex(keyList);
+			Log.d(TAG, "Finished creating key prefix index");
+		}
+		return mKeyPrefixIndex;
+	}
+
 	/** add or subtract a number of pages from the current position and return Verse
 	 */
 	public Key getKeyPlus(int num) {
@@ -83,6 +114,24 @@ abstract public class CachedKeyPage extends CurrentPageBase  {
 	/** find index of key in cached key list but cater for TreeKeys too
 	 */
 	protected int findIndexOf(Key key) {
-		return TreeKeyHelper.findIndexOf(key, getCachedGlobalKeyList());
+		List<Key> keyList = getCachedGlobalKeyList();
+		if (mKeyCatalogue!=null) {
+			// look up the catalogue's hash table without creating a Key for every entry
+			return key!=null ? mKeyCatalogue.indexOf(key.getName()) : -1;
+		}
+		if (keyList==null) {
+			return -1;
+		}
+		// this index is cleared along with the cached key list in setCurrentDoc
+		if (mKeyPositionIndex==null) {
+			mKeyPositionIndex = new KeyPositionIndex(keyList);
+		}
+		return mKeyPositionIndex.indexOf(key);
+	}
+
+	/** find index of key in cached key list e.g. to select the current key in a list of keys
+	 */
+	public int getKeyPosition(Key key) {
+		return findIndexOf(key);
 	}
 }
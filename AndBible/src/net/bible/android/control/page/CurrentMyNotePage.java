@@ -10,6 +10,7 @@ import net.bible.service.format.FormattedDocument;
 
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookCategory;
+import org.crosswire.jsword.passage.Key;
 
 import android.util.Log;
 import android.view.Menu;
@@ -38,9 +39,9 @@ public class CurrentMyNotePage extends CurrentCommentaryPage implements CurrentP
 	}
 
 	@Override
-	public FormattedDocument getCurrentPageContent() throws ParseException {
+	public FormattedDocument getPageContent(Key key) throws ParseException {
         FormattedDocument formattedDocument = new FormattedDocument();
-        formattedDocument.setHtmlPassage(ControlFactory.getInstance().getMyNoteControl().getMyNoteTextByKey(getKey()));
+        formattedDocument.setHtmlPassage(ControlFactory.getInstance().getMyNoteControl().getMyNoteTextByKey(key));
         return formattedDocument;	
 	}
 	
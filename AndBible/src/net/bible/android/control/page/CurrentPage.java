@@ -55,6 +55,9 @@ public interface CurrentPage {
 	/** get a page to display */
 	public FormattedDocument getCurrentPageContent() throws ParseException;
 
+	/** get the content of any page in the current document e.g. to prefetch the next page */
+	public FormattedDocument getPageContent(Key key) throws ParseException;
+
 	public abstract void updateOptionsMenu(Menu menu);
 	public abstract void updateContextMenu(Menu menu);
 
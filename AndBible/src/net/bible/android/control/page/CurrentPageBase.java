@@ -105,7 +105,12 @@ abstract class CurrentPageBase implements CurrentPage {
 
 	@Override
 	public FormattedDocument getCurrentPageContent() throws ParseException {
-        FormattedDocument formattedDocument = SwordContentFacade.getInstance().readHtmlText(getCurrentDocument(), getKey());
+		return getPageContent(getKey());
+	}
+
+	@Override
+	public FormattedDocument getPageContent(Key key) throws ParseException {
+        FormattedDocument formattedDocument = SwordContentFacade.getInstance().readHtmlText(getCurrentDocument(), key);
                 
         if (StringUtils.isEmpty(formattedDocument.getHtmlPassage())) {
         	String htmlMsg = HtmlMessageFormatter.format(R.string.error_no_content);
@@ -0,0 +1,65 @@
+package net.bible.android.control.page;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.TreeKey;
+
+/** The position of each key in a key list so moving to the next or previous key does not search the whole list.
+ * TreeKeys (as used by GenBooks) are identified by the names of the key and all its parents because child keys can
+ * have the same name but different parents, and other keys by name alone.  Matching is the same as TreeKeyHelper.findIndexOf.
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class KeyPositionIndex {
+
+	// position of the first key with each name, used to find keys which are not TreeKeys
+	private Map<String, Integer> namePositions;
+	// position of the first key with each path, used to find TreeKeys
+	private Map<String, Integer> pathPositions;
+
+	private static final char PATH_SEPARATOR = '\u0000';
+
+	public KeyPositionIndex(List<Key> keyList) {
+		namePositions = new HashMap<String, Integer>(keyList.size()*2);
+		pathPositions = new HashMap<String, Integer>(keyList.size()*2);
+		for (int i=0; i<keyList.size(); i++) {
+			Key key = keyList.get(i);
+			putFirst(namePositions, key.getName(), i);
+			putFirst(pathPositions, getPath(key), i);
+		}
+	}
+
+	/** find index of key in the key list
+	 * 
+	 * @return the position or -1 if not found
+	 */
+	public int indexOf(Key key) {
+		if (key==null) {
+			return -1;
+		}
+		// only TreeKeys are compared with the parents of keys in the list
+		Integer position = key instanceof TreeKey ? pathPositions.get(getPath(key)) : namePositions.get(key.getName());
+		return position!=null ? position : -1;
+	}
+
+	private static void putFirst(Map<String, Integer> positions, String id, int position) {
+		if (!positions.containsKey(id)) {
+			positions.put(id, position);
+		}
+	}
+
+	/** the names of a key and all its parents
+	 */
+	private static String getPath(Key key) {
+		StringBuilder path = new StringBuilder();
+		for (Key node=key; node!=null; node=node.getParent()) {
+			path.append(node.getName()).append(PATH_SEPARATOR);
+		}
+		return path.toString();
+	}
+}
@@ -0,0 +1,161 @@
+package net.bible.android.control.page;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import net.bible.service.sword.KeyCatalogue;
+
+import org.crosswire.jsword.passage.Key;
+
+/** Keys sorted by case folded name so that the keys starting with some text are found by binary search
+ * instead of folding the case of every key name whenever the text changes.
+ * The keys of a dictionary with a key catalogue are searched in the catalogue's sorted names so that no name is held
+ * in memory, otherwise the folded names are sorted when the index is created.
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class KeyPrefixIndex {
+
+	private List<Key> keys;
+	
+	// sorted case folded key names and the position in keys of each name, unless the keys are in a catalogue
+	private String[] foldedNames;
+	private int[] keyPositions;
+
+	private KeyCatalogue keyCatalogue;
+
+	public KeyPrefixIndex(KeyCatalogue keyCatalogue) {
+		this.keyCatalogue = keyCatalogue;
+		keys = keyCatalogue.getKeyList();
+	}
+
+	public KeyPrefixIndex(List<Key> keys) {
+		this.keys = keys;
+		int numKeys = keys.size();
+		final String[] names = new String[numKeys];
+		boolean isSorted = true;
+		for (int i=0; i<numKeys; i++) {
+			names[i] = fold(keys.get(i).getName());
+			isSorted &= i==0 || names[i-1].compareTo(names[i])<=0;
+		}
+
+		keyPositions = new int[numKeys];
+		if (isSorted) {
+			// most dictionaries are already in alphabetical order
+			foldedNames = names;
+			for (int i=0; i<numKeys; i++) {
+				keyPositions[i] = i;
+			}
+		} else {
+			// the sort is stable so keys with the same name stay in dictionary order
+			Integer[] order = new Integer[numKeys];
+			for (int i=0; i<numKeys; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer pos1, Integer pos2) {
+					return names[pos1].compareTo(names[pos2]);
+				}
+			});
+			foldedNames = new String[numKeys];
+			for (int i=0; i<numKeys; i++) {
+				keyPositions[i] = order[i];
+				foldedNames[i] = names[order[i]];
+			}
+		}
+	}
+
+	/** find the keys whose names start with prefix, ignoring case
+	 */
+	public Matches findMatches(String prefix) {
+		return findMatches(fold(prefix), 0, size());
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	private Matches findMatches(String foldedPrefix, int from, int to) {
+		if (keyCatalogue!=null) {
+			int[] range = keyCatalogue.findPrefix(foldedPrefix, from, to);
+			return new Matches(foldedPrefix, range[0], range[1]);
+		}
+		int start = lowerBound(foldedPrefix, from, to);
+		// every name starting with the prefix sorts before the prefix followed by the highest char
+		int end = lowerBound(foldedPrefix+Character.MAX_VALUE, start, to);
+		return new Matches(foldedPrefix, start, end);
+	}
+
+	/** the position of the first name which is not less than name
+	 */
+	private int lowerBound(String name, int from, int to) {
+		int low = from;
+		int high = to;
+		while (low<high) {
+			int mid = (low+high)>>>1;
+			if (foldedNames[mid].compareTo(name)<0) {
+				low = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static String fold(String name) {
+		return KeyCatalogue.foldCase(name);
+	}
+
+	/** a range of keys matching a prefix which can be narrowed as more of the prefix is typed
+	 */
+	public class Matches {
+		private String foldedPrefix;
+		private int start;
+		private int end;
+
+		private Matches(String foldedPrefix, int start, int end) {
+			this.foldedPrefix = foldedPrefix;
+			this.start = start;
+			this.end = end;
+		}
+
+		/** find matches for a new prefix, only searching these matches if the new prefix extends this one
+		 */
+		public Matches findMatches(String prefix) {
+			String newFoldedPrefix = fold(prefix);
+			if (newFoldedPrefix.startsWith(foldedPrefix)) {
+				return KeyPrefixIndex.this.findMatches(newFoldedPrefix, start, end);
+			} else {
+				return KeyPrefixIndex.this.findMatches(newFoldedPrefix, 0, KeyPrefixIndex.this.size());
+			}
+		}
+
+		public int size() {
+			return end-start;
+		}
+
+		public Key get(int index) {
+			int sortedIndex = start+index;
+			return keys.get(keyCatalogue!=null ? keyCatalogue.getSortedPosition(sortedIndex) : keyPositions[sortedIndex]);
+		}
+
+		/** get a page of matching keys
+		 * 
+		 * @param from the index of the first match to return
+		 * @param max the maximum number of keys to return
+		 */
+		public List<Key> getKeys(int from, int max) {
+			int to = Math.min(size(), from+max);
+			List<Key> page = new ArrayList<Key>(Math.max(0, to-from));
+			for (int i=from; i<to; i++) {
+				page.add(get(i));
+			}
+			return page;
+		}
+	}
+}
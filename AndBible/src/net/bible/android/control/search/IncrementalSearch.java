@@ -0,0 +1,98 @@
+package net.bible.android.control.search;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.bible.android.control.search.SearchControl.SearchBibleSection;
+
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.index.search.SearchType;
+
+import android.util.Log;
+
+/** Search as the user types.  A search is only run once the user pauses typing and any search still running
+ * for earlier search text is cancelled so that it stops using the cpu.
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class IncrementalSearch {
+
+	/** receives the counts of each completed search, in a background thread
+	 */
+	public interface SearchHitCountsListener {
+		void onSearchHitCounts(SearchHitCounts hitCounts);
+	}
+
+	// wait this long after the last change before searching
+	private static final long DEBOUNCE_MILLIS = 300;
+	
+	// very short words match most of the Bible and are probably not finished yet
+	private static final int MIN_SEARCH_TEXT_LENGTH = 2;
+
+	private String document;
+	private SearchHitCountsListener listener;
+	private SearchControl searchControl;
+
+	// one thread so searches never compete with each other
+	private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private ScheduledFuture<?> pendingSearch;
+	private AtomicBoolean isCurrentSearchCancelled = new AtomicBoolean();
+
+	private static final String TAG = "IncrementalSearch";
+
+	public IncrementalSearch(String document, SearchControl searchControl, SearchHitCountsListener listener) {
+		this.document = document;
+		this.searchControl = searchControl;
+		this.listener = listener;
+	}
+
+	/** the search text or type has changed so cancel any earlier search and search again after a short delay
+	 */
+	public synchronized void setSearchText(String searchText, SearchType searchType) {
+		cancel();
+		if (searchText==null || searchText.trim().length()<MIN_SEARCH_TEXT_LENGTH) {
+			return;
+		}
+
+		// the hit counts include each testament so the query has no Bible section limitation
+		final String decoratedSearchText = searchControl.decorateSearchString(searchText, searchType, SearchBibleSection.ALL);
+		final AtomicBoolean isCancelled = new AtomicBoolean();
+		isCurrentSearchCancelled = isCancelled;
+		pendingSearch = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					SearchHitCounts hitCounts = searchControl.countSearchHits(document, decoratedSearchText, isCancelled);
+					if (hitCounts!=null && !isCancelled.get()) {
+						listener.onSearchHitCounts(hitCounts);
+					}
+				} catch (BookException e) {
+					// partly typed queries e.g. with an unclosed quote are often invalid
+					Log.d(TAG, "Incremental search failed:"+decoratedSearchText+" "+e.getMessage());
+				}
+			}
+		}, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/** stop waiting to search and stop any search which is running
+	 */
+	public synchronized void cancel() {
+		if (pendingSearch!=null) {
+			pendingSearch.cancel(false);
+			pendingSearch = null;
+		}
+		isCurrentSearchCancelled.set(true);
+	}
+
+	/** cancel searches and release the search thread
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdown();
+	}
+}
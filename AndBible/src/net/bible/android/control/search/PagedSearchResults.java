@@ -0,0 +1,77 @@
+package net.bible.android.control.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseBitSet;
+
+/** Search results which are converted into Keys a page at a time as the user scrolls
+ * so showing the first results does not depend on the total number of matches
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class PagedSearchResults {
+
+	public static final int PAGE_SIZE = 50;
+
+	// Bible search results are bitmaps of verse ordinals so a page can start anywhere without counting preceding verses
+	private VerseBitSet verses;
+	private int nextOrdinal = 0;
+
+	// results from other books
+	private Key keys;
+
+	private int totalCount;
+	private int returnedCount = 0;
+
+	/**
+	 * @param result the search result
+	 * @param sectionVerses limit Bible results to these verses, or null for no limit
+	 */
+	public PagedSearchResults(Key result, VerseBitSet sectionVerses) {
+		if (result instanceof Passage) {
+			verses = VerseBitSet.valueOf(result);
+			if (sectionVerses!=null) {
+				verses.and(sectionVerses);
+			}
+			totalCount = verses.countVerses();
+		} else if (result!=null) {
+			keys = result;
+			totalCount = result.getCardinality();
+		}
+	}
+
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	public synchronized boolean hasMorePages() {
+		return returnedCount<totalCount;
+	}
+
+	/** get the next page of results
+	 * 
+	 * @return up to PAGE_SIZE keys, or an empty list if all have been returned
+	 */
+	public synchronized List<Key> getNextPage() {
+		List<Key> page;
+		if (verses!=null) {
+			page = verses.getVerses(nextOrdinal, PAGE_SIZE);
+			if (!page.isEmpty()) {
+				nextOrdinal = ((Verse)page.get(page.size()-1)).getOrdinal()+1;
+			}
+		} else {
+			page = new ArrayList<Key>();
+			for (int i=returnedCount; i<Math.min(returnedCount+PAGE_SIZE, totalCount); i++) {
+				page.add(keys.get(i));
+			}
+		}
+		returnedCount += page.size();
+		return page;
+	}
+}
@@ -1,7 +1,13 @@
 package net.bible.android.control.search;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import net.bible.android.SharedConstants;
 import net.bible.android.activity.R;
@@ -17,9 +23,17 @@ import net.bible.service.sword.SwordDocumentFacade;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.IndexStatusEvent;
+import org.crosswire.jsword.index.IndexStatusListener;
+import org.crosswire.jsword.index.lucene.PdaIndexSearcherManager;
 import org.crosswire.jsword.index.lucene.PdaLuceneIndexCreator;
 import org.crosswire.jsword.index.search.SearchType;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseBitSet;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.BibleInfo;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -35,6 +49,10 @@ public class SearchControl {
 	}
 	private static final String SEARCH_OLD_TESTAMENT = "+[Gen-Mal]";
 	private static final String SEARCH_NEW_TESTAMENT = "+[Mat-Rev]";
+	
+	// section limits are applied to search results as bitwise ANDs rather than by Lucene
+	private static final VerseBitSet OLD_TESTAMENT_VERSES = VerseBitSet.range(new Verse(BibleBook.GEN, 1, 1), new Verse(BibleBook.MAL, 4, 6));
+	private static final VerseBitSet NEW_TESTAMENT_VERSES = VerseBitSet.range(new Verse(BibleBook.MATT, 1, 1), new Verse(BibleBook.REV, 22, 21));
 //	private BookName currentBibleBook; 
 
 	public static final String SEARCH_TEXT = "SearchText";
@@ -44,7 +62,41 @@ public class SearchControl {
 	private static final String STRONG_COLON_STRING = PdaLuceneIndexCreator.FIELD_STRONG+":";
 	private static final String STRONG_COLON_STRING_PLACE_HOLDER = PdaLuceneIndexCreator.FIELD_STRONG+"COLON";
 	
-	public static final int MAX_SEARCH_RESULTS = 1000;
+	/** a search for just one Strong's number e.g. from an 'all occurrences' link can use the Strong's occurrence index */
+	private static final Pattern STRONGS_ONLY_SEARCH = Pattern.compile(STRONG_COLON_STRING+"([GgHh][0-9]+)");
+	
+	// verse texts of recently displayed search results, least recently used first
+	private static final int MAX_CACHED_VERSE_TEXTS = 300;
+	private Map<Key, String> verseTextCache = new LinkedHashMap<Key, String>(MAX_CACHED_VERSE_TEXTS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+			return size()>MAX_CACHED_VERSE_TEXTS;
+		}
+	};
+	private Book verseTextCacheBook;
+	
+	// results of recent queries keyed by book initials and query without any OT/NT limitation, least recently used first.
+	// Each result is a bitmap of all verses so limit the number of results to a small fraction of the heap
+	private static final int MAX_CACHED_SEARCH_RESULTS = (int)Math.max(4, Runtime.getRuntime().maxMemory()/64/(BibleInfo.versesInBible()/8));
+	private static final String SEARCH_RESULT_CACHE_KEY_SEPARATOR = "\n";
+	private Map<String, VerseBitSet> searchResultCache = new LinkedHashMap<String, VerseBitSet>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, VerseBitSet> eldest) {
+			return size()>MAX_CACHED_SEARCH_RESULTS;
+		}
+	};
+	// incremented whenever cached results are cleared so a search which overlapped the clear is not cached
+	private int searchResultCacheGeneration;
+
+	// cached results are cleared whenever a book's index is scheduled, finished, fails or is deleted
+	private IndexStatusListener indexStatusListener = new IndexStatusListener() {
+		public void statusChanged(IndexStatusEvent ev) {
+			Log.d(TAG, "Index status changed to "+ev.getIndexStatus());
+			clearCachedSearchResults((Book)ev.getSource());
+		}
+	};
 
 	private static final String TAG = "SearchControl";
 	
@@ -59,6 +111,8 @@ public class SearchControl {
     	Activity currentActivity = CurrentActivityHolder.getInstance().getCurrentActivity();
     	if (indexStatus.equals(IndexStatus.DONE)) {
     		Log.d(TAG, "Index status is DONE");
+    		// open the index while the user types the search text
+    		PdaIndexSearcherManager.getInstance().warmInBackground(document);
     	    return new Intent(currentActivity, Search.class);
     	} else {
     		Log.d(TAG, "Index status is NOT DONE");
@@ -84,28 +138,175 @@ public class SearchControl {
     	return decorated;
     }
 
-    /** do the search query and prepare results in lists ready for display
-     * 
+    /** do the search query and return results which are fetched a page at a time so the first results can be shown
+     * without preparing all of them
      */
-    public List<Key> getSearchResults(String document, String searchText) throws BookException {
+    public PagedSearchResults getPagedSearchResults(String document, String searchText) throws BookException {
     	Log.d(TAG, "Preparing search results");
-    	List<Key> resultKeys = new ArrayList<Key>();
     	
-    	// search the current book
-        Book book = SwordDocumentFacade.getInstance().getDocumentByInitials(document);
-    	Key result = SwordContentFacade.getInstance().search(book, searchText);
+    	// remove any OT/NT limitation from the query and apply it to the results instead
+    	VerseBitSet sectionVerses = null;
+    	searchText = searchText.trim();
+    	if (searchText.startsWith(SEARCH_OLD_TESTAMENT)) {
+    		sectionVerses = OLD_TESTAMENT_VERSES;
+    		searchText = searchText.substring(SEARCH_OLD_TESTAMENT.length()).trim();
+    	} else if (searchText.startsWith(SEARCH_NEW_TESTAMENT)) {
+    		sectionVerses = NEW_TESTAMENT_VERSES;
+    		searchText = searchText.substring(SEARCH_NEW_TESTAMENT.length()).trim();
+    	}
+
+    	// the same query is often repeated e.g. when returning to the results or changing between OT and NT
+    	String resultCacheKey = getSearchResultCacheKey(document, searchText);
+    	Key result;
+    	int cacheGeneration;
+    	synchronized (searchResultCache) {
+    		result = searchResultCache.get(resultCacheKey);
+    		cacheGeneration = searchResultCacheGeneration;
+    	}
     	if (result!=null) {
-    		int resNum = result.getCardinality();
-        	Log.d(TAG, "Number of results:"+resNum);
+    		Log.d(TAG, "Using cached search results");
+    	} else {
+	    	// search the current book
+	        Book book = SwordDocumentFacade.getInstance().getDocumentByInitials(document);
+	    	Matcher strongsOnlyMatcher = STRONGS_ONLY_SEARCH.matcher(searchText);
+	    	if (strongsOnlyMatcher.matches()) {
+	    		result = SwordContentFacade.getInstance().findStrongsOccurrences(book, strongsOnlyMatcher.group(1));
+	    	}
+	    	if (result==null) {
+	    		result = SwordContentFacade.getInstance().search(book, searchText);
+	    	}
+	    	
+	    	// only Bible results are cached because they have a known size
+	    	if (result instanceof Passage) {
+	    		cacheSearchResult(book, resultCacheKey, VerseBitSet.valueOf(result), cacheGeneration);
+	    	}
+    	}
+    	// Bible search results are bitmaps of verse ordinals so counting and paging through them is fast
+    	PagedSearchResults pagedResults = new PagedSearchResults(result, sectionVerses);
+    	Log.d(TAG, "Number of results:"+pagedResults.getTotalCount());
+    	return pagedResults;
+    }
+
+    /** count the matching verses in the whole Bible and in each testament e.g. while the search text is being typed
+     * The result is cached so showing the full results afterwards is fast.
+     * 
+     * @param searchText search text decorated without any Bible section limitation
+     * @param isCancelled set by another thread to stop the search
+     * @return the counts, or null if the search was cancelled or the search cannot be cancelled
+     */
+    public SearchHitCounts countSearchHits(String document, String searchText, AtomicBoolean isCancelled) throws BookException {
+    	searchText = searchText.trim();
+        Book book = SwordDocumentFacade.getInstance().getDocumentByInitials(document);
+        SwordContentFacade swordContentFacade = SwordContentFacade.getInstance();
+    	if (book==null || !swordContentFacade.isCancellableSearchSupported(book, searchText)) {
+    		return null;
+    	}
 
-    		for (int i=0; i<Math.min(resNum, MAX_SEARCH_RESULTS+1); i++) {
-    			resultKeys.add(result.get(i));
+    	String resultCacheKey = getSearchResultCacheKey(document, searchText);
+    	VerseBitSet result;
+    	int cacheGeneration;
+    	synchronized (searchResultCache) {
+    		result = searchResultCache.get(resultCacheKey);
+    		cacheGeneration = searchResultCacheGeneration;
+    	}
+    	if (result==null) {
+    		result = swordContentFacade.searchBibleIndex(book, searchText, isCancelled);
+    		if (result==null) {
+    			return null;
     		}
+    		cacheSearchResult(book, resultCacheKey, result, cacheGeneration);
     	}
-    	
-    	return resultKeys;
+    	return new SearchHitCounts(searchText, result.countVerses(), result.countVersesIn(OLD_TESTAMENT_VERSES), result.countVersesIn(NEW_TESTAMENT_VERSES));
+    }
+
+    private String getSearchResultCacheKey(String document, String searchText) {
+    	return document+SEARCH_RESULT_CACHE_KEY_SEPARATOR+searchText;
     }
 
+    /** cache the result of a search unless cached results have been cleared since the search started
+     * because the index it used may have been replaced
+     */
+    private void cacheSearchResult(Book book, String resultCacheKey, VerseBitSet result, int cacheGeneration) {
+    	if (!book.getIndexStatus().equals(IndexStatus.DONE)) {
+    		return;
+    	}
+    	// listen for the index being replaced or deleted, removing first so the listener is only added once
+    	book.removeIndexStatusListener(indexStatusListener);
+    	book.addIndexStatusListener(indexStatusListener);
+    	synchronized (searchResultCache) {
+    		if (cacheGeneration==searchResultCacheGeneration) {
+    			searchResultCache.put(resultCacheKey, result);
+    		}
+    	}
+    }
+
+    /** forget cached results for a book e.g. because its index has been replaced or deleted
+     */
+    public void clearCachedSearchResults(Book book) {
+    	String keyPrefix = getSearchResultCacheKey(book.getInitials(), "");
+    	synchronized (searchResultCache) {
+    		searchResultCacheGeneration++;
+    		Iterator<String> keyIter = searchResultCache.keySet().iterator();
+    		while (keyIter.hasNext()) {
+    			if (keyIter.next().startsWith(keyPrefix)) {
+    				keyIter.remove();
+    			}
+    		}
+    	}
+    }
+
+    /** get the verse text for a search result if it has already been loaded
+     * 
+     * @return the text or null if not loaded yet
+     */
+	public String getCachedSearchResultVerseText(Key key) {
+		synchronized (verseTextCache) {
+			checkVerseTextCacheBook();
+			return verseTextCache.get(key);
+		}
+	}
+
+	/** load the verse text of a batch of search results e.g. the visible rows and the rows below them
+	 * All the verses are read together so each block of the book is uncompressed only once.
+	 * Called on a background thread.
+	 */
+	public void loadSearchResultVerseTexts(List<Key> keys) {
+		Book bible = CurrentPageManager.getInstance().getCurrentBible().getCurrentDocument();
+		List<Key> uncachedKeys = new ArrayList<Key>();
+		synchronized (verseTextCache) {
+			checkVerseTextCacheBook();
+			for (Key key : keys) {
+				if (!verseTextCache.containsKey(key)) {
+					uncachedKeys.add(key);
+				}
+			}
+		}
+		if (uncachedKeys.isEmpty()) {
+			return;
+		}
+
+		Map<Key, String> verseTexts = SwordContentFacade.getInstance().getCanonicalTexts(bible, uncachedKeys);
+		synchronized (verseTextCache) {
+			if (bible!=verseTextCacheBook) {
+				// Bible changed while loading
+				return;
+			}
+			for (Map.Entry<Key, String> verseText : verseTexts.entrySet()) {
+				verseTextCache.put(verseText.getKey(), CommonUtils.limitTextLength(verseText.getValue()));
+			}
+		}
+	}
+
+	/** cached verse texts are from the current Bible
+	 */
+	private void checkVerseTextCacheBook() {
+		Book bible = CurrentPageManager.getInstance().getCurrentBible().getCurrentDocument();
+		if (bible!=verseTextCacheBook) {
+			verseTextCache.clear();
+			verseTextCacheBook = bible;
+		}
+	}
+
     /** get the verse for a search result
      */
 	public String getSearchResultVerseText(Key key) {
@@ -169,6 +370,7 @@ public class SearchControl {
         	} else {
 		        
 		        if (SwordDocumentFacade.getInstance().isIndexDownloadAvailable(book)) {
+		        	clearCachedSearchResults(book);
 			        // this starts a new thread to do the indexing and returns immediately
 			        // if index creation is already in progress then nothing will happen
 			        SwordDocumentFacade.getInstance().downloadIndex(book);
@@ -194,6 +396,7 @@ public class SearchControl {
 	public boolean createIndex(Book book) {
 		boolean ok = false;
     	try {
+    		clearCachedSearchResults(book);
 	        // this starts a new thread to do the indexing and returns immediately
 	        // if index creation is already in progress then nothing will happen
 	        SwordDocumentFacade.getInstance().ensureIndexCreation(book);
@@ -0,0 +1,37 @@
+package net.bible.android.control.search;
+
+/** The number of verses matching a search in the whole Bible and in each testament
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class SearchHitCounts {
+
+	private String searchText;
+	private int allCount;
+	private int oldTestamentCount;
+	private int newTestamentCount;
+
+	public SearchHitCounts(String searchText, int allCount, int oldTestamentCount, int newTestamentCount) {
+		this.searchText = searchText;
+		this.allCount = allCount;
+		this.oldTestamentCount = oldTestamentCount;
+		this.newTestamentCount = newTestamentCount;
+	}
+
+	/** the search text the counts are for
+	 */
+	public String getSearchText() {
+		return searchText;
+	}
+	public int getAllCount() {
+		return allCount;
+	}
+	public int getOldTestamentCount() {
+		return oldTestamentCount;
+	}
+	public int getNewTestamentCount() {
+		return newTestamentCount;
+	}
+}
@@ -8,6 +8,9 @@ public interface DocumentView {
 
 	public abstract void show(String html, int jumpToVerse, float jumpToYOffsetRatio);
 
+	/** show html from a file - used for pages too large to pass as a String */
+	public abstract void showUrl(String url, int jumpToVerse, float jumpToYOffsetRatio);
+
 	public abstract void applyPreferenceSettings();
 	
 	public abstract boolean pageDown(boolean toBottom);
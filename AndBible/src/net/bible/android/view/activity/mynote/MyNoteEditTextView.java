@@ -53,6 +53,11 @@ public class MyNoteEditTextView extends EditText implements DocumentView {
 		setText(html);
 	}
 
+	@Override
+	public void showUrl(String url, int jumpToVerse, float jumpToYOffsetRatio) {
+		// notes are always small enough to be shown using show()
+	}
+
 	@Override
 	public void applyPreferenceSettings() {
 		SharedPreferences preferences = CommonUtils.getSharedPreferences();
@@ -1,11 +1,11 @@
 package net.bible.android.view.activity.navigation;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import net.bible.android.activity.R;
 import net.bible.android.control.page.CurrentPageManager;
+import net.bible.android.control.page.KeyPrefixIndex;
 import net.bible.android.view.activity.base.Dialogs;
 import net.bible.android.view.activity.base.ListActivityBase;
 
@@ -19,6 +19,8 @@ import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.ListView;
@@ -33,10 +35,14 @@ import android.widget.ListView;
 public class ChooseDictionaryWord extends ListActivityBase {
 	private static final String TAG = "ChooseDictionaryWord";
 	
-	private List<Key> mDictionaryGlobalList;
+	private KeyPrefixIndex mKeyPrefixIndex;
+	
+	// keys matching the current search text, added to mMatchingKeyList a page at a time as the user scrolls
+	private KeyPrefixIndex.Matches mMatches;
 	private List<Key> mMatchingKeyList;
 	
 	private static final int LIST_ITEM_TYPE = android.R.layout.simple_list_item_1; 
+	private static final int PAGE_SIZE = 100;
 	
     /** Called when the activity is first created. */
     @Override
@@ -68,6 +74,19 @@ public class ChooseDictionaryWord extends ListActivityBase {
 			}
         });
         searcheditText.requestFocus();
+
+        getListView().setOnScrollListener(new OnScrollListener() {
+			@Override
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+				if (firstVisibleItem+visibleItemCount >= totalItemCount-PAGE_SIZE/2) {
+					showNextPage();
+				}
+			}
+
+			@Override
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+			}
+		});
     }
 
     /**
@@ -91,11 +110,10 @@ public class ChooseDictionaryWord extends ListActivityBase {
 			@Override
 			public void run() {
 				try {
-					// getting all dictionary keys is slow so do in another thread in order to show hourglass
-					//TODO need to optimise this using binary search of globalkeylist without caching
+					// getting all dictionary keys and sorting them is slow so do in another thread in order to show hourglass
 					
 			    	//already checked a dictionary exists
-			    	mDictionaryGlobalList = CurrentPageManager.getInstance().getCurrentDictionary().getCachedGlobalKeyList(); 
+			    	mKeyPrefixIndex = CurrentPageManager.getInstance().getCurrentDictionary().getKeyPrefixIndex(); 
 			    	
 			    	Log.d(TAG, "Finished Initialising");
 				} catch (Throwable t) {
@@ -126,23 +144,17 @@ public class ChooseDictionaryWord extends ListActivityBase {
     private void showPossibleDictionaryKeys(String searchText) {
 		Log.d(TAG, "Search for:"+searchText);
 		try {
-			if (mDictionaryGlobalList!=null) {
-				searchText = searchText.toLowerCase();
-		
-				Iterator<Key> iter = mDictionaryGlobalList.iterator();
+			if (mKeyPrefixIndex!=null) {
+				// previous matches are narrowed as the user types more of a word
+				mMatches = mMatches==null ? mKeyPrefixIndex.findMatches(searchText) : mMatches.findMatches(searchText);
+				Log.d(TAG, "matches found:"+mMatches.size());
+
 				mMatchingKeyList.clear();
-				while (iter.hasNext()) {
-					Key key = iter.next();
-					if (key.getName().toLowerCase().startsWith(searchText)) {
-						mMatchingKeyList.add(key);
-					}
-				}
-				Log.d(TAG, "matches found:"+mMatchingKeyList.size());
-		
+				mMatchingKeyList.addAll(mMatches.getKeys(0, PAGE_SIZE));
 		    	notifyDataSetChanged();
 				Log.d(TAG, "Finished searching for:"+searchText);
 			} else {
-				Log.d(TAG, "Cached global key list is null");
+				Log.d(TAG, "Key prefix index is null");
 			}
 		} catch (Throwable e) {
 			Log.e(TAG, "Error finding matching keys", e);
@@ -150,6 +162,15 @@ public class ChooseDictionaryWord extends ListActivityBase {
 		}
     }
     
+    /** add the next page of matching keys to the list
+     */
+    private void showNextPage() {
+    	if (mMatches!=null && mMatchingKeyList.size()<mMatches.size()) {
+    		mMatchingKeyList.addAll(mMatches.getKeys(mMatchingKeyList.size(), PAGE_SIZE));
+    		notifyDataSetChanged();
+    	}
+    }
+    
     @Override
 	protected void onListItemClick(ListView l, View v, int position, long id) {
     	itemSelected(mMatchingKeyList.get(position));
@@ -71,6 +71,7 @@ public class ChooseDocument extends DocumentSelectionBase {
 						try {
 							Log.d(TAG, "Deleting:"+document);
 							SwordDocumentFacade.getInstance().deleteDocument(document);
+							ControlFactory.getInstance().getSearchControl().clearCachedSearchResults(document);
 
 							// the doc list should now change
 							reloadDocuments();
@@ -95,6 +96,7 @@ public class ChooseDocument extends DocumentSelectionBase {
 						try {
 							Log.d(TAG, "Deleting index:"+document);
 							SwordDocumentFacade.getInstance().deleteDocumentIndex(document);
+							ControlFactory.getInstance().getSearchControl().clearCachedSearchResults(document);
 						} catch (Exception e) {
 							showErrorMsg(R.string.error_occurred);
 						}
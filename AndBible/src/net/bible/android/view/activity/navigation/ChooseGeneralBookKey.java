@@ -7,7 +7,6 @@ import net.bible.android.activity.R;
 import net.bible.android.control.ControlFactory;
 import net.bible.android.control.page.CurrentGeneralBookPage;
 import net.bible.android.control.page.CurrentPageManager;
-import net.bible.android.control.page.TreeKeyHelper;
 import net.bible.android.view.activity.base.ListActivityBase;
 import net.bible.android.view.activity.page.MainBibleActivity;
 
@@ -50,9 +49,10 @@ public class ChooseGeneralBookKey extends ListActivityBase {
         setListAdapter(mKeyArrayAdapter);
         
         // if an item was selected previously then try to scroll to it
-        Key currentKey = getCurrentGeneralBookPage().getKey();
-        if (currentKey!=null && mGeneralBookKeyList.contains(currentKey)) {
-        	setSelection(TreeKeyHelper.findIndexOf(currentKey, mGeneralBookKeyList));
+        // mGeneralBookKeyList is a copy of the cached key list so positions are the same
+        int currentKeyPosition = getCurrentGeneralBookPage().getKeyPosition(getCurrentGeneralBookPage().getKey());
+        if (currentKeyPosition>=0 && currentKeyPosition<mGeneralBookKeyList.size()) {
+        	setSelection(currentKeyPosition);
         }
         
         Log.d(TAG, "Finished displaying Search view");
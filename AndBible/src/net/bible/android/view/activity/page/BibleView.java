@@ -171,6 +171,18 @@ public class BibleView extends WebView implements DocumentView {
 		mJumpToYOffsetRatio = jumpToYOffsetRatio;
 		loadDataWithBaseURL("http://baseUrl", html, "text/html", "UTF-8", "http://historyUrl");
 	}
+
+	/** show a page which was too large to generate as a String and was streamed to a file
+	 */
+	@Override
+	public void showUrl(String url, int jumpToVerse, float jumpToYOffsetRatio) {
+		Log.d(TAG, "ShowUrl("+url+","+jumpToVerse+","+jumpToYOffsetRatio+")");
+		applyFontSize();
+		
+		mJumpToVerse = jumpToVerse;
+		mJumpToYOffsetRatio = jumpToYOffsetRatio;
+		loadUrl(url);
+	}
 	
     @Override
     public void pausing() {
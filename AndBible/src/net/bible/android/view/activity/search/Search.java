@@ -2,7 +2,10 @@ package net.bible.android.view.activity.search;
 
 import net.bible.android.activity.R;
 import net.bible.android.control.ControlFactory;
+import net.bible.android.control.search.IncrementalSearch;
+import net.bible.android.control.search.IncrementalSearch.SearchHitCountsListener;
 import net.bible.android.control.search.SearchControl;
+import net.bible.android.control.search.SearchHitCounts;
 import net.bible.android.control.search.SearchControl.SearchBibleSection;
 import net.bible.android.view.activity.base.ActivityBase;
 import net.bible.android.view.activity.base.Callback;
@@ -15,6 +18,9 @@ import org.crosswire.jsword.index.search.SearchType;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
@@ -22,6 +28,7 @@ import android.view.View.OnKeyListener;
 import android.widget.EditText;
 import android.widget.RadioGroup;
 import android.widget.RadioGroup.OnCheckedChangeListener;
+import android.widget.TextView;
 
 /** Allow user to enter search criteria
  * 
@@ -34,12 +41,16 @@ public class Search extends ActivityBase {
 	private static final String TAG = "Search";
 	
 	private EditText mSearchTextInput;
+	private TextView mSearchHitCounts;
 	
 	private int wordsRadioSelection = R.id.allWords;
 	private int sectionRadioSelection = R.id.searchAllBible;
 	
 	private SearchControl searchControl = ControlFactory.getInstance().getSearchControl();
 	
+	// show the number of matches while the search text is typed
+	private IncrementalSearch incrementalSearch;
+	
     /** Called when the activity is first created. */
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -70,6 +81,33 @@ public class Search extends ActivityBase {
             }
         });
 
+        mSearchHitCounts = (TextView)findViewById(R.id.searchHitCounts);
+        final Handler uiHandler = new Handler();
+        incrementalSearch = new IncrementalSearch(getDocumentToSearch().getInitials(), searchControl, new SearchHitCountsListener() {
+			@Override
+			public void onSearchHitCounts(final SearchHitCounts hitCounts) {
+				uiHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						showSearchHitCounts(hitCounts);
+					}
+				});
+			}
+		});
+        mSearchTextInput.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void onTextChanged(CharSequence searchText, int arg1, int arg2, int arg3) {
+				searchTextChanged();
+			}
+
+			@Override
+			public void afterTextChanged(Editable searchText) {
+			}
+			@Override
+			public void beforeTextChanged(CharSequence arg0, int arg1,	int arg2, int arg3) {
+			}
+        });
+
         // pre-load search string if passed in
         Bundle extras = getIntent().getExtras();
         if (extras!=null) {
@@ -84,6 +122,7 @@ public class Search extends ActivityBase {
 			@Override
 			public void onCheckedChanged(RadioGroup group, int checkedId) {
 				wordsRadioSelection = checkedId;
+				searchTextChanged();
 			}
 		});        
 
@@ -98,8 +137,32 @@ public class Search extends ActivityBase {
         Log.d(TAG, "Finished displaying Search view");
     }
 
+    @Override
+	protected void onDestroy() {
+    	incrementalSearch.shutdown();
+		super.onDestroy();
+	}
+
+    /** search again for the current text, counts for the previous text are no longer valid
+     */
+	private void searchTextChanged() {
+		mSearchHitCounts.setText("");
+		incrementalSearch.setSearchText(mSearchTextInput.getText().toString(), getSearchType());
+	}
+
+	/** show the number of matches in each part of the Bible
+	 */
+	private void showSearchHitCounts(SearchHitCounts hitCounts) {
+		// ignore counts which arrive after the text has changed again
+		String currentSearchText = searchControl.decorateSearchString(mSearchTextInput.getText().toString(), getSearchType(), SearchBibleSection.ALL).trim();
+		if (currentSearchText.equals(hitCounts.getSearchText())) {
+			mSearchHitCounts.setText(getString(R.string.search_hit_counts, hitCounts.getAllCount(), hitCounts.getOldTestamentCount(), hitCounts.getNewTestamentCount()));
+		}
+	}
+
     public void onSearch(View v) {
     	Log.i(TAG, "CLICKED");
+    	incrementalSearch.cancel();
     	String searchText = mSearchTextInput.getText().toString();
     	if (!StringUtils.isEmpty(searchText)) {
 
@@ -1,5 +1,6 @@
 package net.bible.android.view.activity.search;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import net.bible.android.control.ControlFactory;
@@ -8,6 +9,7 @@ import net.bible.android.control.search.SearchControl;
 import org.crosswire.jsword.passage.Key;
 
 import android.content.Context;
+import android.os.AsyncTask;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -23,6 +25,10 @@ public class SearchItemAdapter extends ArrayAdapter<Key> {
 
 	private int resource;
 	private SearchControl searchControl;
+	
+	// verse text is loaded in the background for a batch of rows starting at the first row without text
+	private LoadVerseTextTask loadVerseTextTask;
+	private static final int VERSE_TEXT_BATCH_SIZE = 30;
 
 	public SearchItemAdapter(Context _context, int _resource, List<Key> _items) {
 		super(_context, _resource, _items);
@@ -52,10 +58,47 @@ public class SearchItemAdapter extends ArrayAdapter<Key> {
 
 		// set value for the second text field
 		if (view.getText2() != null) {
-			String verseText = searchControl.getSearchResultVerseText(item);
+			String verseText = searchControl.getCachedSearchResultVerseText(item);
+			if (verseText==null) {
+				// never block scrolling while verse text is read
+				verseText = "";
+				loadVerseTexts(position);
+			}
 			view.getText2().setText(verseText);
 		}
 
 		return view;
 	}
+
+	/** load verse text for this row and the rows after it, unless a batch is already loading.
+	 * When a batch has loaded all rows are redrawn which requests any rows which are still missing text.
+	 */
+	private void loadVerseTexts(int position) {
+		if (loadVerseTextTask==null) {
+			List<Key> keys = new ArrayList<Key>();
+			for (int i=position; i<Math.min(position+VERSE_TEXT_BATCH_SIZE, getCount()); i++) {
+				keys.add(getItem(i));
+			}
+			loadVerseTextTask = new LoadVerseTextTask();
+			loadVerseTextTask.execute(keys.toArray(new Key[keys.size()]));
+		}
+	}
+
+	private class LoadVerseTextTask extends AsyncTask<Key, Void, Void> {
+		@Override
+		protected Void doInBackground(Key... keys) {
+			List<Key> keyList = new ArrayList<Key>();
+			for (Key key : keys) {
+				keyList.add(key);
+			}
+			searchControl.loadSearchResultVerseTexts(keyList);
+			return null;
+		}
+
+		@Override
+		protected void onPostExecute(Void result) {
+			loadVerseTextTask = null;
+			notifyDataSetChanged();
+		}
+	}
 }
\ No newline at end of file
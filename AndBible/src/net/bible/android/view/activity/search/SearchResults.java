@@ -1,10 +1,12 @@
 package net.bible.android.view.activity.search;
 
- import java.util.List;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.bible.android.activity.R;
 import net.bible.android.control.ControlFactory;
 import net.bible.android.control.page.CurrentPageManager;
+import net.bible.android.control.search.PagedSearchResults;
 import net.bible.android.control.search.SearchControl;
 import net.bible.android.view.activity.base.Callback;
 import net.bible.android.view.activity.base.Dialogs;
@@ -15,9 +17,12 @@ import org.apache.commons.lang.StringUtils;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.Key;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.Toast;
@@ -31,8 +36,11 @@ import android.widget.Toast;
 public class SearchResults extends ListActivityBase {
 	private static final String TAG = "SearchResults";
 	
-    private List<Key> mSearchResults;
+    private List<Key> mSearchResults = new ArrayList<Key>();
     private ArrayAdapter<Key> mKeyArrayAdapter;
+    
+    // further pages of results are fetched as the user scrolls towards the end of the list
+    private PagedSearchResults mPagedSearchResults;
 
 	private static final int LIST_ITEM_TYPE = android.R.layout.simple_list_item_2;
 
@@ -43,51 +51,83 @@ public class SearchResults extends ListActivityBase {
         Log.i(TAG, "Displaying Search results view");
         setContentView(R.layout.list);
 
-        if (prepareResults()) {
-        	mKeyArrayAdapter = new SearchItemAdapter(this, LIST_ITEM_TYPE, mSearchResults);
-            setListAdapter(mKeyArrayAdapter);
-            
-            Log.d(TAG, "Finished displaying Search view");
-        }
+    	mKeyArrayAdapter = new SearchItemAdapter(this, LIST_ITEM_TYPE, mSearchResults);
+        setListAdapter(mKeyArrayAdapter);
+
+        getListView().setOnScrollListener(new OnScrollListener() {
+			@Override
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+				if (firstVisibleItem+visibleItemCount >= totalItemCount-PagedSearchResults.PAGE_SIZE/2) {
+					showNextPage();
+				}
+			}
+
+			@Override
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+			}
+		});
+
+        // get search string - passed in using extras so extras cannot be null
+        Bundle extras = getIntent().getExtras();
+		String searchText = extras.getString(SearchControl.SEARCH_TEXT);
+		String searchDocument = extras.getString(SearchControl.SEARCH_DOCUMENT);
+		if (StringUtils.isEmpty(searchDocument)) {
+			searchDocument = ControlFactory.getInstance().getCurrentPageControl().getCurrentPage().getCurrentDocument().getInitials();
+		}
+        new SearchTask().execute(searchDocument, searchText);
     }
 
-    /** do the search query and prepare results in lists ready for display
-     * 
+    /** do the search query in the background and show the first page of results as soon as it is ready
      */
-    private boolean prepareResults() {
-    	Log.d(TAG, "Preparing search results");
-    	boolean isOk;
+    private class SearchTask extends AsyncTask<String, Void, PagedSearchResults> {
+    	private Exception searchException;
+    	
+    	@Override
+    	protected PagedSearchResults doInBackground(String... params) {
+        	Log.d(TAG, "Preparing search results");
+        	try {
+        		PagedSearchResults pagedSearchResults = ControlFactory.getInstance().getSearchControl().getPagedSearchResults(params[0], params[1]);
+        		return pagedSearchResults;
+        	} catch (Exception e) {
+        		searchException = e;
+        		return null;
+        	}
+    	}
 
-    	try {
-    		// get search string - passed in using extras so extras cannot be null
-            Bundle extras = getIntent().getExtras();
-			String searchText = extras.getString(SearchControl.SEARCH_TEXT);
-			String searchDocument = extras.getString(SearchControl.SEARCH_DOCUMENT);
-			if (StringUtils.isEmpty(searchDocument)) {
-				searchDocument = ControlFactory.getInstance().getCurrentPageControl().getCurrentPage().getCurrentDocument().getInitials();
-			}
-			mSearchResults = ControlFactory.getInstance().getSearchControl().getSearchResults(searchDocument, searchText);
-		
-			// tell user how many results were returned
-			String msg;
-			if (mSearchResults.size()>=SearchControl.MAX_SEARCH_RESULTS) {
-				msg = getString(R.string.search_showing_first, SearchControl.MAX_SEARCH_RESULTS);
-			} else {
-				msg = getString(R.string.search_result_count, mSearchResults.size());
-			}
-			Toast.makeText(this, msg, Toast.LENGTH_SHORT).show();
-			isOk = true;
-    	} catch (Exception e) {
-    		Log.e(TAG, "Error processing search query", e);
-    		isOk = false;
-    		Dialogs.getInstance().showErrorMsg(R.string.error_executing_search, new Callback() {
-    			@Override
-    			public void okay() {
-    				onBackPressed();
-    			}
-    		});
+    	@Override
+    	protected void onPostExecute(PagedSearchResults pagedSearchResults) {
+    		if (searchException!=null) {
+        		Log.e(TAG, "Error processing search query", searchException);
+        		Dialogs.getInstance().showErrorMsg(R.string.error_executing_search, new Callback() {
+        			@Override
+        			public void okay() {
+        				onBackPressed();
+        			}
+        		});
+        		return;
+    		}
+
+    		mPagedSearchResults = pagedSearchResults;
+    		showNextPage();
+
+			// tell user how many results were found
+			String msg = getString(R.string.search_result_count, pagedSearchResults.getTotalCount());
+			Toast.makeText(SearchResults.this, msg, Toast.LENGTH_SHORT).show();
+            Log.d(TAG, "Finished displaying Search view");
+    	}
+    }
+
+    /** add the next page of results to the list
+     * Each page is converted from the result bitmap in well under a millisecond so this is done on the UI thread
+     */
+    private void showNextPage() {
+    	if (mPagedSearchResults!=null && mPagedSearchResults.hasMorePages()) {
+    		mKeyArrayAdapter.setNotifyOnChange(false);
+    		for (Key key : mPagedSearchResults.getNextPage()) {
+    			mKeyArrayAdapter.add(key);
+    		}
+    		mKeyArrayAdapter.notifyDataSetChanged();
     	}
-    	return isOk;
     }
     
     @Override
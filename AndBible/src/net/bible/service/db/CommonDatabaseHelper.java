@@ -18,7 +18,7 @@ import android.util.Log;
  */
 public class CommonDatabaseHelper extends SQLiteOpenHelper {
 	private static final String TAG = "CommonDatabaseHelper";
-	static final int DATABASE_VERSION = 2;
+	static final int DATABASE_VERSION = 3;
 	private static final String DATABASE_NAME = "andBibleDatabase.db";
 
 	private final Context mContext;
@@ -49,6 +49,9 @@ public class CommonDatabaseHelper extends SQLiteOpenHelper {
 	public void onCreate(SQLiteDatabase db) {
 		BookmarkDatabaseDefinition.getInstance().onCreate(db);
 		MyNoteDatabaseDefinition.getInstance().onCreate(db);
+		// later changes are made the same way as when upgrading
+		BookmarkDatabaseDefinition.getInstance().upgradeToVersion3(db);
+		MyNoteDatabaseDefinition.getInstance().upgradeToVersion3(db);
 	}
 	
 	@Override
@@ -70,7 +73,17 @@ public class CommonDatabaseHelper extends SQLiteOpenHelper {
 //			Log.e(TAG, "onUpgrade: SQLiteException, recreating db. " + e);
 //			dropTables(db);
 //			bootstrapDB(db);
-			return; // this was lossy
+		}
+		if (oldVersion < 3) {
+			// passage queries need the new columns so a failure is not caught, which stops the db being marked as version 3
+			db.beginTransaction();
+			try {
+				BookmarkDatabaseDefinition.getInstance().upgradeToVersion3(db);
+				MyNoteDatabaseDefinition.getInstance().upgradeToVersion3(db);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
 		}
 	}
 
@@ -0,0 +1,80 @@
+package net.bible.service.db;
+
+import net.bible.service.common.Logger;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.VerseBitSet;
+
+/**
+ * The ordinals of verses at which a bookmark or note starts, held in memory so that a page can be marked up
+ * without querying the database and parsing the key of every row.
+ * The verses are loaded when first needed and then kept up to date as rows are added and removed.
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public abstract class MarkedVerses {
+
+	// replaced rather than changed so a page being rendered never sees a partly updated set
+	private volatile VerseBitSet markedVerses;
+
+	private String name;
+
+	private static final Logger log = new Logger("MarkedVerses");
+
+	public MarkedVerses(String name) {
+		this.name = name;
+	}
+
+	/** read the start ordinal of every row from the database
+	 */
+	protected abstract VerseBitSet loadMarkedVerses();
+
+	/** the marked verses, which are read from the database by the first call
+	 * The returned set must not be changed.
+	 * 
+	 * @return the verses or null if they could not be loaded, in which case loading is tried again by the next call
+	 */
+	public VerseBitSet getMarkedVerses() {
+		VerseBitSet verses = markedVerses;
+		if (verses==null) {
+			synchronized (this) {
+				if (markedVerses==null) {
+					try {
+						markedVerses = loadMarkedVerses();
+						log.debug("Loaded "+markedVerses.getCardinality()+" verses with "+name);
+					} catch (Exception e) {
+						log.error("Error loading verses with "+name, e);
+					}
+				}
+				verses = markedVerses;
+			}
+		}
+		return verses;
+	}
+
+	/** call after a row has been inserted
+	 */
+	public synchronized void added(Key key) {
+		int[] ordinals = VerseOrdinalColumns.getOrdinalRange(key);
+		if (markedVerses!=null && ordinals!=null && !markedVerses.containsOrdinal(ordinals[0])) {
+			VerseBitSet verses = VerseBitSet.valueOf(markedVerses);
+			verses.addOrdinal(ordinals[0]);
+			markedVerses = verses;
+		}
+	}
+
+	/** call after a row has been deleted
+	 * 
+	 * @param isStillMarked true if another row starts at the same verse as the deleted row
+	 */
+	public synchronized void removed(Key key, boolean isStillMarked) {
+		int[] ordinals = VerseOrdinalColumns.getOrdinalRange(key);
+		if (markedVerses!=null && ordinals!=null && !isStillMarked && markedVerses.containsOrdinal(ordinals[0])) {
+			VerseBitSet verses = VerseBitSet.valueOf(markedVerses);
+			verses.removeOrdinal(ordinals[0]);
+			markedVerses = verses;
+		}
+	}
+}
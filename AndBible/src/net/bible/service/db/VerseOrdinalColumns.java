@@ -0,0 +1,135 @@
+package net.bible.service.db;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.VerseBitSet;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.util.Log;
+
+/**
+ * Integer columns holding the ordinals of the first and last verse of a row's key.
+ * Rows in a passage can then be found with an indexed range query instead of a LIKE on the osis id,
+ * which cannot use an index and also matches e.g. Gen.1.10 when looking for Gen.1.1
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class VerseOrdinalColumns {
+
+	private String table;
+	private String keyColumn;
+	private String startOrdinalColumn;
+	private String endOrdinalColumn;
+
+	private static final String TAG = "VerseOrdinalColumns";
+
+	public VerseOrdinalColumns(String table, String keyColumn, String startOrdinalColumn, String endOrdinalColumn) {
+		this.table = table;
+		this.keyColumn = keyColumn;
+		this.startOrdinalColumn = startOrdinalColumn;
+		this.endOrdinalColumn = endOrdinalColumn;
+	}
+
+	/** add the ordinal columns and their index to an existing table and fill them in for existing rows
+	 */
+	public void addColumns(SQLiteDatabase db, String indexName) {
+		Log.i(TAG, "Adding verse ordinal columns to "+table);
+		db.execSQL("ALTER TABLE "+table+" ADD COLUMN "+startOrdinalColumn+" INTEGER;");
+		db.execSQL("ALTER TABLE "+table+" ADD COLUMN "+endOrdinalColumn+" INTEGER;");
+
+		Cursor c = db.query(table, new String[] {BaseColumns._ID, keyColumn}, null, null, null, null, null);
+		try {
+			while (c.moveToNext()) {
+				ContentValues values = new ContentValues();
+				try {
+					putOrdinals(values, PassageKeyFactory.instance().getKey(c.getString(1)));
+					db.update(table, values, BaseColumns._ID+"=?", new String[] {String.valueOf(c.getLong(0))});
+				} catch (NoSuchKeyException nke) {
+					// the row will not be found by passage
+					Log.e(TAG, "Key error", nke);
+				}
+			}
+		} finally {
+			c.close();
+		}
+
+		// index both columns so a range query on the start ordinal is answered from the index
+		db.execSQL("CREATE INDEX "+indexName+" ON "+table+"("+startOrdinalColumn+", "+endOrdinalColumn+");");
+	}
+
+	/** add the ordinals of the first and last verse of key to values being inserted or updated
+	 */
+	public void putOrdinals(ContentValues values, Key key) {
+		int[] ordinals = getOrdinalRange(key);
+		if (ordinals!=null) {
+			values.put(startOrdinalColumn, ordinals[0]);
+			values.put(endOrdinalColumn, ordinals[1]);
+		} else {
+			values.putNull(startOrdinalColumn);
+			values.putNull(endOrdinalColumn);
+		}
+	}
+
+	/** a selection for rows whose key starts in a passage to be used with getSelectionArgs
+	 */
+	public String getInPassageSelection() {
+		return startOrdinalColumn+" BETWEEN ? AND ?";
+	}
+
+	public String[] getInPassageSelectionArgs(Key passage) {
+		int[] ordinals = getOrdinalRange(passage);
+		if (ordinals==null) {
+			// nothing can be in an empty passage
+			return new String[] {"1", "0"};
+		}
+		return new String[] {String.valueOf(ordinals[0]), String.valueOf(ordinals[1])};
+	}
+
+	/** the start ordinal of every row, read without parsing any keys
+	 */
+	public VerseBitSet getStartOrdinals(SQLiteDatabase db) {
+		VerseBitSet verses = new VerseBitSet();
+		Cursor c = db.query(table, new String[] {startOrdinalColumn}, startOrdinalColumn+" IS NOT NULL", null, null, null, null);
+		try {
+			while (c.moveToNext()) {
+				verses.addOrdinal(c.getInt(0));
+			}
+		} finally {
+			c.close();
+		}
+		return verses;
+	}
+
+	/** true if the key of any row starts at the same verse as this key
+	 */
+	public boolean isStartOfAnyRow(SQLiteDatabase db, Key key) {
+		int[] ordinals = getOrdinalRange(key);
+		if (ordinals==null) {
+			return false;
+		}
+		Cursor c = db.query(table, new String[] {startOrdinalColumn}, startOrdinalColumn+"=?", new String[] {String.valueOf(ordinals[0])}, null, null, null, "1");
+		try {
+			return c.moveToFirst();
+		} finally {
+			c.close();
+		}
+	}
+
+	/** the ordinals of the first and last verses of a key or null if the key contains no verses
+	 */
+	static int[] getOrdinalRange(Key key) {
+		Passage passage = KeyUtil.getPassage(key);
+		if (passage==null || passage.countVerses()==0) {
+			return null;
+		}
+		return new int[] {passage.getVerseAt(0).getOrdinal(), passage.getVerseAt(passage.countVerses()-1).getOrdinal()};
+	}
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.bible.service.db.CommonDatabaseHelper;
+import net.bible.service.db.VerseOrdinalColumns;
 import net.bible.service.db.bookmark.BookmarkDatabaseDefinition.BookmarkColumn;
 import net.bible.service.db.bookmark.BookmarkDatabaseDefinition.BookmarkLabelColumn;
 import net.bible.service.db.bookmark.BookmarkDatabaseDefinition.LabelColumn;
@@ -12,6 +13,7 @@ import net.bible.service.db.bookmark.BookmarkDatabaseDefinition.Table;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -31,6 +33,8 @@ public class BookmarkDBAdapter {
 	// Database open/upgrade helper
 	private SQLiteOpenHelper dbHelper;
 	
+	private VerseOrdinalColumns verseOrdinalColumns = BookmarkDatabaseDefinition.VERSE_ORDINAL_COLUMNS;
+	
 	private static final String TAG = "BookmarkDBAdapter";
 
 	public BookmarkDBAdapter(Context _context) {
@@ -54,6 +58,7 @@ public class BookmarkDBAdapter {
 		// Create a new row of values to insert.
 		ContentValues newValues = new ContentValues();
 		newValues.put(BookmarkColumn.KEY, bookmark.getKey().getOsisID());
+		verseOrdinalColumns.putOrdinals(newValues, bookmark.getKey());
 
 		long newId = db.insert(Table.BOOKMARK, null, newValues);
 		BookmarkDto newBookmark = getBookmarkDto(newId);
@@ -105,7 +110,8 @@ public class BookmarkDBAdapter {
 	public List<BookmarkDto> getBookmarksInPassage(Key passage) {
 		Log.d(TAG, "about to getBookmarksInPassage:"+passage.getOsisID());
 		List<BookmarkDto> bookmarkList = new ArrayList<BookmarkDto>();
-		Cursor c = db.query(BookmarkQuery.TABLE, BookmarkQuery.COLUMNS, BookmarkColumn.KEY+" LIKE ?", new String []{String.valueOf(passage.getOsisID()+"%")}, null, null, null);
+		// an indexed range query on verse ordinals
+		Cursor c = db.query(BookmarkQuery.TABLE, BookmarkQuery.COLUMNS, verseOrdinalColumns.getInPassageSelection(), verseOrdinalColumns.getInPassageSelectionArgs(passage), null, null, null);
 		try {
 			if (c.moveToFirst()) {
 		        while (!c.isAfterLast()) {
@@ -122,6 +128,16 @@ public class BookmarkDBAdapter {
         return bookmarkList;
 	}
 
+	/** the first verse of every bookmark without creating a BookmarkDto for each one
+	 */
+	public VerseBitSet getVersesWithBookmarks() {
+		return verseOrdinalColumns.getStartOrdinals(db);
+	}
+
+	public boolean isBookmarkStartingAt(Key key) {
+		return verseOrdinalColumns.isStartOfAnyRow(db, key);
+	}
+
 	public List<BookmarkDto> getBookmarksWithLabel(LabelDto label) {
 		String sql = "SELECT bookmark._id, bookmark.key "+
 					 "FROM bookmark "+
@@ -1,5 +1,6 @@
 package net.bible.service.db.bookmark;
 
+import net.bible.service.db.VerseOrdinalColumns;
 import android.database.sqlite.SQLiteDatabase;
 import android.provider.BaseColumns;
 import android.util.Log;
@@ -25,6 +26,10 @@ public class BookmarkDatabaseDefinition {
 
 	}
 
+	public interface Index {
+		public static final String BOOKMARK_VERSE_ORDINAL = "bookmark_verse_ordinal";
+	}
+
 	public interface View {
 	}
 
@@ -34,8 +39,13 @@ public class BookmarkDatabaseDefinition {
 	public interface BookmarkColumn {
 		public static final String _ID = BaseColumns._ID;
 		public static final String KEY = "key";
+		// ordinals of the first and last verse of the key for finding bookmarks in a passage
+		public static final String START_ORDINAL = "start_ordinal";
+		public static final String END_ORDINAL = "end_ordinal";
 	}
 
+	public static final VerseOrdinalColumns VERSE_ORDINAL_COLUMNS = new VerseOrdinalColumns(Table.BOOKMARK, BookmarkColumn.KEY, BookmarkColumn.START_ORDINAL, BookmarkColumn.END_ORDINAL);
+
 	public interface BookmarkLabelColumn {
 		public static final String BOOKMARK_ID = "bookmark_id";
 		public static final String LABEL_ID = "label_id";
@@ -63,6 +73,12 @@ public class BookmarkDatabaseDefinition {
 	public void onCreate(SQLiteDatabase db) {
 		bootstrapDB(db);
 	}
+
+	/** add verse ordinal columns to existing bookmarks
+	 */
+	public void upgradeToVersion3(SQLiteDatabase db) {
+		VERSE_ORDINAL_COLUMNS.addColumns(db, Index.BOOKMARK_VERSE_ORDINAL);
+	}
 	
 	private void bootstrapDB(SQLiteDatabase db) {
 		Log.i(TAG, "Bootstrapping And Bible database");
@@ -8,12 +8,14 @@ import java.util.Date;
 import java.util.List;
 
 import net.bible.service.db.CommonDatabaseHelper;
+import net.bible.service.db.VerseOrdinalColumns;
 import net.bible.service.db.mynote.MyNoteDatabaseDefinition.MyNoteColumn;
 import net.bible.service.db.mynote.MyNoteDatabaseDefinition.Table;
 
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 import android.content.ContentValues;
 import android.content.Context;
@@ -41,6 +43,8 @@ public class MyNoteDBAdapter {
 	// Database open/upgrade helper
 	private SQLiteOpenHelper dbHelper;
 	
+	private VerseOrdinalColumns verseOrdinalColumns = MyNoteDatabaseDefinition.VERSE_ORDINAL_COLUMNS;
+	
 	private static final String TAG = "MyNoteDBAdapter";
 
 	public MyNoteDBAdapter(Context _context) {
@@ -73,6 +77,7 @@ public class MyNoteDBAdapter {
 		newValues.put(MyNoteColumn.MYNOTE, mynote.getNoteText());
 		newValues.put(MyNoteColumn.LAST_UPDATED_ON, now);
 		newValues.put(MyNoteColumn.CREATED_ON, now);
+		verseOrdinalColumns.putOrdinals(newValues, mynote.getKey());
 		
 		long newId = db.insert(Table.MYNOTE, null, newValues);
 		MyNoteDto newMyNote = getMyNoteDto(newId);
@@ -89,6 +94,7 @@ public class MyNoteDBAdapter {
 		newValues.put(MyNoteColumn.KEY, mynote.getKey().getOsisID());
 		newValues.put(MyNoteColumn.MYNOTE, mynote.getNoteText());
 		newValues.put(MyNoteColumn.LAST_UPDATED_ON, now);
+		verseOrdinalColumns.putOrdinals(newValues, mynote.getKey());
 		
 		long rowsUpdated = db.update(Table.MYNOTE, newValues, "_id=?", new String []{String.valueOf(mynote.getId())});
 		Log.d(TAG, "Rows updated:"+rowsUpdated);
@@ -124,7 +130,8 @@ public class MyNoteDBAdapter {
 	public List<MyNoteDto> getMyNotesInPassage(Key passage) {
 		Log.d(TAG, "about to getMyNotesInPassage:"+passage.getOsisID());
 		List<MyNoteDto> notesList = new ArrayList<MyNoteDto>();
-		Cursor c = db.query(MyNoteQuery.TABLE, MyNoteQuery.COLUMNS, MyNoteColumn.KEY+" LIKE ?", new String []{String.valueOf(passage.getOsisID()+"%")}, null, null, null);
+		// an indexed range query on verse ordinals
+		Cursor c = db.query(MyNoteQuery.TABLE, MyNoteQuery.COLUMNS, verseOrdinalColumns.getInPassageSelection(), verseOrdinalColumns.getInPassageSelectionArgs(passage), null, null, null);
 		try {
 			if (c.moveToFirst()) {
 		        while (!c.isAfterLast()) {
@@ -141,6 +148,16 @@ public class MyNoteDBAdapter {
         return notesList;
 	}
 
+	/** the first verse of every note without creating a MyNoteDto for each one
+	 */
+	public VerseBitSet getVersesWithNotes() {
+		return verseOrdinalColumns.getStartOrdinals(db);
+	}
+
+	public boolean isNoteStartingAt(Key key) {
+		return verseOrdinalColumns.isStartOfAnyRow(db, key);
+	}
+
 	public MyNoteDto getMyNoteDto(long id) {
 		MyNoteDto mynote = null;
 		
@@ -3,6 +3,7 @@
  */
 package net.bible.service.db.mynote;
 
+import net.bible.service.db.VerseOrdinalColumns;
 import android.database.sqlite.SQLiteDatabase;
 import android.provider.BaseColumns;
 import android.util.Log;
@@ -24,6 +25,7 @@ public class MyNoteDatabaseDefinition {
 
 	public interface Index {
 		public static final String MYNOTE_KEY = "mynote_key";
+		public static final String MYNOTE_VERSE_ORDINAL = "mynote_verse_ordinal";
 	}
 
 	public interface Join {
@@ -41,7 +43,12 @@ public class MyNoteDatabaseDefinition {
 		public static final String MYNOTE = "mynote";
 		public static final String LAST_UPDATED_ON = "last_updated_on";
 		public static final String CREATED_ON = "created_on";
+		// ordinals of the first and last verse of the key for finding notes in a passage
+		public static final String START_ORDINAL = "start_ordinal";
+		public static final String END_ORDINAL = "end_ordinal";
 	}
+
+	public static final VerseOrdinalColumns VERSE_ORDINAL_COLUMNS = new VerseOrdinalColumns(Table.MYNOTE, MyNoteColumn.KEY, MyNoteColumn.START_ORDINAL, MyNoteColumn.END_ORDINAL);
     
 	private static MyNoteDatabaseDefinition sSingleton = null;
 	
@@ -65,6 +72,12 @@ public class MyNoteDatabaseDefinition {
 	public void onCreate(SQLiteDatabase db) {
 		bootstrapDB(db);
 	}
+
+	/** add verse ordinal columns to existing notes
+	 */
+	public void upgradeToVersion3(SQLiteDatabase db) {
+		VERSE_ORDINAL_COLUMNS.addColumns(db, Index.MYNOTE_VERSE_ORDINAL);
+	}
 	
 	private void bootstrapDB(SQLiteDatabase db) {
 		Log.i(TAG, "Bootstrapping And Bible database (MyNotes)");
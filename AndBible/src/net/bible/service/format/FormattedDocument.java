@@ -1,5 +1,6 @@
 package net.bible.service.format;
 
+import java.io.Serializable;
 import java.util.List;
 
 /** A holder to allow return of 2 values - html & notes
@@ -8,7 +9,10 @@ import java.util.List;
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's author.
  */
-public class FormattedDocument {
+public class FormattedDocument implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
 	String htmlPassage;
 	List<Note> notesList;
 	
@@ -1,5 +1,7 @@
 package net.bible.service.format;
 
+import java.io.Serializable;
+
 import net.bible.android.control.page.CurrentPageManager;
 import net.bible.service.common.CommonUtils;
 import net.bible.service.sword.SwordContentFacade;
@@ -15,7 +17,9 @@ import android.util.Log;
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's author.
  */
-public class Note {
+public class Note implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	public enum NoteType {TYPE_GENERAL, TYPE_REFERENCE};
 	
@@ -9,12 +9,21 @@ import net.bible.service.common.Logger;
 
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.book.sword.AbstractBackend;
+import org.crosswire.jsword.book.sword.SwordBook;
+import org.crosswire.jsword.book.sword.SwordBookMetaData;
+import org.crosswire.jsword.book.sword.ZVerseBackend;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Verse;
 
 /** Read through the raw OSIS input from a bible, add verse tags if required, remove any extra div tags,
  * and pipe back as in InputStream ready to be fed to the SAXParser for html formatting.
- * This is more efficient than using JDom to create a DOM and then streaming teh DOM into a SAX parser  
- * 
+ * This is more efficient than using JDom to create a DOM and then streaming teh DOM into a SAX parser
+ *
+ * UTF-8 zText modules which need no text fixes are streamed directly from the uncompressed module block
+ * without creating a String for each verse.
+ *
  * @author Martin Denham [mjdenham at gmail dot com]
  * @see gnu.lgpl.License for license details.
  *      The copyright to this program is held by it's author.
@@ -23,33 +32,62 @@ public class OSISInputStream extends InputStream {
 	// requested passage
 	private Book book;
 	private Key key;
-	
+
 	// iterator
 	private boolean isFirstVerse = true;
 	private Iterator<Key> keyIterator;
 	private boolean isClosingTagWritten = false;
-	
-	// cache
+	private boolean isEndOfStream = false;
+
+	// cache - the bytes between next and end are waiting to be read
 	private byte[] verseBuffer;
-	private int length = 0;
+	private int end = 0;
 	private int next = 0;
-	
+
+	// verse text waiting to be streamed after the verse tag
+	private byte[] pendingBuffer;
+	private int pendingOffset;
+	private int pendingLength;
+
+	// only set if verses can be read directly from the uncompressed module blocks
+	private ZVerseBackend rawVerseBackend;
+	// every verse in the key is located in one bulk read so each block is uncompressed only once
+	private byte[][] verseBlocks;
+	private int[] verseLocations;
+	private int verseIndex = 0;
+	private byte[] verseTagBuffer = new byte[MAX_VERSE_TAG_LENGTH];
+
+	private static final int MAX_VERSE_TAG_LENGTH = 64;
+	private static final String UTF_8 = "UTF-8";
+
 	private static String TAG = "OSISInputStream";
-	
+
 	private OSISVerseTidy osisVerseTidy;
-	
+
 	@SuppressWarnings("unused")
 	private static Logger log = new Logger(TAG);
-	
+
 	/** Constructor to create an input stream from raw OSIS input
 	 * @param book
 	 * @param key
 	 */
 	public OSISInputStream(Book book, Key key) {
+		this(book, key, true);
+	}
+
+	/** Constructor to create an input stream from raw OSIS input
+	 * @param book
+	 * @param key
+	 * @param isRawBytesAllowed false to always fetch each verse as a String e.g. to compare performance
+	 */
+	public OSISInputStream(Book book, Key key, boolean isRawBytesAllowed) {
 		this.book = book;
 		this.key = key;
 		osisVerseTidy  = new OSISVerseTidy(book);
 		keyIterator = key.iterator();
+		if (isRawBytesAllowed) {
+			rawVerseBackend = getRawVerseBackend(book);
+		}
 	}
 
 	/* (non-Javadoc)
@@ -58,8 +96,8 @@ public class OSISInputStream extends InputStream {
 	@Override
 	public int read() throws IOException {
 		if (available()>0) {
-			return verseBuffer[next++];
-		} 
+			return verseBuffer[next++] & 0xFF;
+		}
 		return -1;
 	}
 
@@ -69,10 +107,11 @@ public class OSISInputStream extends InputStream {
 	 */
 	@Override
 	public int available() throws IOException {
-		if (next>=length) {
+		// some verses may be empty so keep going until there is something to read or the end is reached
+		while (next>=end && !isEndOfStream) {
 			loadNextVerse();
 		}
-		return length-next;
+		return end-next;
 	}
 
 	/* (non-Javadoc)
@@ -88,48 +127,70 @@ public class OSISInputStream extends InputStream {
 		} else if (lenToRead == 0) {
 			return 0;
 		}
-		
+
 		int available = available();
 		// have we reached the end of the chapter
 		if (available==0) {
 			return -1;
 		}
-		
+
 		int lenActuallyCopied = Math.min(available, lenToRead);
-		
+
 		System.arraycopy(verseBuffer, next, b, bOffset, lenActuallyCopied);
 		next += lenActuallyCopied;
 		return lenActuallyCopied;
 	}
 
 	/** load the next verse, or opening or closing <div> into the verse buffer
-	 * 
+	 *
 	 * @throws UnsupportedEncodingException
 	 */
 	//todo get the proper ENTITY refs working rather than my simple 2 fixed entities
 //	private static final String DOC_START = "<!ENTITY % HTMLlat1 PUBLIC \"-//W3C//ENTITIES Latin 1 for XHTML//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml-lat1.ent\">\n%HTMLlat1;\n<div>";
-	private static final String DOC_START =	"<!DOCTYPE div [<!ENTITY nbsp \"&#160;\"><!ENTITY copy \"&#169;\">]><div>";
+	private static final byte[] DOC_START = getUTF8Bytes("<!DOCTYPE div [<!ENTITY nbsp \"&#160;\"><!ENTITY copy \"&#169;\">]><div>");
+	private static final byte[] DOC_END = getUTF8Bytes("</div>");
+	private static final byte[] VERSE_OPENING_TAG_START = getUTF8Bytes(OSISVerseTidy.VERSE_OPENING_TAG_START);
+	private static final byte[] VERSE_OPENING_TAG_END = getUTF8Bytes(OSISVerseTidy.VERSE_OPENING_TAG_END);
+	private static final byte[] VERSE_ELEMENT_START = getUTF8Bytes("<"+OSISUtil.OSIS_ELEMENT_VERSE);
+
 	private void loadNextVerse() throws UnsupportedEncodingException {
 		try {
+			if (pendingBuffer!=null) {
+				putInVerseBuffer(pendingBuffer, pendingOffset, pendingLength);
+				pendingBuffer = null;
+				return;
+			}
+
 			if (isFirstVerse) {
-				putInVerseBuffer(DOC_START);
+				putInVerseBuffer(DOC_START, 0, DOC_START.length);
 				isFirstVerse = false;
 				return;
 			}
-		
+
 			if (keyIterator.hasNext()) {
 				Key currentVerse = keyIterator.next();
-				//get the actual verse text and tidy it up
-				String verseText = book.getRawText(currentVerse);
-				verseText = osisVerseTidy.tidy(currentVerse, verseText);
-				putInVerseBuffer(verseText);
+				if (rawVerseBackend!=null) {
+					loadRawVerse(currentVerse);
+				} else {
+					//get the actual verse text and tidy it up
+					String verseText;
+					// JSword backends share file handles and the last uncompressed block so reads from a book must not overlap
+					synchronized(book) {
+						verseText = book.getRawText(currentVerse);
+					}
+					verseText = osisVerseTidy.tidy(currentVerse, verseText);
+					putInVerseBuffer(verseText);
+				}
 				return;
 			}
-			
+
 			if (!isClosingTagWritten) {
-				putInVerseBuffer("</div>");
+				putInVerseBuffer(DOC_END, 0, DOC_END.length);
 				isClosingTagWritten = true;
+				return;
 			}
+
+			isEndOfStream = true;
 		} catch (UnsupportedEncodingException usc) {
 			usc.printStackTrace();
 		} catch (BookException be) {
@@ -137,15 +198,138 @@ public class OSISInputStream extends InputStream {
 		}
 	}
 
+	/** stream the verse straight out of the uncompressed block, preceded by a verse tag if the verse has none
+	 */
+	private void loadRawVerse(Key verse) throws BookException, UnsupportedEncodingException {
+		if (verseBlocks==null) {
+			verseLocations = new int[2*key.getCardinality()];
+			// JSword backends share file handles and uncompressed blocks so reads from a book must not overlap
+			synchronized(book) {
+				verseBlocks = rawVerseBackend.getRawVerseBlocks(key, verseLocations);
+			}
+		}
+		byte[] block = verseBlocks[verseIndex];
+		int offset = verseLocations[2*verseIndex];
+		int length = verseLocations[2*verseIndex+1];
+		verseIndex++;
+
+		if (length>0 && indexOf(block, offset, length, VERSE_ELEMENT_START)>=0) {
+			putInVerseBuffer(block, offset, length);
+		} else {
+			// empty verses also get a verse tag, the same as OSISVerseTidy
+			int tagLength = writeVerseTag(verse);
+			if (tagLength>0) {
+				putInVerseBuffer(verseTagBuffer, 0, tagLength);
+			} else {
+				putInVerseBuffer(OSISVerseTidy.VERSE_OPENING_TAG_START+verse.getOsisID()+OSISVerseTidy.VERSE_OPENING_TAG_END);
+			}
+			if (length>0) {
+				pendingBuffer = block;
+				pendingOffset = offset;
+				pendingLength = length;
+			}
+		}
+	}
+
+	/** write the verse tag into the reusable tag buffer without creating Strings
+	 *
+	 * @return the length of the tag or 0 if the tag would not fit in the buffer
+	 */
+	private int writeVerseTag(Key key) {
+		if (!(key instanceof Verse)) {
+			return 0;
+		}
+		Verse verse = (Verse)key;
+		String osisBook = verse.getBook().getOSIS();
+		// allow for 2 separators and the longest possible chapter and verse numbers
+		if (VERSE_OPENING_TAG_START.length+osisBook.length()+2+20+VERSE_OPENING_TAG_END.length > verseTagBuffer.length) {
+			return 0;
+		}
+
+		int pos = 0;
+		System.arraycopy(VERSE_OPENING_TAG_START, 0, verseTagBuffer, pos, VERSE_OPENING_TAG_START.length);
+		pos += VERSE_OPENING_TAG_START.length;
+		for (int i=0; i<osisBook.length(); i++) {
+			// OSIS book names are always ascii
+			verseTagBuffer[pos++] = (byte)osisBook.charAt(i);
+		}
+		verseTagBuffer[pos++] = '.';
+		pos = writeNumber(verse.getChapter(), pos);
+		verseTagBuffer[pos++] = '.';
+		pos = writeNumber(verse.getVerse(), pos);
+		System.arraycopy(VERSE_OPENING_TAG_END, 0, verseTagBuffer, pos, VERSE_OPENING_TAG_END.length);
+		pos += VERSE_OPENING_TAG_END.length;
+		return pos;
+	}
+
+	private int writeNumber(int number, int pos) {
+		if (number>=10) {
+			pos = writeNumber(number/10, pos);
+		}
+		verseTagBuffer[pos++] = (byte)('0'+(number%10));
+		return pos;
+	}
+
+	/** find bytes in a section of a byte array
+	 */
+	private static int indexOf(byte[] data, int offset, int length, byte[] searchFor) {
+		int last = offset+length-searchFor.length;
+		for (int i=offset; i<=last; i++) {
+			int j = 0;
+			while (j<searchFor.length && data[i+j]==searchFor[j]) {
+				j++;
+			}
+			if (j==searchFor.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
     /** put the text into the verse buffer ready to be fed into the stream
-     * 
+     *
      * @param text
      * @throws UnsupportedEncodingException
      */
 	private void putInVerseBuffer(String text) throws UnsupportedEncodingException {
 //		log.debug(text);
-		verseBuffer = text.getBytes("UTF-8");
-		length = verseBuffer.length;
-		next = 0;
+		byte[] bytes = text.getBytes(UTF_8);
+		putInVerseBuffer(bytes, 0, bytes.length);
+	}
+
+	/** stream a section of a byte array without copying it
+	 */
+	private void putInVerseBuffer(byte[] bytes, int offset, int length) {
+		verseBuffer = bytes;
+		next = offset;
+		end = offset+length;
+	}
+
+	/** raw verse bytes can only be passed straight to the parser if they are UTF-8 and do not need fixing
+	 */
+	private ZVerseBackend getRawVerseBackend(Book book) {
+		if (book instanceof SwordBook && !osisVerseTidy.isVerseTextFixRequired()) {
+			AbstractBackend backend = ((SwordBook)book).getBackend();
+			if (backend instanceof ZVerseBackend &&
+				UTF_8.equals(((SwordBookMetaData)book.getBookMetaData()).getBookCharset())) {
+				return (ZVerseBackend)backend;
+			}
+		}
+		return null;
+	}
+
+	/** true if verses are streamed directly from the uncompressed module blocks
+	 */
+	/* default */ boolean isStreamingRawBytes() {
+		return rawVerseBackend!=null;
+	}
+
+	private static byte[] getUTF8Bytes(String text) {
+		try {
+			return text.getBytes(UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
 	}
 }
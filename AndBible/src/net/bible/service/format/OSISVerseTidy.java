@@ -19,8 +19,8 @@ public class OSISVerseTidy {
 
 	private Book book;
 	
-    private static final String VERSE_OPENING_TAG_START = "<"+OSISUtil.OSIS_ELEMENT_VERSE+" "+OSISUtil.OSIS_ATTR_OSISID+"='";
-    private static final String VERSE_OPENING_TAG_END = "'/>";
+    /* default */ static final String VERSE_OPENING_TAG_START = "<"+OSISUtil.OSIS_ELEMENT_VERSE+" "+OSISUtil.OSIS_ATTR_OSISID+"='";
+    /* default */ static final String VERSE_OPENING_TAG_END = "'/>";
     // WEB has <l> tags that span verses so avoid errors by using empty verse tags
     private static final String VERSE_CLOSING_TAG = ""; //"</"+OSISUtil.OSIS_ELEMENT_VERSE+">";
     
@@ -48,6 +48,12 @@ public class OSISVerseTidy {
 		
 	}
 	
+	/** NET and WEB verses must be fixed up as Strings before they can be parsed
+	 */
+	public boolean isVerseTextFixRequired() {
+		return isNET() || isWEB();
+	}
+	
 	/** This hack is based on a hack in JSword.  
 	 * I suspect we need to start at the beginning of a chapter instead of verse 1 to fix this 
 	 * because NET seems to have a <div> before the first verse and </div> at the end
@@ -60,7 +66,7 @@ public class OSISVerseTidy {
         // encoded module.
 		
         //TODO NET appears to open <div> before the verse start and the closing </div> is after the verse start - need to sort later 
-        if (book.getInitials().startsWith("NET") ) //$NON-NLS-1$ //$NON-NLS-2$
+        if (isNET())
         {
         	if (verseText.contains("</div>") && !(verseText.contains("<div ") || verseText.contains("<div>")) ) {
         		log.debug("Fixing up NET div");
@@ -78,7 +84,7 @@ public class OSISVerseTidy {
 //        <l type="x-secondary">nor sit in the seat of scoffers;</l>
 //       </lg>
 
-        if (book.getInitials().startsWith("WEB") && key instanceof Verse ) //$NON-NLS-1$ //$NON-NLS-2$
+        if (isWEB() && key instanceof Verse)
         {
         	if (((Verse)key).getVerse()==1) {
         		log.debug("start of WEB chapter");
@@ -99,6 +105,14 @@ public class OSISVerseTidy {
         return verseText;
 	}
 	
+	private boolean isNET() {
+		return book.getInitials().startsWith("NET"); //$NON-NLS-1$
+	}
+
+	private boolean isWEB() {
+		return book.getInitials().startsWith("WEB"); //$NON-NLS-1$
+	}
+
     /** Ensure each verse has the appropriate OSIS verse tag.
      * 
      * @param verse
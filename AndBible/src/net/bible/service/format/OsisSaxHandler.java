@@ -24,7 +24,13 @@ public class OsisSaxHandler extends DefaultHandler {
 	private static final Logger log = new Logger("OsisSaxHandler");
     
     public OsisSaxHandler() {
-        writer = new HtmlTextWriter();
+        this(null);
+    }
+
+    /** stream the html to out instead of holding all of it in memory
+     */
+    public OsisSaxHandler(Appendable out) {
+        writer = new HtmlTextWriter(out);
     }
 
     /*
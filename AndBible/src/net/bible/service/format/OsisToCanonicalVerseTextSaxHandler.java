@@ -0,0 +1,59 @@
+package net.bible.service.format;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.crosswire.jsword.book.OSISUtil;
+import org.xml.sax.Attributes;
+
+/**
+ * Convert OSIS input containing many verses into the canonical text of each verse so that the verses
+ * can all be parsed in one go e.g. for a list of search results
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class OsisToCanonicalVerseTextSaxHandler extends OsisToCanonicalTextSaxHandler {
+
+	// osisID of each verse and where its text starts
+	private List<String> verseOsisIds = new ArrayList<String>();
+	private List<Integer> verseStarts = new ArrayList<Integer>();
+
+	@Override
+	public void startDocument() {
+		super.startDocument();
+		verseOsisIds.clear();
+		verseStarts.clear();
+	}
+
+	@Override
+	public void startElement(String namespaceURI, String sName, String qName, Attributes attrs) {
+		String name = getName(sName, qName);
+		// verse end milestones have no osisID
+		if (name.equals(OSISUtil.OSIS_ELEMENT_VERSE) && attrs!=null) {
+			String osisID = attrs.getValue("", OSISUtil.OSIS_ATTR_OSISID);
+			if (osisID!=null) {
+				// a verse may combine several verses e.g. osisID="Gen.1.1 Gen.1.2"
+				int space = osisID.indexOf(' ');
+				verseOsisIds.add(space>0 ? osisID.substring(0, space) : osisID);
+				verseStarts.add(getWriter().getPosition());
+			}
+		}
+		super.startElement(namespaceURI, sName, qName, attrs);
+	}
+
+	/** the text of each verse keyed by osisID
+	 */
+	public Map<String, String> getVerseTexts() {
+		String text = toString();
+		Map<String, String> verseTexts = new HashMap<String, String>();
+		for (int i=0; i<verseOsisIds.size(); i++) {
+			int end = i+1<verseStarts.size() ? verseStarts.get(i+1) : text.length();
+			verseTexts.put(verseOsisIds.get(i), text.substring(verseStarts.get(i), end).trim());
+		}
+		return verseTexts;
+	}
+}
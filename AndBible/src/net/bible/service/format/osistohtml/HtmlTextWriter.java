@@ -1,10 +1,13 @@
 package net.bible.service.format.osistohtml;
 
+import java.io.IOException;
+
 import net.bible.service.common.Logger;
 
 /**
  * Write characters out to a StringBuilder - used while creating html for display
- * 
+ * If an output is specified then completed html is streamed to it so that very large pages do not need to be held in memory
+ *
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's authors.
  * @author Martin Denham [mjdenham at gmail dot com]
@@ -12,53 +15,124 @@ import net.bible.service.common.Logger;
 public class HtmlTextWriter {
 
     private StringBuilder writer;
-    
+
+    // optional destination for streamed html and the number of chars already streamed to it
+    private Appendable out;
+    private int flushedLength = 0;
+    private IOException streamException;
+
     private int dontWriteRequestCount = 0;
-    
+
     private int writeTempStoreRequestCount = 0;
     private StringBuilder tempStore = new StringBuilder();
 
-    // allow insert at a certain position
-    private String overwrittenString = "";
-    
-    @SuppressWarnings("unused")
+    // allow insert at a certain position - inserted text is collected separately and inserted in one go, which moves only the
+    // html written since the insert position i.e. the start of the current verse, after any html before it has been streamed
+    private int insertOffset = -1;
+    private StringBuilder insertStore = new StringBuilder();
+
+    // avoid lots of tiny writes to the output
+    private static final int MIN_FLUSH_LENGTH = 8192;
+
     private static final Logger log = new Logger("HtmlTextWriter");
-    
+
     public HtmlTextWriter() {
+    	this(null);
+    }
+
+    /** create a writer which streams html to out
+     */
+    public HtmlTextWriter(Appendable out) {
         writer = new StringBuilder();
+        this.out = out;
     }
 
-    public void write(String htmlText) {
+    public void write(CharSequence htmlText) {
     	if (dontWriteRequestCount>0) {
     		// ignore all text
-    	} else if (writeTempStoreRequestCount==0) {
-			writer.append(htmlText);
+    	} else if (writeTempStoreRequestCount>0) {
+        	tempStore.append(htmlText);
+    	} else if (insertOffset>=0) {
+    		insertStore.append(htmlText);
         } else {
-        	tempStore.append(htmlText); 
+			writer.append(htmlText);
         }
     }
-    
+
     /** allow pre-verse headings
      */
     public void beginInsertAt(int insertOffset) {
-    	overwrittenString = writer.substring(insertOffset);
-    	writer.delete(insertOffset, writer.length());
+    	this.insertOffset = insertOffset;
     }
     /** finish inserting and restore overwritten tail of string
      */
     public void finishInserting() {
-    	writer.append(overwrittenString);
-    	overwrittenString = "";
+    	int bufferOffset = insertOffset-flushedLength;
+    	if (bufferOffset>=0) {
+    		// html before the insert position will not change so stream it instead of moving it
+    		if (out!=null && bufferOffset>0) {
+    			stream(bufferOffset);
+    			bufferOffset = 0;
+    		}
+    		writer.insert(bufferOffset, insertStore);
+    	} else {
+    		// should not happen because only html before the current verse is streamed
+    		log.warn("Insert position already streamed");
+    		writer.append(insertStore);
+    	}
+    	insertStore.setLength(0);
+    	insertOffset = -1;
     }
-    
+
     public int getPosition() {
-    	return writer.length();
+    	if (insertOffset>=0) {
+    		return insertOffset+insertStore.length();
+    	}
+    	return flushedLength+writer.length();
     }
-    
+
+    /** html before position will not change so it may be streamed to the output
+     */
+    public void flushBefore(int position) {
+    	int length = position-flushedLength;
+    	if (out!=null && insertOffset<0 && length>=MIN_FLUSH_LENGTH) {
+    		stream(length);
+    	}
+    }
+
+    /** write the first length chars of the buffer to the output
+     */
+    private void stream(int length) {
+    	try {
+    		out.append(writer, 0, length);
+    	} catch (IOException e) {
+    		// SAX handlers cannot throw IOExceptions so report the error when the html is finished
+    		streamException = e;
+    	}
+    	writer.delete(0, length);
+    	flushedLength += length;
+    }
+
+    /** stream all remaining html to the output
+     */
+    public void finish() throws IOException {
+    	if (out!=null) {
+    		out.append(writer);
+    		flushedLength += writer.length();
+    		writer.setLength(0);
+    	}
+    	if (streamException!=null) {
+    		throw streamException;
+    	}
+    }
+
 	public void reset() {
 		writer.setLength(0);
+		flushedLength = 0;
+		insertOffset = -1;
+		insertStore.setLength(0);
 	}
-    
+
     public void writeToTempStore() {
     	writeTempStoreRequestCount++;
     }
@@ -71,6 +145,8 @@ public class HtmlTextWriter {
     public String getTempStoreString() {
     	return tempStore.toString();
     }
+    /** all the html unless it is being streamed to an output
+     */
     public String getHtml() {
     	return writer.toString();
     }
@@ -19,7 +19,7 @@ import org.xml.sax.Attributes;
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's author. 
  */
-public class LHandler {
+public class LHandler implements OsisTagHandler {
 
 	enum LType {indent, br, end_br, ignore};
 
@@ -41,7 +41,7 @@ public class LHandler {
         return "l";
     }
 
-	public void startL(Attributes attrs) {
+	public void start(Attributes attrs) {
 		// Refer to Gen 3:14 in ESV for example use of type=x-indent
 		String type = attrs.getValue(OSISUtil.OSIS_ATTR_TYPE);
 		LType ltype = LType.ignore;
@@ -69,7 +69,7 @@ public class LHandler {
 		stack.push(ltype);
 	}
 
-	public void endL() {
+	public void end() {
 		LType type = stack.pop();
 		if (LType.end_br.equals(type)) {
 			writer.write(HTML.BR);
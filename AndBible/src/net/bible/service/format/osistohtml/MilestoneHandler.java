@@ -0,0 +1,42 @@
+package net.bible.service.format.osistohtml;
+
+import net.bible.service.common.Constants.HTML;
+
+import org.apache.commons.lang.StringUtils;
+import org.crosswire.jsword.book.OSISUtil;
+import org.xml.sax.Attributes;
+
+/** Handle milestone element e.g. <milestone type="x-p"/> in NETtext Mt 4:14
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author. 
+ */
+public class MilestoneHandler implements OsisTagHandler {
+
+	private HtmlTextWriter writer;
+	
+	public MilestoneHandler(OsisToHtmlParameters parameters, HtmlTextWriter writer) {
+		this.writer = writer;
+	}
+
+	@Override
+	public String getTagName() {
+		return "milestone";
+	}
+
+	@Override
+	public void start(Attributes attrs) {
+		String type = attrs.getValue(OSISUtil.OSIS_ATTR_TYPE);
+		if (StringUtils.isNotEmpty(type)) {
+			if (type.equals("line") || type.equals("x-p")) {
+				//e.g. NETtext Mt 4:14
+				writer.write(HTML.BR);
+			}
+		}
+	}
+
+	@Override
+	public void end() {
+	}
+}
@@ -1,14 +1,10 @@
 package net.bible.service.format.osistohtml;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import net.bible.service.common.Logger;
 import net.bible.service.format.osistohtml.OsisToHtmlSaxHandler.VerseInfo;
 
-import org.crosswire.jsword.passage.Key;
-import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 /** Display an img if the current verse has MyNote
  * 
@@ -18,7 +14,10 @@ import org.crosswire.jsword.passage.Verse;
  */
 public class MyNoteMarker {
 
-	private Map<Integer, Key> myNoteVerseMap= new HashMap<Integer, Key>();
+	private VerseBitSet versesWithNotes;
+
+	// verse numbers in the chapter are added to this to get verse ordinals
+	private int chapterOrdinalOffset;
 	
 	private OsisToHtmlParameters parameters;
 	
@@ -34,13 +33,11 @@ public class MyNoteMarker {
 		this.verseInfo = verseInfo;
 		this.writer = writer;
 		
-		// create hashmap of verses to optimise verse note lookup
-		myNoteVerseMap.clear();
-		if (parameters.getKeysWithNotes()!=null) {
-			for (Key key : parameters.getKeysWithNotes()) {
-				Verse verse = KeyUtil.getVerse(key);
-				myNoteVerseMap.put(verse.getVerse(), key);
-			}
+		// verses in a chapter have consecutive ordinals so each verse can be checked with a bit test
+		Verse basisRef = parameters.getBasisRef();
+		if (basisRef!=null) {
+			versesWithNotes = parameters.getVersesWithNotes();
+			chapterOrdinalOffset = basisRef.getOrdinal()-basisRef.getVerse();
 		}
 	}
 	
@@ -52,8 +49,8 @@ public class MyNoteMarker {
 	/** just after verse start tag
 	 */
 	public void start() {
-		if (myNoteVerseMap!=null && parameters.isShowMyNotes()) {
-			if (myNoteVerseMap.containsKey(verseInfo.currentVerseNo)) {
+		if (versesWithNotes!=null && parameters.isShowMyNotes() && verseInfo.currentVerseNo>0) {
+			if (versesWithNotes.containsOrdinal(chapterOrdinalOffset+verseInfo.currentVerseNo)) {
 				writer.write("<img src='file:///android_asset/pencil16x16.png' class='myNoteImg'/>");
 			}
 		}
@@ -0,0 +1,19 @@
+package net.bible.service.format.osistohtml;
+
+import org.xml.sax.Attributes;
+
+/** Convert an OSIS element into html.  Handlers are registered with OsisToHtmlSaxHandler by tag name.
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author. 
+ */
+public interface OsisTagHandler {
+
+	/** the OSIS element handled e.g. "w" */
+	public String getTagName();
+	
+	public void start(Attributes attrs);
+	
+	public void end();
+}
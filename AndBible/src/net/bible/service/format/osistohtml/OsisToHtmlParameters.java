@@ -1,10 +1,9 @@
 package net.bible.service.format.osistohtml;
 
-import java.util.List;
-
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseBitSet;
 
 public class OsisToHtmlParameters {
     private String languageCode = "en";
@@ -27,8 +26,8 @@ public class OsisToHtmlParameters {
     private String extraFooter;
     private int numPaddingBrsAtBottom;
     private boolean convertStrongsRefsToLinks;
-    private List<Key> keysWithNotes;
-    private List<Key> keysWithBookmarks;
+    private VerseBitSet versesWithNotes;
+    private VerseBitSet versesWithBookmarks;
 
 	public String getLanguageCode() {
 		return languageCode;
@@ -139,16 +138,33 @@ public class OsisToHtmlParameters {
 	public void setConvertStrongsRefsToLinks(boolean convertStrongsRefsToLinks) {
 		this.convertStrongsRefsToLinks = convertStrongsRefsToLinks;
 	}
-	public List<Key> getKeysWithNotes() {
-		return keysWithNotes;
+	public VerseBitSet getVersesWithNotes() {
+		return versesWithNotes;
+	}
+	public void setVersesWithNotes(VerseBitSet versesWithNotes) {
+		this.versesWithNotes = versesWithNotes;
 	}
-	public void setKeysWithNotes(List<Key> keysWithNotes) {
-		this.keysWithNotes = keysWithNotes;
+	public VerseBitSet getVersesWithBookmarks() {
+		return versesWithBookmarks;
 	}
-	public List<Key> getKeysWithBookmarks() {
-		return keysWithBookmarks;
+	public void setVersesWithBookmarks(VerseBitSet versesWithBookmarks) {
+		this.versesWithBookmarks = versesWithBookmarks;
 	}
-	public void setKeysWithBookmarks(List<Key> keysWithBookmarks) {
-		this.keysWithBookmarks = keysWithBookmarks;
+
+	/** summarise all parameters that affect the generated html to allow the html to be cached
+	 * bookmarks and notes are excluded because the cache is updated when they change
+	 */
+	public String getFingerprint() {
+		StringBuilder fingerprint = new StringBuilder();
+		fingerprint.append(languageCode).append('|')
+					.append(isLeftToRight).append(isShowTitles).append(isShowVerseNumbers).append(isVersePerline)
+					.append(isShowMyNotes).append(isShowBookmarks).append(isShowNotes).append(isBibleStyleNotesAndRefs)
+					.append(isShowStrongs).append(isShowMorphology).append(isRedLetter).append(convertStrongsRefsToLinks).append('|')
+					.append(basisRef==null ? null : basisRef.getOsisID()).append('|')
+					.append(font).append('|')
+					.append(extraStylesheet).append('|')
+					.append(extraFooter).append('|')
+					.append(numPaddingBrsAtBottom);
+		return fingerprint.toString();
 	}
 }
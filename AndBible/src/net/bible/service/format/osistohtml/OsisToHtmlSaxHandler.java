@@ -1,6 +1,8 @@
 package net.bible.service.format.osistohtml;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.bible.service.common.Constants.HTML;
 import net.bible.service.common.Logger;
@@ -63,6 +65,9 @@ public class OsisToHtmlSaxHandler extends OsisSaxHandler {
 	private HiHandler hiHandler;
 	private StrongsHandler strongsHandler;
 	
+	// handlers looked up by OSIS element name instead of comparing the name with every known tag
+	private Map<String, OsisTagHandler> tagHandlerMap = new HashMap<String, OsisTagHandler>();
+	
 	// processor for the tag content
 	private TextPreprocessor textPreprocessor;
 
@@ -79,7 +84,13 @@ public class OsisToHtmlSaxHandler extends OsisSaxHandler {
 	private static final Logger log = new Logger("OsisToHtmlSaxHandler");
 
 	public OsisToHtmlSaxHandler(OsisToHtmlParameters parameters) {
-		super();
+		this(parameters, null);
+	}
+
+	/** stream html to out as it is generated - used for pages too large to hold as a single String
+	 */
+	public OsisToHtmlSaxHandler(OsisToHtmlParameters parameters, Appendable out) {
+		super(out);
 		this.parameters = parameters;
 		verseHandler = new VerseHandler(parameters, verseInfo, getWriter());
 		myNoteMarker = new MyNoteMarker(parameters, verseInfo, getWriter());
@@ -91,6 +102,53 @@ public class OsisToHtmlSaxHandler extends OsisSaxHandler {
 		lHandler = new LHandler(parameters, getWriter());
 		strongsHandler = new StrongsHandler(parameters, getWriter());
 		
+		registerHandler(new OsisTagHandler() {
+			public String getTagName() {
+				return OSISUtil.OSIS_ELEMENT_VERSE;
+			}
+			public void start(Attributes attrs) {
+				verseHandler.startAndUpdateVerse(attrs);
+				bookmarkMarker.start();
+				myNoteMarker.start();
+			}
+			public void end() {
+				// verse opening and closing tags wrap the verse number at start of the verse
+			}
+		});
+		registerHandler(titleHandler);
+		registerHandler(new OsisTagHandler() {
+			public String getTagName() {
+				return OSISUtil.OSIS_ELEMENT_NOTE;
+			}
+			public void start(Attributes attrs) {
+				noteAndReferenceHandler.startNote(attrs);
+			}
+			public void end() {
+				noteAndReferenceHandler.endNote(verseInfo.currentVerseNo);
+			}
+		});
+		registerHandler(new OsisTagHandler() {
+			public String getTagName() {
+				return OSISUtil.OSIS_ELEMENT_REFERENCE;
+			}
+			public void start(Attributes attrs) {
+				noteAndReferenceHandler.startReference(attrs);
+			}
+			public void end() {
+				noteAndReferenceHandler.endReference(verseInfo.currentVerseNo);
+			}
+		});
+		registerHandler(new SimpleHtmlTagHandler(OSISUtil.OSIS_ELEMENT_LB, HTML.BR, null, getWriter()));
+		registerHandler(lHandler);
+		registerHandler(new SimpleHtmlTagHandler(OSISUtil.OSIS_ELEMENT_P, "<p>", "</p>", getWriter()));
+		// end quotation, but <q /> tag is a marker and contains no content
+		// so <q /> will appear at beginning and end of speech
+		registerHandler(qHandler);
+		registerHandler(hiHandler);
+		registerHandler(new MilestoneHandler(parameters, getWriter()));
+		registerHandler(new SimpleHtmlTagHandler("transChange", "<span class='transChange'>", "</span>", getWriter()));
+		registerHandler(strongsHandler);
+		
 		//TODO at the moment we can only have a single TextPreprocesor, need to chain them and maybe make the writer a TextPreprocessor and put it at the end of the chain
 		if (HEBREW_LANGUAGE_CODE.equals(parameters.getLanguageCode())) {
 			textPreprocessor = new HebrewCharacterPreprocessor();
@@ -100,6 +158,12 @@ public class OsisToHtmlSaxHandler extends OsisSaxHandler {
 
 	}
 
+	/** add a handler for a new OSIS element or replace the default handler of an element
+	 */
+	public void registerHandler(OsisTagHandler tagHandler) {
+		tagHandlerMap.put(tagHandler.getTagName(), tagHandler);
+	}
+
 	@Override
 	public void startDocument()  {
 		String jsTag = "\n<script type='text/javascript' src='file:///android_asset/script.js'></script>\n";
@@ -171,38 +235,9 @@ public class OsisToHtmlSaxHandler extends OsisSaxHandler {
 
 		debug(name, attrs, true);
 
-		if (name.equals(OSISUtil.OSIS_ELEMENT_VERSE)) {
-			verseHandler.startAndUpdateVerse(attrs);
-			bookmarkMarker.start();
-			myNoteMarker.start();
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_TITLE)) {
-			titleHandler.start(attrs);		
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_NOTE)) {
-			noteAndReferenceHandler.startNote(attrs);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_REFERENCE)) {
-			noteAndReferenceHandler.startReference(attrs);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_LB)) {
-			write(HTML.BR);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_L)) {
-			lHandler.startL(attrs);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_P)) {
-			write("<p>");
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_Q)) {
-			qHandler.start(attrs);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_HI)) {
-			hiHandler.start(attrs);
-		} else if (name.equals("milestone")) {
-			String type = attrs.getValue(OSISUtil.OSIS_ATTR_TYPE);
-			if (StringUtils.isNotEmpty(type)) {
-				if (type.equals("line") || type.equals("x-p")) {
-					//e.g. NETtext Mt 4:14
-					write(HTML.BR);
-				}
-			}
-		} else if (name.equals("transChange")) {
-			write("<span class='transChange'>");
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_W)) {
-			strongsHandler.start(attrs);
+		OsisTagHandler tagHandler = tagHandlerMap.get(name);
+		if (tagHandler!=null) {
+			tagHandler.start(attrs);
 		} else {
 //			log.info("Verse "+currentVerseNo+" unsupported OSIS tag:"+name);
 		}
@@ -220,28 +255,9 @@ public class OsisToHtmlSaxHandler extends OsisSaxHandler {
 
 		debug(name, null, false);
 
-		if (name.equals(OSISUtil.OSIS_ELEMENT_TITLE)) {
-			titleHandler.end();
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_VERSE)) {
-			// verse opening and closing tags wrap the verse number at start of the verse
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_NOTE)) {
-			noteAndReferenceHandler.endNote(verseInfo.currentVerseNo);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_REFERENCE)) {
-			noteAndReferenceHandler.endReference(verseInfo.currentVerseNo);
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_L)) {
-			lHandler.endL();
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_P)) {
-			write("</p>");
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_Q)) {
-			// end quotation, but <q /> tag is a marker and contains no content
-			// so <q /> will appear at beginning and end of speech
-			qHandler.end();
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_HI)) {
-			hiHandler.end();
-		} else if (name.equals("transChange")) {
-			write("</span>");
-		} else if (name.equals(OSISUtil.OSIS_ELEMENT_W)) {
-			strongsHandler.end();
+		OsisTagHandler tagHandler = tagHandlerMap.get(name);
+		if (tagHandler!=null) {
+			tagHandler.end();
 		}
 	}
 
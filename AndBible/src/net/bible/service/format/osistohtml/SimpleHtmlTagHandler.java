@@ -0,0 +1,44 @@
+package net.bible.service.format.osistohtml;
+
+import org.xml.sax.Attributes;
+
+/** Write fixed html at the start and end of an OSIS element e.g. <p> or <transChange>
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author. 
+ */
+public class SimpleHtmlTagHandler implements OsisTagHandler {
+
+	private String tagName;
+	private String startHtml;
+	private String endHtml;
+	
+	private HtmlTextWriter writer;
+	
+	public SimpleHtmlTagHandler(String tagName, String startHtml, String endHtml, HtmlTextWriter writer) {
+		this.tagName = tagName;
+		this.startHtml = startHtml;
+		this.endHtml = endHtml;
+		this.writer = writer;
+	}
+
+	@Override
+	public String getTagName() {
+		return tagName;
+	}
+
+	@Override
+	public void start(Attributes attrs) {
+		if (startHtml!=null) {
+			writer.write(startHtml);
+		}
+	}
+
+	@Override
+	public void end() {
+		if (endHtml!=null) {
+			writer.write(endHtml);
+		}
+	}
+}
@@ -18,7 +18,7 @@ import org.xml.sax.Attributes;
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's author. 
  */
-public class TitleHandler {
+public class TitleHandler implements OsisTagHandler {
 
 	private HtmlTextWriter writer;
 	
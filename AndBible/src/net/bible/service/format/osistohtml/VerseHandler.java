@@ -60,6 +60,8 @@ public class VerseHandler {
 
 	private void writeVerse(int verseNo) {
 		verseInfo.currentVersePosition = writer.getPosition();
+		// nothing before the start of this verse can be changed by pre-verse titles so it can be streamed out
+		writer.flushBefore(verseInfo.currentVersePosition);
 		
 		// the id is used to 'jump to' the verse using javascript so always
 		// need the verse tag with an id
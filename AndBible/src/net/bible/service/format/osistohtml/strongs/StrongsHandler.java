@@ -1,12 +1,8 @@
 package net.bible.service.format.osistohtml.strongs;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-import net.bible.service.common.Constants;
 import net.bible.service.common.Constants.HTML;
 import net.bible.service.format.osistohtml.HtmlTextWriter;
+import net.bible.service.format.osistohtml.OsisTagHandler;
 import net.bible.service.format.osistohtml.OsisToHtmlParameters;
 import net.bible.service.format.osistohtml.TagHandlerHelper;
 
@@ -15,31 +11,42 @@ import org.crosswire.jsword.book.OSISUtil;
 import org.xml.sax.Attributes;
 
 /** 
+ * Handle w element containing Strongs and morphology references
+ * 
+ * Strongs tagged Bibles have a w element for almost every word so the lemma and morph attributes are parsed in place
+ * using reusable offset arrays rather than splitting them into new Strings and Lists for every word.
  * 
  * @author Martin Denham [mjdenham at gmail dot com]
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's author. 
  */
-public class StrongsHandler {
-
-	enum QType {quote, redLetter};
+public class StrongsHandler implements OsisTagHandler {
 
 	private HtmlTextWriter writer;
 	
 	private OsisToHtmlParameters parameters;
 	
-	List<String> pendingStrongsAndMorphTags;
+	// lemma and morph attributes of the current w element
+	private String pendingLemma;
+	private String pendingMorph;
+
+	// positions of the valid refs in the pending lemma and morph attributes
+	private RefPositions strongsRefs = new RefPositions();
+	private RefPositions morphRefs = new RefPositions();
+	
+	private StringBuilder tag = new StringBuilder();
 
 	public StrongsHandler(OsisToHtmlParameters parameters, HtmlTextWriter writer) {
 		this.parameters = parameters;
 		this.writer = writer;
 	}
 	
-	
+	@Override
 	public String getTagName() {
-        return "q";
+        return OSISUtil.OSIS_ELEMENT_W;
     }
 
+	@Override
 	public void start(Attributes attrs) {
 		if ((parameters.isShowStrongs() || parameters.isShowMorphology()) && TagHandlerHelper.isAttr(OSISUtil.ATTRIBUTE_W_LEMMA, attrs)) {
 			// Strongs & morphology references
@@ -47,127 +54,124 @@ public class StrongsHandler {
 			// better example, because we just use Robinson: <w lemma="strong:G652" morph="robinson:N-NSM" src="2">an apostle</w>
 			String strongsLemma = attrs.getValue(OSISUtil.ATTRIBUTE_W_LEMMA);
 			if (strongsLemma.startsWith(OSISUtil.LEMMA_STRONGS)) {
-				String morphology = attrs.getValue(OSISUtil.ATTRIBUTE_W_MORPH);
-				pendingStrongsAndMorphTags = getStrongsAndMorphTags(strongsLemma, morphology);
+				pendingLemma = strongsLemma;
+				pendingMorph = attrs.getValue(OSISUtil.ATTRIBUTE_W_MORPH);
 			}
 		}
 	}
 	
+	@Override
 	public void end() {
 		if ((parameters.isShowStrongs() || parameters.isShowMorphology())) {
-			if (pendingStrongsAndMorphTags != null) {
-				for (int i = 0; i < pendingStrongsAndMorphTags.size(); i++) {
-					writer.write(HTML.SPACE); // separator between adjacent tags and words
-					writer.write(pendingStrongsAndMorphTags.get(i));
-				}
+			if (pendingLemma != null) {
+				writeStrongsAndMorphTags(pendingLemma, pendingMorph);
 				writer.write(HTML.SPACE); // separator between adjacent tags and words
-				pendingStrongsAndMorphTags = null;
+				pendingLemma = null;
+				pendingMorph = null;
 			}
 		}
 	}
 	
 	/**
-	 * Convert a Strongs lemma into a url E.g. lemmas "strong:H0430",
+	 * Convert a Strongs lemma into links E.g. lemmas "strong:H0430",
 	 * "strong:H0853 strong:H01254"
-	 * 
-	 * @return a single char to use as a note ref
 	 */
-	private List<String> getStrongsAndMorphTags(String strongsLemma,
-			String morphology) {
-		// there may occasionally be more than on ref so split them into a list
-		// of single refs
-		List<String> strongsTags = getStrongsTags(strongsLemma);
-		List<String> morphTags = getMorphTags(morphology);
-
-		List<String> mergedStrongsAndMorphTags = new ArrayList<String>();
+	private void writeStrongsAndMorphTags(String strongsLemma, String morphology) {
+		// there may occasionally be more than on ref so find each single ref
+		int numStrongs = 0;
+		if (parameters.isShowStrongs()) {
+			numStrongs = findRefs(strongsLemma, OSISUtil.LEMMA_STRONGS, true, strongsRefs);
+		}
+		int numMorph = 0;
+		if (parameters.isShowMorphology() && StringUtils.isNotEmpty(morphology)) {
+			numMorph = findRefs(morphology, OSISUtil.MORPH_ROBINSONS, false, morphRefs);
+		}
 
 		// each morph tag should relate to a Strongs tag so they should be same
 		// length but can't assume that
-		// merge the tags into the merge list
-		for (int i = 0; i < Math.max(strongsTags.size(), morphTags.size()); i++) {
-			StringBuilder merged = new StringBuilder();
-			if (i < strongsTags.size()) {
-				merged.append(strongsTags.get(i));
-			}
-			if (i < morphTags.size()) {
-				merged.append(morphTags.get(i));
-			}
-			mergedStrongsAndMorphTags.add(merged.toString());
-		}
-
 		// for some reason the generic tags should come last and the order seems
 		// always reversed in other systems
 		// the second tag (once reversed) seems to relate to a missing word like
 		// eth
-		Collections.reverse(mergedStrongsAndMorphTags);
-		return mergedStrongsAndMorphTags;
+		for (int i = Math.max(numStrongs, numMorph)-1; i >= 0; i--) {
+			tag.setLength(0);
+			tag.append(HTML.SPACE); // separator between adjacent tags and words
+			if (i < numStrongs) {
+				appendStrongsTag(strongsLemma, strongsRefs.starts[i], strongsRefs.ends[i]);
+			}
+			if (i < numMorph) {
+				appendMorphTag(morphology, morphRefs.starts[i], morphRefs.ends[i]);
+			}
+			writer.write(tag);
+		}
 	}
 
-	private List<String> getStrongsTags(String strongsLemma) {
-		// there may occasionally be more than on ref so split them into a list
-		// of single refs
-		List<String> strongsTags = new ArrayList<String>();
-
-		if (parameters.isShowStrongs()) {
-			String[] refList = strongsLemma.split(" ");
-			for (String ref : refList) {
-				// ignore if string doesn't start with "strong;"
-				if (ref.startsWith(OSISUtil.LEMMA_STRONGS)
-						&& ref.length() > OSISUtil.LEMMA_STRONGS.length() + 2) {
-					// reduce ref like "strong:H0430" to "H0430"
-					ref = ref.substring(OSISUtil.LEMMA_STRONGS.length());
-
-					// select Hebrew or Greek protocol
-					String protocol = StrongsUtil.getStrongsProtocol(ref);
-
-					if (protocol != null) {
-						// remove initial G or H
-						String strongsNumber = ref.substring(1);
-						
-						String strTag = StrongsUtil.createStrongsLink(protocol, strongsNumber);
-
-						strongsTags.add(strTag);
-					}
+	/**
+	 * Find the space separated refs which start with prefix and record their positions
+	 * 
+	 * @return the number of refs found
+	 */
+	private int findRefs(String refs, String prefix, boolean isStrongs, RefPositions positions) {
+		int count = 0;
+		int start = 0;
+		int length = refs.length();
+		while (start < length) {
+			int end = refs.indexOf(' ', start);
+			if (end == -1) {
+				end = length;
+			}
+			// ignore if ref doesn't start with e.g. "strong:"
+			if (refs.startsWith(prefix, start) && end-start > prefix.length() + 2) {
+				// select Hebrew or Greek protocol
+				if (!isStrongs || StrongsUtil.getStrongsProtocol(refs.charAt(start+prefix.length())) != null) {
+					positions.set(count++, start, end);
 				}
 			}
+			start = end+1;
 		}
-		return strongsTags;
+		return count;
 	}
 
 	/**
-	 * example of strongs and morphology, we just use Robinson: <w
-	 * lemma="strong:G652" morph="robinson:N-NSM" src="2">an apostle</w>
-	 * 
-	 * @param morphology
-	 * @return
+	 * Start and end offsets of refs, which grow for the rare w element with more refs than usual
 	 */
-	private List<String> getMorphTags(String morphology) {
-		// there may occasionally be more than on ref so split them into a list
-		// of single refs
-		List<String> morphTags = new ArrayList<String>();
+	private static class RefPositions {
+		private int[] starts = new int[INITIAL_SIZE];
+		private int[] ends = new int[INITIAL_SIZE];
+		
+		private static final int INITIAL_SIZE = 16;
+		
+		private void set(int index, int start, int end) {
+			if (index == starts.length) {
+				int[] newStarts = new int[starts.length*2];
+				System.arraycopy(starts, 0, newStarts, 0, starts.length);
+				starts = newStarts;
+				int[] newEnds = new int[ends.length*2];
+				System.arraycopy(ends, 0, newEnds, 0, ends.length);
+				ends = newEnds;
+			}
+			starts[index] = start;
+			ends[index] = end;
+		}
+	}
 
-		if (parameters.isShowMorphology()) {
-			if (StringUtils.isNotEmpty(morphology)) {
-				String[] refList = morphology.split(" ");
-				for (String ref : refList) {
-					// ignore if string doesn't start with "robinson"
-					if (ref.startsWith(OSISUtil.MORPH_ROBINSONS)
-							&& ref.length() > OSISUtil.MORPH_ROBINSONS.length() + 2) {
-						// reduce ref like "robinson:N-NSM" to "N-NSM" for
-						// display
-						String display = ref.substring(OSISUtil.MORPH_ROBINSONS
-								.length());
+	private void appendStrongsTag(String strongsLemma, int start, int end) {
+		// reduce ref like "strong:H0430" to "H0430"
+		int langPos = start+OSISUtil.LEMMA_STRONGS.length();
+		String protocol = StrongsUtil.getStrongsProtocol(strongsLemma.charAt(langPos));
 
-						StringBuilder tag = new StringBuilder();
-						tag.append("<a href='").append(ref).append(
-								"' class='morphology'>").append(display)
-								.append("</a>");
+		// remove initial G or H
+		StrongsUtil.appendStrongsLink(tag, protocol, strongsLemma, langPos+1, end);
+	}
 
-						morphTags.add(tag.toString());
-					}
-				}
-			}
-		}
-		return morphTags;
+	/**
+	 * example of strongs and morphology, we just use Robinson: <w
+	 * lemma="strong:G652" morph="robinson:N-NSM" src="2">an apostle</w>
+	 */
+	private void appendMorphTag(String morphology, int start, int end) {
+		// reduce ref like "robinson:N-NSM" to "N-NSM" for display
+		tag.append("<a href='").append(morphology, start, end).append("' class='morphology'>")
+			.append(morphology, start+OSISUtil.MORPH_ROBINSONS.length(), end)
+			.append("</a>");
 	}
 }
@@ -42,6 +42,30 @@ public class StrongsUtil {
 		return strTag;
 	}
 
+	/**
+	 * append an html link for the Strongs number found between numStart and numEnd in refs without creating intermediate Strings
+	 */
+	public static void appendStrongsLink(StringBuilder tag, String protocol, CharSequence refs, int numStart, int numEnd) {
+		tag.append("<a href='").append(protocol).append(":");
+		// pad with leading zeros to 5 characters
+		for (int i=numEnd-numStart; i<5; i++) {
+			tag.append('0');
+		}
+		tag.append(refs, numStart, numEnd);
+		tag.append("' class='").append(DEFAULT_CSS_CLASS).append("'>");
+		tag.append(refs, numStart, numEnd);
+		tag.append("</a>");
+	}
+
+	public static String getStrongsProtocol(char lang) {
+		if (lang=='H') {
+			return Constants.HEBREW_DEF_PROTOCOL;
+		} else if (lang=='G') {
+			return Constants.GREEK_DEF_PROTOCOL;
+		}
+		return null;
+	}
+
 	public static String getStrongsProtocol(String ref) {
 		if (ref.startsWith("H")) {
 			return Constants.HEBREW_DEF_PROTOCOL;
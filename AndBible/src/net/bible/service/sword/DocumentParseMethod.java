@@ -1,8 +1,20 @@
 package net.bible.service.sword;
 
-import java.util.HashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.lang.StringUtils;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
@@ -22,6 +34,9 @@ import android.util.Log;
  *			WEB
  *			HNV
  * 
+ * Failures found while reading or validating a document are saved with the document version so they are remembered after a restart
+ * and forgotten if a new version of the document is installed.  Learned failures can only add to the failures listed above.
+ * 
  * @author Martin Denham [mjdenham at gmail dot com]
  * @see gnu.lgpl.License for license details.<br>
  *      The copyright to this program is held by it's author.
@@ -34,11 +49,46 @@ public class DocumentParseMethod {
 								FIRST_AND_LAST_BOOK_CHAPTER, 
 								ALL}
 	
-	private Map<String, FailPosition> failureInfoMap = new HashMap<String, FailPosition>();
+	// documents may be parsed on several threads at once
+	private Map<String, FailPosition> failureInfoMap = new ConcurrentHashMap<String, FailPosition>();
+	
+	// failures learned from parsing documents, keyed by initials
+	private Map<String, LearnedFailures> learnedFailuresMap = new ConcurrentHashMap<String, LearnedFailures>();
+	
+	// where learned failures are saved, or null if they are only held in memory 
+	private File learnedFailuresFile;
+	
+	// changes are saved in the background and several changes e.g. during validation are saved together
+	private ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+	private Future<?> pendingSave;
+	private boolean isSavePending;
+	
+	private static final String SEPARATOR = "|";
+	private static final String CHAPTER_SEPARATOR = ",";
 	
 	private static final String TAG = "DocumentParseMethod";
 	
+	/** failures learned for one version of a document */
+	private static class LearnedFailures {
+		String version;
+		FailPosition failPosition = FailPosition.NONE;
+		// true if every chapter has been checked so chapters not in failedChapters are known to be okay
+		boolean isValidated;
+		Map<String, Boolean> failedChapters = new ConcurrentHashMap<String, Boolean>();
+		
+		LearnedFailures(String version) {
+			this.version = version;
+		}
+	}
+	
 	public DocumentParseMethod() {
+		this(null);
+	}
+	
+	/** 
+	 * @param learnedFailuresFile file to save learned failures in so they are not relearned after every restart
+	 */
+	public DocumentParseMethod(File learnedFailuresFile) {
 		failureInfoMap.put("FreCrampon", FailPosition.FIRST_AND_LAST_BOOK_CHAPTER);		
 		failureInfoMap.put("AB", FailPosition.ALL);	
 		failureInfoMap.put("FarsiOPV", FailPosition.ALL);	
@@ -51,30 +101,45 @@ public class DocumentParseMethod {
 		failureInfoMap.put("HNV", FailPosition.FIRST_AND_LAST_BOOK_CHAPTER);
 		failureInfoMap.put("BulVeren", FailPosition.FIRST_AND_LAST_BOOK_CHAPTER);
 		failureInfoMap.put("BulCarigradNT", FailPosition.FIRST_AND_LAST_BOOK_CHAPTER);
+		
+		this.learnedFailuresFile = learnedFailuresFile;
+		loadLearnedFailures();
 	}
 	
 	/** return true if this book's chapter is believed to have a good xml structure and not require recovery fallback
 	 */
 	public boolean isFastParseOkay(Book document, Key key) {
-		boolean isFastParseOkay = false;
+		// known bad documents always use the fallback, whatever has been learned
 		FailPosition documentFailPosition = failureInfoMap.get(document.getInitials());
-		if (documentFailPosition==null) {
-			isFastParseOkay = true;
-		} else {
-			
-			switch (documentFailPosition) {
-			case NONE:
-				// should never come here
-				isFastParseOkay = true;
-				break;
-			case ALL:
-				isFastParseOkay = false;
-				break;
-			case FIRST_AND_LAST_BOOK_CHAPTER:
-				isFastParseOkay = !isStartOrEndOfBook(key);
-				break;
+		if (documentFailPosition!=null && !isFastParseOkay(documentFailPosition, key)) {
+			return false;
+		}
+
+		LearnedFailures learnedFailures = getLearnedFailures(document);
+		if (learnedFailures!=null) {
+			if (learnedFailures.failedChapters.containsKey(getChapterId(key))) {
+				return false;
+			} else if (!learnedFailures.isValidated && learnedFailures.failPosition!=FailPosition.NONE) {
+				return isFastParseOkay(learnedFailures.failPosition, key);
 			}
 		}
+		return true;
+	}
+	
+	private boolean isFastParseOkay(FailPosition documentFailPosition, Key key) {
+		boolean isFastParseOkay = false;
+		switch (documentFailPosition) {
+		case NONE:
+			// should never come here
+			isFastParseOkay = true;
+			break;
+		case ALL:
+			isFastParseOkay = false;
+			break;
+		case FIRST_AND_LAST_BOOK_CHAPTER:
+			isFastParseOkay = !isStartOrEndOfBook(key);
+			break;
+		}
 		return isFastParseOkay;
 	}
 
@@ -82,16 +147,94 @@ public class DocumentParseMethod {
 	 * many books have extra tags in first and/or last chapters hence the graded level of failures
 	 */
 	public void failedToParse(Book document, Key key) {
-		String initials = document.getInitials();
-		FailPosition documentFailPosition = failureInfoMap.get(initials);
+		LearnedFailures learnedFailures = getOrCreateLearnedFailures(document);
+		learnedFailures.failedChapters.put(getChapterId(key), Boolean.TRUE);
 
 		if (isStartOrEndOfBook(key)) {
-			documentFailPosition = FailPosition.FIRST_AND_LAST_BOOK_CHAPTER;
+			if (learnedFailures.failPosition!=FailPosition.ALL) {
+				learnedFailures.failPosition = FailPosition.FIRST_AND_LAST_BOOK_CHAPTER;
+			}
 		} else {
-			documentFailPosition = FailPosition.ALL;
+			learnedFailures.failPosition = FailPosition.ALL;
 		}
 		
-		failureInfoMap.put(initials, documentFailPosition);
+		scheduleSave();
+	}
+	
+	/** all chapters of a document have been checked and any failures recorded using failedToParse
+	 */
+	public void validated(Book document) {
+		getOrCreateLearnedFailures(document).isValidated = true;
+		scheduleSave();
+	}
+
+	/** true if every chapter of this version of the document has been checked
+	 */
+	public boolean isValidated(Book document) {
+		LearnedFailures learnedFailures = getLearnedFailures(document);
+		return learnedFailures!=null && learnedFailures.isValidated;
+	}
+	
+	/** start learning again e.g. before validating or when a document is deleted
+	 */
+	public void forget(Book document) {
+		if (learnedFailuresMap.remove(document.getInitials())!=null) {
+			scheduleSave();
+		}
+	}
+	
+	/** wait until any changes have been written to the file
+	 */
+	public void waitForSave() {
+		Future<?> save;
+		synchronized (this) {
+			save = pendingSave;
+		}
+		if (save!=null) {
+			try {
+				save.get();
+			} catch (Exception e) {
+				Log.w(TAG, "Error waiting for parse failures to be saved", e);
+			}
+		}
+	}
+	
+	/** return learned failures if they relate to the installed version of the document
+	 */
+	private LearnedFailures getLearnedFailures(Book document) {
+		LearnedFailures learnedFailures = learnedFailuresMap.get(document.getInitials());
+		if (learnedFailures!=null && !learnedFailures.version.equals(getVersion(document))) {
+			// a different version of the document has been installed
+			learnedFailuresMap.remove(document.getInitials());
+			learnedFailures = null;
+		}
+		return learnedFailures;
+	}
+
+	private synchronized LearnedFailures getOrCreateLearnedFailures(Book document) {
+		LearnedFailures learnedFailures = getLearnedFailures(document);
+		if (learnedFailures==null) {
+			learnedFailures = new LearnedFailures(getVersion(document));
+			learnedFailuresMap.put(document.getInitials(), learnedFailures);
+		}
+		return learnedFailures;
+	}
+	
+	private String getVersion(Book document) {
+		Object version = document.getBookMetaData().getProperty("Version");
+		return version==null ? "" : version.toString();
+	}
+
+	/** get an id like Gen.1 for the chapter containing key
+	 */
+	private String getChapterId(Key key) {
+		try {
+			Verse verse = KeyUtil.getVerse(key);
+			return verse.getBook().getOSIS()+"."+verse.getChapter();
+		} catch (Exception e) {
+			Log.e(TAG, "Verse error", e);
+			return "";
+		}
 	}
 	
 	private boolean isStartOrEndOfBook(Key key) {
@@ -108,4 +251,101 @@ public class DocumentParseMethod {
 		}
 		return isStartOrEnd;
 	}
+	
+	/** each document is saved as initials=version|failPosition|isValidated|chapter,chapter...
+	 */
+	private synchronized void loadLearnedFailures() {
+		if (learnedFailuresFile==null || !learnedFailuresFile.exists()) {
+			return;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(learnedFailuresFile));
+			Properties properties = new Properties();
+			properties.load(in);
+			for (Object key : properties.keySet()) {
+				String initials = (String)key;
+				String[] parts = StringUtils.splitPreserveAllTokens(properties.getProperty(initials), SEPARATOR);
+				if (parts.length==4) {
+					LearnedFailures learnedFailures = new LearnedFailures(parts[0]);
+					learnedFailures.failPosition = FailPosition.valueOf(parts[1]);
+					learnedFailures.isValidated = Boolean.parseBoolean(parts[2]);
+					for (String chapter : StringUtils.split(parts[3], CHAPTER_SEPARATOR)) {
+						learnedFailures.failedChapters.put(chapter, Boolean.TRUE);
+					}
+					learnedFailuresMap.put(initials, learnedFailures);
+				}
+			}
+			Log.d(TAG, "Loaded parse failures for "+learnedFailuresMap.size()+" documents");
+		} catch (Exception e) {
+			// failures will be relearned
+			Log.e(TAG, "Error loading parse failures", e);
+		} finally {
+			if (in!=null) {
+				try {
+					in.close();
+				} catch (Exception e) {
+					Log.w(TAG, "Error closing parse failure file", e);
+				}
+			}
+		}
+	}
+
+	/** save in the background unless a save is already waiting to run, in which case it will include this change
+	 */
+	private synchronized void scheduleSave() {
+		if (learnedFailuresFile==null || isSavePending) {
+			return;
+		}
+		isSavePending = true;
+		pendingSave = saveExecutor.submit(new Runnable() {
+			public void run() {
+				synchronized (DocumentParseMethod.this) {
+					// later changes need another save
+					isSavePending = false;
+				}
+				saveLearnedFailures();
+			}
+		});
+	}
+
+	/** failures are rare so just rewrite the whole file.  Only called by the save executor so saves never overlap.
+	 */
+	private void saveLearnedFailures() {
+		if (learnedFailuresFile==null) {
+			return;
+		}
+		Properties properties = new Properties();
+		for (Map.Entry<String, LearnedFailures> entry : learnedFailuresMap.entrySet()) {
+			LearnedFailures learnedFailures = entry.getValue();
+			properties.setProperty(entry.getKey(), learnedFailures.version+SEPARATOR+
+													learnedFailures.failPosition+SEPARATOR+
+													learnedFailures.isValidated+SEPARATOR+
+													StringUtils.join(learnedFailures.failedChapters.keySet().iterator(), CHAPTER_SEPARATOR));
+		}
+
+		// write to a temporary file so a partly written file is never loaded
+		File tempFile = new File(learnedFailuresFile.getPath()+".tmp");
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(tempFile));
+			properties.store(out, "Documents needing the fault tolerant parser");
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(learnedFailuresFile)) {
+				learnedFailuresFile.delete();
+				tempFile.renameTo(learnedFailuresFile);
+			}
+		} catch (Exception e) {
+			Log.e(TAG, "Error saving parse failures", e);
+		} finally {
+			if (out!=null) {
+				try {
+					out.close();
+				} catch (Exception e) {
+					Log.w(TAG, "Error closing parse failure file", e);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,72 @@
+package net.bible.service.sword;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.bible.service.common.Logger;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+
+import android.os.Process;
+
+/** Check the chapters of newly installed documents in the background so chapters needing the fault tolerant parser
+ * are known before they are first viewed
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class DocumentValidator implements BooksListener {
+
+	// initials of documents being downloaded
+	private Set<String> pendingInitials = new HashSet<String>();
+	
+	// documents are validated one at a time
+	private ExecutorService executor = Executors.newSingleThreadExecutor();
+	
+	private static final Logger log = new Logger(DocumentValidator.class.getName()); 
+
+	/** validate the book once it has been installed
+	 */
+	public synchronized void addHandler(Book book) {
+		if (pendingInitials.isEmpty()) {
+	        Books.installed().addBooksListener(this);
+		}
+		pendingInitials.add(book.getInitials());
+	}
+
+	@Override
+	public void bookAdded(BooksEvent ev) {
+		Book book = ev.getBook();
+		synchronized(this) {
+			if (!pendingInitials.remove(book.getInitials())) {
+				return;
+			}
+			if (pendingInitials.isEmpty()) {
+		        Books.installed().removeBooksListener(this);
+			}
+		}
+		validateInBackground(book);
+	}
+
+	@Override
+	public void bookRemoved(BooksEvent ev) {
+		//ignore
+	}
+
+	public void validateInBackground(final Book book) {
+		executor.execute(new Runnable() {
+			public void run() {
+				// do not slow down the ui
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				log.debug("Validating "+book.getInitials());
+				SwordContentFacade.getInstance().validateDocument(book);
+			}
+		});
+	}
+}
@@ -0,0 +1,345 @@
+package net.bible.service.sword;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.bible.service.common.CommonUtils;
+import net.bible.service.common.Logger;
+import net.bible.service.format.FormattedDocument;
+
+import org.crosswire.common.util.IOUtil;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+
+/** Cache html generated from a document to avoid re-reading, decompressing and parsing a whole chapter
+ * every time the same page is shown e.g. after rotation or back navigation.
+ * A memory limited LRU cache is backed by a size limited disk cache in the application cache dir.
+ * Entries are keyed on the document, key, and a fingerprint of the parameters used to create the html.
+ *
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class FormattedDocumentCache {
+
+	// allow a small fraction of the heap to be used for cached html
+	private static final int MEMORY_CACHE_HEAP_FRACTION = 32;
+
+	private static final long MAX_DISK_CACHE_BYTES = 5*1024*1024;
+
+	private static final String DISK_CACHE_FILE_EXT = ".cache";
+
+	// prefixes of disk cache file names to distinguish entries with a verse range from other keys
+	private static final String VERSE_RANGE_FILE_PREFIX = "v";
+	private static final String OTHER_KEY_FILE_PREFIX = "k";
+
+	private final long maxMemoryCacheBytes;
+	private long memoryCacheBytes = 0;
+
+	// access ordered so the eldest entry is the least recently used
+	private Map<String, CacheEntry> memoryCache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+	// null if there is no disk cache e.g. when testing
+	private File diskCacheDir;
+
+	private static final Logger log = new Logger("FormattedDocumentCache");
+
+	private static class CacheEntry {
+		// first and last verse ordinal or 0 if not a verse based key
+		int startOrdinal;
+		int endOrdinal;
+		FormattedDocument document;
+		long size;
+	}
+
+	/**
+	 * @param diskCacheDir dir for cached html files or null if only a memory cache is required
+	 */
+	public FormattedDocumentCache(File diskCacheDir) {
+		this.maxMemoryCacheBytes = Runtime.getRuntime().maxMemory()/MEMORY_CACHE_HEAP_FRACTION;
+		this.diskCacheDir = diskCacheDir;
+		log.debug("Max memory cache size:"+maxMemoryCacheBytes);
+	}
+
+	/** return a previously formatted document or null if not cached
+	 * Disk access is not synchronized to allow different pages to be fetched concurrently
+	 */
+	public FormattedDocument get(Book book, Key key, String parametersFingerprint) {
+		String cacheKey = getCacheKey(book, key, parametersFingerprint);
+		CacheEntry entry;
+		synchronized(this) {
+			entry = memoryCache.get(cacheKey);
+		}
+		if (entry==null) {
+			FormattedDocument document = readFromDisk(cacheKey, getDiskCacheFile(book, key, cacheKey));
+			if (document!=null) {
+				synchronized(this) {
+					entry = putInMemory(cacheKey, key, document);
+				}
+			}
+		}
+
+		if (entry!=null) {
+			log.debug("Using cached html for "+key);
+			return copy(entry.document);
+		}
+		return null;
+	}
+
+	public void put(Book book, Key key, String parametersFingerprint, FormattedDocument document) {
+		String cacheKey = getCacheKey(book, key, parametersFingerprint);
+		synchronized(this) {
+			putInMemory(cacheKey, key, copy(document));
+		}
+		writeToDisk(cacheKey, getDiskCacheFile(book, key, cacheKey), document);
+	}
+
+	/** remove all cached pages containing this verse from all documents e.g. because a bookmark or note has been added to the verse
+	 */
+	public synchronized void remove(Key verseKey) {
+		int ordinal = getOrdinalRange(verseKey)[0];
+		if (ordinal>0) {
+			Iterator<CacheEntry> iter = memoryCache.values().iterator();
+			while (iter.hasNext()) {
+				CacheEntry entry = iter.next();
+				if (entry.startOrdinal<=ordinal && ordinal<=entry.endOrdinal) {
+					memoryCacheBytes -= entry.size;
+					iter.remove();
+				}
+			}
+
+			if (diskCacheDir!=null && diskCacheDir.exists()) {
+				for (File bookDir : diskCacheDir.listFiles()) {
+					File[] files = bookDir.listFiles();
+					if (files!=null) {
+						for (File file : files) {
+							if (isFileContainingOrdinal(file, ordinal)) {
+								file.delete();
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** remove all cached pages for a document e.g. because it has been deleted
+	 */
+	public synchronized void remove(Book book) {
+		String bookPrefix = book.getInitials()+"|";
+		Iterator<Map.Entry<String, CacheEntry>> iter = memoryCache.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, CacheEntry> entry = iter.next();
+			if (entry.getKey().startsWith(bookPrefix)) {
+				memoryCacheBytes -= entry.getValue().size;
+				iter.remove();
+			}
+		}
+
+		if (diskCacheDir!=null) {
+			CommonUtils.deleteDirectory(getDiskCacheBookDir(book));
+		}
+	}
+
+	/** free up memory but leave the disk cache intact
+	 */
+	public synchronized void clearMemoryCache() {
+		memoryCache.clear();
+		memoryCacheBytes = 0;
+	}
+
+	private CacheEntry putInMemory(String cacheKey, Key key, FormattedDocument document) {
+		CacheEntry entry = new CacheEntry();
+		int[] ordinalRange = getOrdinalRange(key);
+		entry.startOrdinal = ordinalRange[0];
+		entry.endOrdinal = ordinalRange[1];
+		entry.document = document;
+		// 2 bytes per char
+		entry.size = document.getHtmlPassage()==null ? 0 : document.getHtmlPassage().length()*2;
+
+		CacheEntry previous = memoryCache.put(cacheKey, entry);
+		if (previous!=null) {
+			memoryCacheBytes -= previous.size;
+		}
+		memoryCacheBytes += entry.size;
+
+		// evict least recently used pages until the cache is within its memory limit, but always keep the latest page
+		Iterator<CacheEntry> iter = memoryCache.values().iterator();
+		while (memoryCacheBytes>maxMemoryCacheBytes && memoryCache.size()>1) {
+			CacheEntry eldest = iter.next();
+			memoryCacheBytes -= eldest.size;
+			iter.remove();
+		}
+		return entry;
+	}
+
+	private FormattedDocument readFromDisk(String cacheKey, File file) {
+		FormattedDocument document = null;
+		if (file!=null && file.exists()) {
+			ObjectInputStream in = null;
+			try {
+				in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+				// file names are based on hash codes so check this is really the correct page
+				if (cacheKey.equals(in.readObject())) {
+					document = (FormattedDocument)in.readObject();
+					// mark as recently used so it is not deleted when the disk cache is trimmed
+					file.setLastModified(System.currentTimeMillis());
+				}
+			} catch (Exception e) {
+				log.error("Error reading cached html", e);
+				file.delete();
+			} finally {
+				IOUtil.close(in);
+			}
+		}
+		return document;
+	}
+
+	private void writeToDisk(String cacheKey, File file, FormattedDocument document) {
+		if (file!=null) {
+			// write to a temporary file and rename so other threads never read a partially written file
+			File tempFile = new File(file.getPath()+"."+Thread.currentThread().getId());
+			ObjectOutputStream out = null;
+			try {
+				CommonUtils.ensureDirExists(file.getParentFile());
+				out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+				out.writeObject(cacheKey);
+				out.writeObject(document);
+				out.close();
+				out = null;
+				if (!tempFile.renameTo(file)) {
+					tempFile.delete();
+				}
+			} catch (Exception e) {
+				log.error("Error writing cached html", e);
+			} finally {
+				IOUtil.close(out);
+				tempFile.delete();
+			}
+			trimDiskCache();
+		}
+	}
+
+	/** delete least recently used files if the disk cache has grown too large
+	 */
+	private synchronized void trimDiskCache() {
+		File[] bookDirs = diskCacheDir.listFiles();
+		if (bookDirs!=null) {
+			long totalSize = 0;
+			int fileCount = 0;
+			File[][] filesPerBook = new File[bookDirs.length][];
+			for (int i=0; i<bookDirs.length; i++) {
+				File[] files = bookDirs[i].listFiles();
+				filesPerBook[i] = files==null ? new File[0] : files;
+				for (File file : filesPerBook[i]) {
+					totalSize += file.length();
+					fileCount++;
+				}
+			}
+
+			if (totalSize>MAX_DISK_CACHE_BYTES) {
+				File[] allFiles = new File[fileCount];
+				int next = 0;
+				for (File[] files : filesPerBook) {
+					System.arraycopy(files, 0, allFiles, next, files.length);
+					next += files.length;
+				}
+				Arrays.sort(allFiles, new Comparator<File>() {
+					@Override
+					public int compare(File file1, File file2) {
+						long diff = file1.lastModified()-file2.lastModified();
+						return diff<0 ? -1 : (diff>0 ? 1 : 0);
+					}
+				});
+
+				// trim to 3/4 of the max size to avoid trimming on every write
+				for (int i=0; i<allFiles.length && totalSize>MAX_DISK_CACHE_BYTES*3/4; i++) {
+					totalSize -= allFiles[i].length();
+					allFiles[i].delete();
+				}
+			}
+		}
+	}
+
+	/** disk cache file names include the verse range, if any, so pages can be invalidated without reading them
+	 */
+	private File getDiskCacheFile(Book book, Key key, String cacheKey) {
+		if (diskCacheDir==null) {
+			return null;
+		}
+		int[] ordinalRange = getOrdinalRange(key);
+		String hash = Integer.toHexString(cacheKey.hashCode());
+		String fileName;
+		if (ordinalRange[0]>0) {
+			fileName = VERSE_RANGE_FILE_PREFIX+ordinalRange[0]+"-"+ordinalRange[1]+"_"+hash+DISK_CACHE_FILE_EXT;
+		} else {
+			fileName = OTHER_KEY_FILE_PREFIX+"_"+hash+DISK_CACHE_FILE_EXT;
+		}
+		return new File(getDiskCacheBookDir(book), fileName);
+	}
+
+	private File getDiskCacheBookDir(Book book) {
+		// initials may contain chars that are not valid in file names
+		return new File(diskCacheDir, book.getInitials().replaceAll("[^A-Za-z0-9_.-]", "_"));
+	}
+
+	private boolean isFileContainingOrdinal(File file, int ordinal) {
+		String name = file.getName();
+		if (name.startsWith(VERSE_RANGE_FILE_PREFIX)) {
+			try {
+				int dash = name.indexOf('-');
+				int underscore = name.indexOf('_');
+				int start = Integer.parseInt(name.substring(VERSE_RANGE_FILE_PREFIX.length(), dash));
+				int end = Integer.parseInt(name.substring(dash+1, underscore));
+				return start<=ordinal && ordinal<=end;
+			} catch (Exception e) {
+				log.error("Unexpected cache file name:"+name);
+			}
+		}
+		return false;
+	}
+
+	/** return first and last verse ordinal of a verse based key or zeros if the key is not verse based
+	 */
+	private int[] getOrdinalRange(Key key) {
+		int[] range = new int[2];
+		if (key instanceof Verse) {
+			range[0] = range[1] = ((Verse)key).getOrdinal();
+		} else if (key instanceof VerseRange) {
+			range[0] = ((VerseRange)key).getStart().getOrdinal();
+			range[1] = ((VerseRange)key).getEnd().getOrdinal();
+		} else if (key instanceof Passage && !key.isEmpty()) {
+			Passage passage = (Passage)key;
+			range[0] = passage.getVerseAt(0).getOrdinal();
+			range[1] = passage.getVerseAt(passage.countVerses()-1).getOrdinal();
+		}
+		return range;
+	}
+
+	private String getCacheKey(Book book, Key key, String parametersFingerprint) {
+		// include the module version so an upgraded module is not shown with stale cached text
+		return book.getInitials()+"|"+book.getBookMetaData().getProperty("Version")+"|"+key.getOsisRef()+"|"+parametersFingerprint;
+	}
+
+	/** prevent callers changing a cached document
+	 */
+	private FormattedDocument copy(FormattedDocument document) {
+		FormattedDocument copy = new FormattedDocument();
+		copy.setHtmlPassage(document.getHtmlPassage());
+		copy.setNotesList(document.getNotesList());
+		return copy;
+	}
+}
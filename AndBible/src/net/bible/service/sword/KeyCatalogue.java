@@ -0,0 +1,431 @@
+package net.bible.service.sword;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+
+import net.bible.service.common.Logger;
+
+import org.apache.commons.lang.StringUtils;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.passage.DefaultLeafKeyList;
+import org.crosswire.jsword.passage.Key;
+
+/** The names of all the keys of a dictionary in a memory mapped file so the key list can be used without reading every key
+ * from the module or holding a Key object for each one.
+ * The file is built once for each version of the module.
+ * 
+ * The file has a header including a stamp of the module version, an offset for each key name followed by an end offset,
+ * a hash table of key positions so the position of a key is found without searching, the key positions in order of
+ * case folded name with an offset for each folded name, and then the UTF-8 bytes of all key names followed by those of
+ * all folded names.  Keys starting with some text are found by binary search of the folded names in the file so no
+ * String is created for each key.
+ * 
+ * @author Martin Denham [mjdenham at gmail dot com]
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's author.
+ */
+public class KeyCatalogue {
+
+	public static final String FILE_EXT = ".keys";
+
+	private static final int MAGIC = 0x41424B43;
+	private static final int FORMAT_VERSION = 3;
+	private static final int HEADER_MIN_SIZE = 16;
+	private static final String ENCODING = "UTF-8";
+
+	// offset of each name in names, followed by the end of the last name
+	private ByteBuffer offsets;
+	private ByteBuffer names;
+	private int numKeys;
+
+	// open addressing table of key positions indexed by name hash, the size is a power of 2 and empty slots are -1
+	private ByteBuffer hashTable;
+	private int hashTableMask;
+	private static final int EMPTY_SLOT = -1;
+
+	// key positions sorted by the unsigned UTF-8 bytes of the case folded names, and the offset of each folded name
+	// in foldedNames in the same order followed by the end of the last one
+	private ByteBuffer sortedPositions;
+	private ByteBuffer foldedOffsets;
+	private ByteBuffer foldedNames;
+
+	private static final Logger log = new Logger("KeyCatalogue");
+
+	/** load a catalogue previously created for the same version of a module
+	 * 
+	 * @return the catalogue or null if it is missing or was created for a different version of the module
+	 */
+	public static KeyCatalogue load(File file, String moduleStamp) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the names are sorted using the case folding of the locale the catalogue was created in
+			if (raf.length()<HEADER_MIN_SIZE || raf.readInt()!=MAGIC || raf.readInt()!=FORMAT_VERSION || !moduleStamp.equals(raf.readUTF()) || !getLocaleStamp().equals(raf.readUTF())) {
+				return null;
+			}
+			int numKeys = raf.readInt();
+			long offsetsStart = raf.getFilePointer();
+			long hashTableSizeStart = offsetsStart+4L*(numKeys+1);
+			if (raf.length()<hashTableSizeStart+4) {
+				return null;
+			}
+			raf.seek(hashTableSizeStart);
+			int hashTableSize = raf.readInt();
+			long hashTableStart = hashTableSizeStart+4;
+			long sortedPositionsStart = hashTableStart+4L*hashTableSize;
+			long foldedOffsetsStart = sortedPositionsStart+4L*numKeys;
+			long namesStart = foldedOffsetsStart+4L*(numKeys+1);
+			if (Integer.bitCount(hashTableSize)!=1 || raf.length()<namesStart) {
+				return null;
+			}
+
+			// the mappings remain valid after the file is closed
+			FileChannel channel = raf.getChannel();
+			ByteBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, offsetsStart, hashTableSizeStart-offsetsStart);
+			ByteBuffer hashTable = channel.map(FileChannel.MapMode.READ_ONLY, hashTableStart, sortedPositionsStart-hashTableStart);
+			ByteBuffer sortedPositions = channel.map(FileChannel.MapMode.READ_ONLY, sortedPositionsStart, foldedOffsetsStart-sortedPositionsStart);
+			ByteBuffer foldedOffsets = channel.map(FileChannel.MapMode.READ_ONLY, foldedOffsetsStart, namesStart-foldedOffsetsStart);
+			long namesLength = offsets.getInt(4*numKeys);
+			long foldedNamesLength = foldedOffsets.getInt(4*numKeys);
+			if (raf.length()!=namesStart+namesLength+foldedNamesLength) {
+				return null;
+			}
+			ByteBuffer names = channel.map(FileChannel.MapMode.READ_ONLY, namesStart, namesLength);
+			ByteBuffer foldedNames = channel.map(FileChannel.MapMode.READ_ONLY, namesStart+namesLength, foldedNamesLength);
+			KeyCatalogue keyCatalogue = new KeyCatalogue(offsets, names, numKeys, hashTable, hashTableSize-1);
+			keyCatalogue.sortedPositions = sortedPositions;
+			keyCatalogue.foldedOffsets = foldedOffsets;
+			keyCatalogue.foldedNames = foldedNames;
+			return keyCatalogue;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** read every key of a book and write their names to a catalogue file
+	 * This is slow because every key is read from the module so it should not be done in the ui thread
+	 */
+	public static void create(Book book, File file, String moduleStamp) throws IOException {
+		long start = System.currentTimeMillis();
+		
+		// names are written after the offsets so collect them first
+		ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+		IntArray nameOffsets = new IntArray();
+		IntArray nameHashes = new IntArray();
+		List<byte[]> foldedNameList = new ArrayList<byte[]>();
+		synchronized (book) {
+			for (Key key : book.getGlobalKeyList()) {
+				// root key has no name and can be ignored but also check for any other keys with no name
+				String name = key.getName();
+				if (!StringUtils.isEmpty(name)) {
+					nameOffsets.add(nameBytes.size());
+					nameHashes.add(hash(name));
+					nameBytes.write(name.getBytes(ENCODING));
+					foldedNameList.add(getFoldedBytes(name));
+				}
+			}
+		}
+		nameOffsets.add(nameBytes.size());
+		int[] hashTable = createHashTable(nameHashes);
+
+		// the sort is stable so keys with the same folded name stay in dictionary order
+		final byte[][] foldedNameBytes = foldedNameList.toArray(new byte[foldedNameList.size()][]);
+		Integer[] sortedPositions = new Integer[foldedNameBytes.length];
+		for (int i=0; i<sortedPositions.length; i++) {
+			sortedPositions[i] = i;
+		}
+		Arrays.sort(sortedPositions, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer position1, Integer position2) {
+				return compareBytes(foldedNameBytes[position1], foldedNameBytes[position2]);
+			}
+		});
+
+		// write to a temporary file so a partly written catalogue is never loaded
+		File tempFile = new File(file.getPath()+".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(moduleStamp);
+			out.writeUTF(getLocaleStamp());
+			out.writeInt(nameOffsets.size()-1);
+			for (int i=0; i<nameOffsets.size(); i++) {
+				out.writeInt(nameOffsets.get(i));
+			}
+			out.writeInt(hashTable.length);
+			for (int position : hashTable) {
+				out.writeInt(position);
+			}
+			for (int position : sortedPositions) {
+				out.writeInt(position);
+			}
+			int foldedOffset = 0;
+			for (int position : sortedPositions) {
+				out.writeInt(foldedOffset);
+				foldedOffset += foldedNameBytes[position].length;
+			}
+			out.writeInt(foldedOffset);
+			nameBytes.writeTo(out);
+			for (int position : sortedPositions) {
+				out.write(foldedNameBytes[position]);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!tempFile.renameTo(file)) {
+			// renameTo will not replace an existing file on all platforms
+			file.delete();
+			if (!tempFile.renameTo(file)) {
+				tempFile.delete();
+				throw new IOException("Could not create "+file);
+			}
+		}
+		log.info("Created key catalogue for "+book.getInitials()+" with "+(nameOffsets.size()-1)+" keys in "+(System.currentTimeMillis()-start)+"ms");
+	}
+
+	/** put each key position in the first free slot from its hash so a lookup finds the first of any keys with the same name
+	 * The table is at most half full to keep probe sequences short.
+	 */
+	private static int[] createHashTable(IntArray nameHashes) {
+		int size = Integer.highestOneBit(Math.max(1, nameHashes.size())*2-1)<<1;
+		int[] hashTable = new int[size];
+		Arrays.fill(hashTable, EMPTY_SLOT);
+		int mask = size-1;
+		for (int position=0; position<nameHashes.size(); position++) {
+			int slot = nameHashes.get(position) & mask;
+			while (hashTable[slot]!=EMPTY_SLOT) {
+				slot = (slot+1) & mask;
+			}
+			hashTable[slot] = position;
+		}
+		return hashTable;
+	}
+
+	/** names are found ignoring case by comparing their lower case UTF-8 bytes
+	 */
+	public static String foldCase(String name) {
+		return name.toLowerCase();
+	}
+
+	private static byte[] getFoldedBytes(String name) {
+		try {
+			return foldCase(name).getBytes(ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** lower case depends on the locale so a catalogue created in a different locale is recreated
+	 */
+	private static String getLocaleStamp() {
+		return Locale.getDefault().toString();
+	}
+
+	/** compare as unsigned bytes which sorts UTF-8 in code point order
+	 */
+	private static int compareBytes(byte[] bytes1, byte[] bytes2) {
+		int length = Math.min(bytes1.length, bytes2.length);
+		for (int i=0; i<length; i++) {
+			int diff = (bytes1[i] & 0xFF)-(bytes2[i] & 0xFF);
+			if (diff!=0) {
+				return diff;
+			}
+		}
+		return bytes1.length-bytes2.length;
+	}
+
+	/** spread the String hash so that names differing only at the end do not share the low bits used for the slot
+	 */
+	private static int hash(String name) {
+		int h = name.hashCode();
+		return h ^ (h>>>16);
+	}
+
+	private KeyCatalogue(ByteBuffer offsets, ByteBuffer names, int numKeys, ByteBuffer hashTable, int hashTableMask) {
+		this.offsets = offsets;
+		this.names = names;
+		this.numKeys = numKeys;
+		this.hashTable = hashTable;
+		this.hashTableMask = hashTableMask;
+	}
+
+	public int size() {
+		return numKeys;
+	}
+
+	public String getName(int index) {
+		if (index<0 || index>=numKeys) {
+			throw new IndexOutOfBoundsException("Key index:"+index+" size:"+numKeys);
+		}
+		// absolute gets do not change the buffers so they can be shared by threads
+		int start = offsets.getInt(4*index);
+		int end = offsets.getInt(4*(index+1));
+		byte[] bytes = new byte[end-start];
+		for (int i=0; i<bytes.length; i++) {
+			bytes[i] = names.get(start+i);
+		}
+		try {
+			return new String(bytes, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** find the position of a key name using the hash table and comparing bytes in the file so no Strings are created
+	 * 
+	 * @return the index of the first key with the name or -1 if not found
+	 */
+	public int indexOf(String name) {
+		byte[] target;
+		try {
+			target = name.getBytes(ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		int slot = hash(name) & hashTableMask;
+		int position;
+		while ((position = hashTable.getInt(4*slot))!=EMPTY_SLOT) {
+			int start = offsets.getInt(4*position);
+			int end = offsets.getInt(4*(position+1));
+			if (end-start==target.length && isMatch(start, target)) {
+				return position;
+			}
+			slot = (slot+1) & hashTableMask;
+		}
+		return -1;
+	}
+
+	private boolean isMatch(int start, byte[] target) {
+		for (int i=0; i<target.length; i++) {
+			if (names.get(start+i)!=target[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** the position of the key which is at sortedIndex when the keys are sorted by case folded name
+	 */
+	public int getSortedPosition(int sortedIndex) {
+		return sortedPositions.getInt(4*sortedIndex);
+	}
+
+	/** find the range of sorted indexes of keys whose names start with prefix, ignoring case
+	 * 
+	 * @param from the first sorted index to search
+	 * @param to the sorted index after the last one to search
+	 * @return the first sorted index of a matching key and the index after the last match
+	 */
+	public int[] findPrefix(String prefix, int from, int to) {
+		byte[] foldedPrefix = getFoldedBytes(prefix);
+		int start = from;
+		int high = to;
+		while (start<high) {
+			int mid = (start+high)>>>1;
+			if (comparePrefix(mid, foldedPrefix)<0) {
+				start = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		int end = start;
+		high = to;
+		while (end<high) {
+			int mid = (end+high)>>>1;
+			if (comparePrefix(mid, foldedPrefix)<=0) {
+				end = mid+1;
+			} else {
+				high = mid;
+			}
+		}
+		return new int[] {start, end};
+	}
+
+	/** compare the folded name at sortedIndex with a folded prefix
+	 * 
+	 * @return 0 if the name starts with the prefix, otherwise the order of the name relative to the prefix
+	 */
+	private int comparePrefix(int sortedIndex, byte[] foldedPrefix) {
+		int start = foldedOffsets.getInt(4*sortedIndex);
+		int length = foldedOffsets.getInt(4*(sortedIndex+1))-start;
+		for (int i=0; i<foldedPrefix.length; i++) {
+			if (i==length) {
+				// the name is shorter than the prefix
+				return -1;
+			}
+			int diff = (foldedNames.get(start+i) & 0xFF)-(foldedPrefix[i] & 0xFF);
+			if (diff!=0) {
+				return diff;
+			}
+		}
+		return 0;
+	}
+
+	/** a list of the keys in the catalogue.  Each Key is only created when it is requested.
+	 */
+	public List<Key> getKeyList() {
+		return new KeyList();
+	}
+
+	private class KeyList extends AbstractList<Key> implements RandomAccess {
+		@Override
+		public Key get(int index) {
+			// dictionary keys are identified by name alone
+			return new DefaultLeafKeyList(getName(index));
+		}
+
+		@Override
+		public int size() {
+			return numKeys;
+		}
+
+		@Override
+		public int indexOf(Object key) {
+			return key instanceof Key ? KeyCatalogue.this.indexOf(((Key)key).getName()) : -1;
+		}
+	}
+
+	/** a growable array of ints to avoid an Integer for every key while creating a catalogue
+	 */
+	private static class IntArray {
+		private int[] values = new int[1024];
+		private int size;
+
+		void add(int value) {
+			if (size==values.length) {
+				int[] newValues = new int[size*2];
+				System.arraycopy(values, 0, newValues, 0, size);
+				values = newValues;
+			}
+			values[size++] = value;
+		}
+		int get(int index) {
+			return values[index];
+		}
+		int size() {
+			return size;
+		}
+	}
+}
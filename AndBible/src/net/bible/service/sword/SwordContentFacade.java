@@ -1,9 +1,14 @@
 package net.bible.service.sword;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -22,10 +27,13 @@ import net.bible.service.format.FormattedDocument;
 import net.bible.service.format.HtmlMessageFormatter;
 import net.bible.service.format.OSISInputStream;
 import net.bible.service.format.OsisToCanonicalTextSaxHandler;
+import net.bible.service.format.OsisToCanonicalVerseTextSaxHandler;
 import net.bible.service.format.OsisToSpeakTextSaxHandler;
 import net.bible.service.format.osistohtml.OsisToHtmlParameters;
 import net.bible.service.format.osistohtml.OsisToHtmlSaxHandler;
 
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
 import org.crosswire.common.xml.SAXEventProvider;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookCategory;
@@ -34,10 +42,22 @@ import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.book.BookMetaData;
 import org.crosswire.jsword.book.FeatureType;
 import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.lucene.PdaIndexSearcherManager;
+import org.crosswire.jsword.index.lucene.PdaLuceneIndexManager;
+import org.crosswire.jsword.index.lucene.StrongsOccurrenceIndex;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.NoSuchKeyException;
 import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseBitSet;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.BibleInfo;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import android.content.SharedPreferences;
 import android.util.Log;
@@ -50,11 +70,22 @@ import android.util.Log;
  */
 public class SwordContentFacade {
 	
-	private DocumentParseMethod documentParseMethod = new DocumentParseMethod();
+	private volatile DocumentParseMethod documentParseMethod;
+	private static final String PARSE_METHOD_FILE = "document_parse_method.properties";
+	
+	private volatile FormattedDocumentCache formattedDocumentCache;
+	private static final String HTML_CACHE_DIR = "html";
+	
+	// pages with more verses than this e.g. Ps 119 are streamed to a file instead of being built as a String
+	private static final int LARGE_PAGE_VERSE_COUNT = 150;
+	// commentary entries are much longer than verses
+	private static final int LARGE_COMMENTARY_PAGE_VERSE_COUNT = 50;
 	
 	private static final String TAG = "SwordContentApi";
 	private static SwordContentFacade singleton;
 
+	private PdaLuceneIndexManager indexManager = new PdaLuceneIndexManager();
+
 	// set to false for testing
 	public static boolean isAndroid = true; //CommonUtils.isAndroid();
 	
@@ -76,6 +107,8 @@ public class SwordContentFacade {
 	}
 	
 	/** top level method to fetch html from the raw document data
+	 * Not synchronized so different documents can be rendered concurrently e.g. speak or search in the background while a page is shown.
+	 * Only reads from the same book are serialized because JSword backends are not thread safe.
 	 * 
 	 * @param book
 	 * @param key
@@ -87,50 +120,119 @@ public class SwordContentFacade {
 	 * @throws URISyntaxException
 	 * @throws ParserConfigurationException
 	 */
-	public synchronized FormattedDocument readHtmlText(Book book, Key key) throws ParseException
+	public FormattedDocument readHtmlText(Book book, Key key) throws ParseException
 	{
 		FormattedDocument retVal = new FormattedDocument();
 		if (book==null || key==null) {
 			retVal.setHtmlPassage("");
-		} else if (!book.contains(key)) {
+		} else if (!isKeyInDocument(book, key)) {
 			Log.w(TAG, "KEY:"+key+" not found in doc:"+book);
 			
 			String htmlMsg = HtmlMessageFormatter.format(R.string.error_key_not_in_document);
 			retVal.setHtmlPassage(htmlMsg);
 		} else {
+			OsisToHtmlParameters osisToHtmlParameters = getOsisToHtmlParameters(book, key);
+			String parametersFingerprint = osisToHtmlParameters.getFingerprint();
+
+			// the same page is often redisplayed e.g. after rotation or back navigation so check for previously generated html
+			FormattedDocument cachedDocument = getFormattedDocumentCache().get(book, key, parametersFingerprint);
+			if (cachedDocument!=null) {
+				return cachedDocument;
+			}
+			
+			// bookmarks and notes are only fetched if the page is not cached because the cache is updated if they change 
+			addPassageMarks(osisToHtmlParameters, book, key);
 
 			// we have a fast way of handling OSIS zText docs but some docs need the superior JSword error recovery for mismatching tags 
 			// try to parse using optimised method first if a suitable document and it has not failed previously
 			boolean isParsedOk = false;
-			if ("OSIS".equals(book.getBookMetaData().getProperty("SourceType")) &&
-				"zText".equals(book.getBookMetaData().getProperty("ModDrv")) &&
-				documentParseMethod.isFastParseOkay(book, key)) {
+			if (isFastParseOkay(book, key)) {
 				try {
-					retVal = readHtmlTextOptimizedZTextOsis(book, key);
+					retVal = readHtmlTextOptimizedZTextOsis(book, key, osisToHtmlParameters, null);
 					isParsedOk = true;
 				} catch (ParseException pe) {
-					documentParseMethod.failedToParse(book, key);
+					getDocumentParseMethod().failedToParse(book, key);
 				}
 			} 
 			
 			// fall back to slightly slower JSword method with JSword's fallback approach of removing all tags
 			if (!isParsedOk) {
-				retVal = readHtmlTextStandardJSwordMethod(book, key);
+				retVal = readHtmlTextStandardJSwordMethod(book, key, osisToHtmlParameters, null);
 			}
+			
+			getFormattedDocumentCache().put(book, key, parametersFingerprint, retVal);
 		}
 		return retVal;
 	}
 
-	private FormattedDocument readHtmlTextOptimizedZTextOsis(Book book, Key key) throws ParseException
+	/** Check if a page is too large to be built in memory as a String, in which case it should be streamed using writeHtmlText
+	 */
+	public boolean isLargePage(Book book, Key key) {
+		if (book==null || key==null) {
+			return false;
+		}
+		int maxVerses = BookCategory.COMMENTARY.equals(book.getBookCategory()) ? LARGE_COMMENTARY_PAGE_VERSE_COUNT : LARGE_PAGE_VERSE_COUNT;
+		return key.getCardinality()>maxVerses;
+	}
+
+	/** Write html directly to out as it is generated instead of building one large String.
+	 * Used for pages which are too large to be held in memory.  The html is not cached.
+	 * If the fast parse fails part of the page may already have been written so the failure is recorded and a 
+	 * ParseException thrown, after which the caller should discard the output and use writeHtmlTextStandardJSwordMethod.
+	 * 
+	 * @return a document containing the notes but no html
+	 */
+	public FormattedDocument writeHtmlText(Book book, Key key, Appendable out) throws ParseException
+	{
+		if (book==null || key==null || !isKeyInDocument(book, key)) {
+			// messages are short so no need to stream them
+			FormattedDocument message = readHtmlText(book, key);
+			try {
+				out.append(message.getHtmlPassage());
+			} catch (IOException e) {
+				throw new ParseException("Error writing html", e);
+			}
+			return new FormattedDocument();
+		}
+
+		OsisToHtmlParameters osisToHtmlParameters = getOsisToHtmlParameters(book, key);
+		addPassageMarks(osisToHtmlParameters, book, key);
+
+		if (isFastParseOkay(book, key)) {
+			try {
+				return readHtmlTextOptimizedZTextOsis(book, key, osisToHtmlParameters, out);
+			} catch (ParseException pe) {
+				// html may already have been partly written so the caller must restart the output
+				getDocumentParseMethod().failedToParse(book, key);
+				throw pe;
+			}
+		} else {
+			return readHtmlTextStandardJSwordMethod(book, key, osisToHtmlParameters, out);
+		}
+	}
+
+	/** Write html directly to out using JSword's error recovery for mismatching tags e.g. after writeHtmlText failed
+	 * 
+	 * @return a document containing the notes but no html
+	 */
+	public FormattedDocument writeHtmlTextStandardJSwordMethod(Book book, Key key, Appendable out) throws ParseException
+	{
+		OsisToHtmlParameters osisToHtmlParameters = getOsisToHtmlParameters(book, key);
+		addPassageMarks(osisToHtmlParameters, book, key);
+		return readHtmlTextStandardJSwordMethod(book, key, osisToHtmlParameters, out);
+	}
+
+	private FormattedDocument readHtmlTextOptimizedZTextOsis(Book book, Key key, OsisToHtmlParameters osisToHtmlParameters, Appendable out) throws ParseException
 	{
 		log.debug("Using fast method to fetch document data");
 		InputStream is = new OSISInputStream(book, key);
 
-		OsisToHtmlSaxHandler osisToHtml = getSaxHandler(book, key);
+		OsisToHtmlSaxHandler osisToHtml = new OsisToHtmlSaxHandler(osisToHtmlParameters, out);
 	
 		SAXParser parser = getSAXParser();
 		try {
 			parser.parse(is, osisToHtml);
+			osisToHtml.getWriter().finish();
 		} catch (Exception e) {
 			log.error("Parsing error", e);
 			throw new ParseException("Parsing error", e);
@@ -143,21 +245,26 @@ public class SwordContentFacade {
         return retVal;
 	}
 
-	private FormattedDocument readHtmlTextStandardJSwordMethod(Book book, Key key) throws ParseException
+	private FormattedDocument readHtmlTextStandardJSwordMethod(Book book, Key key, OsisToHtmlParameters osisToHtmlParameters, Appendable out) throws ParseException
 	{
 		log.debug("Using standard JSword to fetch document data");
 		FormattedDocument retVal = new FormattedDocument();
 
 		try {
-			BookData data = new BookData(book, key);		
-			SAXEventProvider osissep = data.getSAXEventProvider();
+			SAXEventProvider osissep;
+			// the raw text is read when the event provider is created so only this step needs to be exclusive
+			synchronized(book) {
+				BookData data = new BookData(book, key);		
+				osissep = data.getSAXEventProvider();
+			}
 			if (osissep == null) {
 				Log.e(TAG, "No osis SEP returned");
 				retVal.setHtmlPassage("Error fetching osis SEP"); //$NON-NLS-1$
 			} else {
-				OsisToHtmlSaxHandler osisToHtml = getSaxHandler(book, key);
+				OsisToHtmlSaxHandler osisToHtml = new OsisToHtmlSaxHandler(osisToHtmlParameters, out);
 		
 				osissep.provideSAXEvents(osisToHtml);
+				osisToHtml.getWriter().finish();
 		
 				retVal.setHtmlPassage(osisToHtml.toString());
 				retVal.setNotesList(osisToHtml.getNotesList());
@@ -169,6 +276,123 @@ public class SwordContentFacade {
 		}
 	}
 
+	private boolean isFastParseOkay(Book book, Key key) {
+		return isOsisZText(book) && getDocumentParseMethod().isFastParseOkay(book, key);
+	}
+
+	/** we have a fast way of handling OSIS zText docs but some docs need the superior JSword error recovery for mismatching tags
+	 */
+	private boolean isOsisZText(Book book) {
+		return "OSIS".equals(book.getBookMetaData().getProperty("SourceType")) &&
+			   "zText".equals(book.getBookMetaData().getProperty("ModDrv"));
+	}
+
+	/** Check every chapter of a newly installed Bible with the fast parser and record any chapters which need JSword's error recovery
+	 * so the first view of each bad chapter does not have to fail before falling back to the JSword method.  Runs as a JSword job.
+	 */
+	public void validateDocument(Book book) {
+		if (!isOsisZText(book) || !BookCategory.BIBLE.equals(book.getBookCategory())) {
+			return;
+		}
+		DocumentParseMethod parseMethod = getDocumentParseMethod();
+		if (parseMethod.isValidated(book)) {
+			return;
+		}
+		
+		String jobName = "Checking "+book.getInitials();
+		Progress job = JobManager.createJob(jobName, Thread.currentThread());
+		job.beginJob(jobName, BibleInfo.chaptersInBible());
+		try {
+			// start again in case a previous validation was interrupted
+			parseMethod.forget(book);
+			
+			DefaultHandler wellFormedCheck = new DefaultHandler();
+			int numFailures = 0;
+			for (BibleBook bibleBook : BibleInfo.getBooks()) {
+				for (int chapter=1; chapter<=BibleInfo.chaptersInBook(bibleBook); chapter++) {
+					if (job.isFinished()) {
+						log.debug("Validation cancelled");
+						return;
+					}
+					Verse firstVerse = new Verse(bibleBook, chapter, 1);
+					Key chapterKey = new VerseRange(firstVerse, firstVerse.getLastVerseInChapter());
+					if (isKeyInDocument(book, chapterKey)) {
+						try {
+							getSAXParser().parse(new OSISInputStream(book, chapterKey), wellFormedCheck);
+						} catch (SAXException se) {
+							parseMethod.failedToParse(book, chapterKey);
+							numFailures++;
+						}
+					}
+					job.incrementWorkDone(1);
+				}
+			}
+			parseMethod.validated(book);
+			log.info("Validated "+book.getInitials()+" chapters needing fault tolerant parser:"+numFailures);
+		} catch (Exception e) {
+			log.error("Error validating "+book.getInitials(), e);
+		} finally {
+			job.done();
+		}
+	}
+
+	private boolean isKeyInDocument(Book book, Key key) {
+		synchronized(book) {
+			return book.contains(key);
+		}
+	}
+
+	/** a bookmark or note has changed so ensure any page containing the verse is regenerated when next shown 
+	 */
+	public void passageMarksChanged(Key verse) {
+		getFormattedDocumentCache().remove(verse);
+	}
+
+	/** remove all cached html for a document e.g. when the document is deleted 
+	 */
+	public void clearCachedDocument(Book book) {
+		getFormattedDocumentCache().remove(book);
+		getDocumentParseMethod().forget(book);
+	}
+
+	/** release memory held by the html cache
+	 */
+	public void onLowMemory() {
+		getFormattedDocumentCache().clearMemoryCache();
+		// searchers are reopened when next needed
+		PdaIndexSearcherManager.getInstance().closeAll();
+	}
+
+	private DocumentParseMethod getDocumentParseMethod() {
+		if (documentParseMethod==null) {
+			synchronized(this) {
+				if (documentParseMethod==null) {
+					File learnedFailuresFile = null;
+					if (isAndroid) {
+						learnedFailuresFile = new File(BibleApplication.getApplication().getFilesDir(), PARSE_METHOD_FILE);
+					}
+					documentParseMethod = new DocumentParseMethod(learnedFailuresFile);
+				}
+			}
+		}
+		return documentParseMethod;
+	}
+
+	private FormattedDocumentCache getFormattedDocumentCache() {
+		if (formattedDocumentCache==null) {
+			synchronized(this) {
+				if (formattedDocumentCache==null) {
+					File diskCacheDir = null;
+					if (isAndroid) {
+						diskCacheDir = new File(BibleApplication.getApplication().getCacheDir(), HTML_CACHE_DIR);
+					}
+					formattedDocumentCache = new FormattedDocumentCache(diskCacheDir);
+				}
+			}
+		}
+		return formattedDocumentCache;
+	}
+
 	/**
 	 * Obtain a SAX event provider for the OSIS document representation of one
 	 * or more book entries.
@@ -212,8 +436,11 @@ public class SwordContentFacade {
      */
     public String getCanonicalText(Book book, Key key) throws NoSuchKeyException, BookException, ParseException {
     	try {
-			BookData data = new BookData(book, key);
-			SAXEventProvider osissep = data.getSAXEventProvider();
+			SAXEventProvider osissep;
+			synchronized(book) {
+				BookData data = new BookData(book, key);
+				osissep = data.getSAXEventProvider();
+			}
 		
 			ContentHandler osisHandler = new OsisToCanonicalTextSaxHandler();
 
@@ -236,8 +463,11 @@ public class SwordContentFacade {
      */
     public String getTextToSpeak(Book book, Key key) throws NoSuchKeyException, BookException, ParseException {
     	try {
-			BookData data = new BookData(book, key);
-			SAXEventProvider osissep = data.getSAXEventProvider();
+			SAXEventProvider osissep;
+			synchronized(book) {
+				BookData data = new BookData(book, key);
+				osissep = data.getSAXEventProvider();
+			}
 		
 			boolean sayReferences = BookCategory.GENERAL_BOOK.equals(book.getBookCategory());
 			ContentHandler osisHandler = new OsisToSpeakTextSaxHandler(sayReferences);
@@ -252,19 +482,22 @@ public class SwordContentFacade {
     	}
     }
 
-    private SAXParser saxParser;
+    // SAXParsers are not thread safe so each rendering thread has its own
+    private ThreadLocal<SAXParser> saxParser = new ThreadLocal<SAXParser>();
     private SAXParser getSAXParser() throws ParseException {
+    	SAXParser parser = saxParser.get();
     	try {
-	    	if (saxParser==null) {
+	    	if (parser==null) {
 	    		SAXParserFactory spf = SAXParserFactory.newInstance();
 	    		spf.setValidating(false);
-	   			saxParser = spf.newSAXParser();
+	    		parser = spf.newSAXParser();
+	    		saxParser.set(parser);
 	    	}
 		} catch (Exception e) {
 			log.error("SAX parser error", e);
 			throw new ParseException("SAX parser error", e);
 		}
-		return saxParser;
+		return parser;
     }
     /**
      * Get just the canonical text of one or more book entries without any
@@ -280,8 +513,10 @@ public class SwordContentFacade {
     	try {
     		if (book != null) {
 		        Key key = book.getKey(reference);
-		        BookData data = new BookData(book, key);
-		        plainText = OSISUtil.getCanonicalText(data.getOsisFragment());
+		        synchronized(book) {
+			        BookData data = new BookData(book, key);
+			        plainText = OSISUtil.getCanonicalText(data.getOsisFragment());
+		        }
     		}
     	} catch (Exception e) {
     		Log.e(TAG, "Error getting plain text", e);
@@ -289,6 +524,56 @@ public class SwordContentFacade {
     	return plainText;
     }
 
+    /**
+     * Get the canonical text of many keys e.g. for a list of search results.
+     * The verses of OSIS zText Bibles are all read in one go so each block is uncompressed at most once and the book is
+     * locked only once.
+     * 
+     * @return the text of each key
+     */
+    public Map<Key, String> getCanonicalTexts(Book book, List<Key> keys) {
+    	Map<Key, String> texts = new HashMap<Key, String>();
+    	if (keys.isEmpty()) {
+    		return texts;
+    	}
+
+    	Passage verses = null;
+    	if (keys.get(0) instanceof Verse && isOsisZText(book)) {
+    		verses = (Passage)PassageKeyFactory.instance().createEmptyKeyList();
+    		for (Key key : keys) {
+    			verses.add(key);
+    		}
+    	}
+
+    	if (verses!=null && isFastParseOkay(book, verses)) {
+    		try {
+	    		OsisToCanonicalVerseTextSaxHandler osisToVerseText = new OsisToCanonicalVerseTextSaxHandler();
+	    		getSAXParser().parse(new OSISInputStream(book, verses), osisToVerseText);
+	    		Map<String, String> verseTexts = osisToVerseText.getVerseTexts();
+	    		for (Key key : keys) {
+	    			String text = verseTexts.get(((Verse)key).getOsisID());
+	    			texts.put(key, text!=null ? text : "");
+	    		}
+	    		return texts;
+    		} catch (Exception e) {
+    			log.error("Error parsing verses, trying one at a time", e);
+    		}
+    	}
+
+    	// fall back to parsing each key with JSword
+    	for (Key key : keys) {
+    		try {
+    			synchronized(book) {
+    				texts.put(key, OSISUtil.getCanonicalText(new BookData(book, key).getOsisFragment()));
+    			}
+    		} catch (Exception e) {
+    			Log.e(TAG, "Error getting plain text", e);
+    			texts.put(key, "");
+    		}
+    	}
+    	return texts;
+    }
+
 	public Key search(Book bible, String searchText) throws BookException {
 // 		  example of fetching Strongs ref - only works with downloaded indexes!
 //        Book book = getDocumentByInitials("KJV");
@@ -297,6 +582,18 @@ public class SwordContentFacade {
 
 		Log.d(TAG,	"Searching:"+bible+" Search term:" + searchText);
 		
+		// plain Lucene queries use the book's open searcher, queries with JSword ranges or blur use JSword
+		PdaIndexSearcherManager searcherManager = PdaIndexSearcherManager.getInstance();
+		if (searcherManager.isSupported(bible, searchText)) {
+			try {
+				Key key = searcherManager.find(bible, searchText);
+				Log.d(TAG, searcherManager.getLatencyMetrics());
+				return key;
+			} catch (BookException e) {
+				log.error("Error searching index directly, using JSword", e);
+			}
+		}
+
 		// This does a standard operator search. See the search
 		// documentation for more examples of how to search
 		Key key = bible.find(searchText); //$NON-NLS-1$
@@ -307,7 +604,62 @@ public class SwordContentFacade {
 
 	}
 
-	private OsisToHtmlSaxHandler getSaxHandler(Book book, Key key) {
+	/** can a search be run by searchBibleIndex so that it can be cancelled
+	 */
+	public boolean isCancellableSearchSupported(Book bible, String searchText) {
+		return PdaIndexSearcherManager.getInstance().isSupported(bible, searchText);
+	}
+
+	/** search a Bible's open index in a way that can be abandoned e.g. when the user has typed more search text
+	 * Only for searches where isCancellableSearchSupported is true
+	 * 
+	 * @param isCancelled set by another thread to stop the search
+	 * @return the matching verses or null if the search was cancelled
+	 */
+	public VerseBitSet searchBibleIndex(Book bible, String searchText, AtomicBoolean isCancelled) throws BookException {
+		Log.d(TAG,	"Searching index:"+bible+" Search term:" + searchText);
+		return PdaIndexSearcherManager.getInstance().find(bible, searchText, isCancelled);
+	}
+
+	/** find all verses containing a Strong's number without a Lucene query
+	 * 
+	 * @param strongsNumber e.g. g746 or h07225
+	 * @return the verses or null if the Bible's Strong's occurrence index has not been created
+	 */
+	public Key findStrongsOccurrences(Book bible, String strongsNumber) {
+		StrongsOccurrenceIndex occurrenceIndex = getStrongsOccurrenceIndex(bible);
+		if (occurrenceIndex==null) {
+			return null;
+		}
+		Key key = occurrenceIndex.getOccurrences(strongsNumber);
+		Log.d(TAG, "There are "+key.getCardinality()+" verses containing Strong's number " + strongsNumber);
+		return key;
+	}
+
+	/** the number of verses containing a Strong's number e.g. to show in the dictionary view
+	 * 
+	 * @return the count or -1 if the Bible's Strong's occurrence index has not been created
+	 */
+	public int getStrongsOccurrenceCount(Book bible, String strongsNumber) {
+		StrongsOccurrenceIndex occurrenceIndex = getStrongsOccurrenceIndex(bible);
+		return occurrenceIndex!=null ? occurrenceIndex.getCount(strongsNumber) : -1;
+	}
+
+	/** get the precomputed Strong's occurrences of a Bible
+	 * If the Bible was indexed without them e.g. because the index was downloaded then they are created in the background
+	 */
+	public StrongsOccurrenceIndex getStrongsOccurrenceIndex(Book bible) {
+		if (!bible.hasFeature(FeatureType.STRONGS_NUMBERS)) {
+			return null;
+		}
+		StrongsOccurrenceIndex occurrenceIndex = indexManager.getStrongsOccurrenceIndex(bible);
+		if (occurrenceIndex==null && bible.getIndexStatus().equals(IndexStatus.DONE)) {
+			indexManager.scheduleStrongsOccurrenceIndexCreation(bible);
+		}
+		return occurrenceIndex;
+	}
+
+	private OsisToHtmlParameters getOsisToHtmlParameters(Book book, Key key) {
 		OsisToHtmlParameters osisToHtmlParameters = new OsisToHtmlParameters();
 		BookMetaData bmd = book.getBookMetaData();
 		osisToHtmlParameters.setLeftToRight(bmd.isLeftToRight());
@@ -336,8 +688,6 @@ public class SwordContentFacade {
 					osisToHtmlParameters.setShowBookmarks(preferences.getBoolean("show_bookmarks_pref", true));
 					osisToHtmlParameters.setShowTitles(preferences.getBoolean("section_title_pref", true));
 					osisToHtmlParameters.setRedLetter(preferences.getBoolean("red_letter_pref", false));
-					osisToHtmlParameters.setKeysWithNotes(ControlFactory.getInstance().getMyNoteControl().getKeysWithNotesInPassage(key));
-					osisToHtmlParameters.setKeysWithBookmarks(ControlFactory.getInstance().getBookmarkControl().getKeysWithBookmarksInPassage(key));
 
 					// showMorphology depends on showStrongs to allow the toolbar toggle button to affect both strongs and morphology
 					boolean showStrongs = preferences.getBoolean("show_strongs_pref", true);
@@ -369,9 +719,20 @@ public class SwordContentFacade {
 				osisToHtmlParameters.setFont(FontControl.getInstance().getFontForBook(book));				
 			}
 		}
-		OsisToHtmlSaxHandler osisToHtml = new OsisToHtmlSaxHandler(osisToHtmlParameters);
-		
-		return osisToHtml;
+		return osisToHtmlParameters;
+	}
+	
+	/** add bookmark and note indicators to bible pages if required
+	 */
+	private void addPassageMarks(OsisToHtmlParameters osisToHtmlParameters, Book book, Key key) {
+		if (isAndroid && BookCategory.BIBLE.equals(book.getBookCategory())) {
+			if (osisToHtmlParameters.isShowMyNotes()) {
+				osisToHtmlParameters.setVersesWithNotes(ControlFactory.getInstance().getMyNoteControl().getVersesWithNotes(key));
+			}
+			if (osisToHtmlParameters.isShowBookmarks()) {
+				osisToHtmlParameters.setVersesWithBookmarks(ControlFactory.getInstance().getBookmarkControl().getVersesWithBookmarks(key));
+			}
+		}
 	}
 	
 	public static void setAndroid(boolean isAndroid) {
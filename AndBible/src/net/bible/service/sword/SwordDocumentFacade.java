@@ -1,9 +1,12 @@
 package net.bible.service.sword;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.bible.android.SharedConstants;
 import net.bible.service.common.CommonUtils;
@@ -14,6 +17,7 @@ import net.bible.service.download.DownloadManager;
 import net.bible.service.download.XiphosRepo;
 
 import org.crosswire.common.util.CWProject;
+import org.crosswire.common.util.NetUtil;
 import org.crosswire.common.util.Version;
 import org.crosswire.common.util.WebResource;
 import org.crosswire.jsword.book.Book;
@@ -29,6 +33,7 @@ import org.crosswire.jsword.book.sword.SwordConstants;
 import org.crosswire.jsword.index.IndexManager;
 import org.crosswire.jsword.index.IndexManagerFactory;
 import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.lucene.PdaIndexSearcherManager;
 import org.crosswire.jsword.index.lucene.PdaLuceneIndexManager;
 
 /** JSword facade
@@ -42,12 +47,20 @@ public class SwordDocumentFacade {
 
 	private static final String LUCENE_DIR = "lucene";
 	
+	private static final String KEY_CATALOGUE_DIR = "keys";
+	
+	// open dictionary key catalogues keyed by book initials and version
+	private Map<String, KeyCatalogue> keyCatalogues = new HashMap<String, KeyCatalogue>();
+	
 	private static final String CROSSWIRE_REPOSITORY = "CrossWire";
 	
 	private static BookFilter SUPPORTED_DOCUMENT_TYPES = new AcceptableBookTypeFilter();
 
 	private static boolean isSwordLoaded;
 	
+	// check new documents for chapters which need the fault tolerant parser
+	private DocumentValidator documentValidator = new DocumentValidator();
+	
 	// set to false for testing
 	public static boolean isAndroid = true; //CommonUtils.isAndroid();
 	
@@ -158,7 +171,8 @@ public class SwordDocumentFacade {
 		List<Book> bibles = getBibles();
 		for (Book book : bibles) {
 			if (book.hasFeature(FeatureType.STRONGS_NUMBERS)) {
-				if (book.getIndexStatus().equals(IndexStatus.DONE)) {
+				if (book.getIndexStatus().equals(IndexStatus.DONE) ||
+					SwordContentFacade.getInstance().getStrongsOccurrenceIndex(book)!=null) {
 					return book;
 				}
 			}
@@ -202,6 +216,7 @@ public class SwordDocumentFacade {
 		if (repo==null) {
 			repo = CROSSWIRE_REPOSITORY;
 		}
+		documentValidator.addHandler(document);
 		downloadManager.installBook(repo, document);
 	}
 
@@ -223,6 +238,7 @@ public class SwordDocumentFacade {
 	public void deleteDocument(Book document) throws BookException {
 		// delete index first if it exists but wrap in try to ensure an attempt is made to delete the document
 		try {
+			PdaIndexSearcherManager.getInstance().close(document);
 	        IndexManager imanager = IndexManagerFactory.getIndexManager();
 	        if (imanager.isIndexed(document)) {
 	            imanager.deleteIndex(document);
@@ -233,9 +249,13 @@ public class SwordDocumentFacade {
 		}
 
         document.getDriver().delete(document);
+        
+        SwordContentFacade.getInstance().clearCachedDocument(document);
+        deleteKeyCatalogue(document);
 	}
 	
 	public void deleteDocumentIndex(Book document) throws BookException {
+		PdaIndexSearcherManager.getInstance().close(document);
         IndexManager imanager = IndexManagerFactory.getIndexManager();
         if (imanager.isIndexed(document)) {
             imanager.deleteIndex(document);
@@ -243,8 +263,66 @@ public class SwordDocumentFacade {
 	}
 	
 
+	/** get the memory mapped catalogue of a dictionary's keys, creating it if this version of the dictionary does not have one
+	 * Creating a catalogue reads every key so the first call for each dictionary is slow
+	 * 
+	 * @return the catalogue or null if the book is not a dictionary or the catalogue could not be created
+	 */
+	public KeyCatalogue getKeyCatalogue(Book book) {
+		// genbook keys are TreeKeys which cannot be recreated from their name
+		BookCategory bookCategory = book.getBookCategory();
+		if (!BookCategory.DICTIONARY.equals(bookCategory) && !BookCategory.GLOSSARY.equals(bookCategory) && !BookCategory.DAILY_DEVOTIONS.equals(bookCategory)) {
+			return null;
+		}
+
+		String stamp = getKeyCatalogueStamp(book);
+		synchronized (keyCatalogues) {
+			KeyCatalogue keyCatalogue = keyCatalogues.get(stamp);
+			if (keyCatalogue==null) {
+				try {
+					File file = getKeyCatalogueFile(book);
+					keyCatalogue = KeyCatalogue.load(file, stamp);
+					if (keyCatalogue==null) {
+						KeyCatalogue.create(book, file, stamp);
+						keyCatalogue = KeyCatalogue.load(file, stamp);
+					}
+				} catch (IOException e) {
+					log.error("Error opening key catalogue for "+book.getInitials(), e);
+					keyCatalogue = null;
+				}
+				if (keyCatalogue!=null) {
+					keyCatalogues.put(stamp, keyCatalogue);
+				}
+			}
+			return keyCatalogue;
+		}
+	}
+
+	private void deleteKeyCatalogue(Book book) {
+		synchronized (keyCatalogues) {
+			keyCatalogues.remove(getKeyCatalogueStamp(book));
+			try {
+				getKeyCatalogueFile(book).delete();
+			} catch (IOException e) {
+				log.error("Error deleting key catalogue", e);
+			}
+		}
+	}
+
+	private File getKeyCatalogueFile(Book book) throws IOException {
+		File dir = NetUtil.getAsFile(CWProject.instance().getWriteableProjectSubdir(KEY_CATALOGUE_DIR, true));
+		return new File(dir, book.getInitials()+KeyCatalogue.FILE_EXT);
+	}
+
+	/** identify the version of a book so its catalogue is recreated if the book is upgraded
+	 */
+	private String getKeyCatalogueStamp(Book book) {
+		return book.getInitials()+" "+book.getBookMetaData().getProperty("Version");
+	}
+
 	/** this custom index creation has been optimised for slow, low memory devices
 	 * If an index is in progress then nothing will happen
+	 * If index creation was interrupted e.g. because the app was killed then it continues from the last checkpoint
 	 * 
 	 * @param book
 	 * @throws BookException
@@ -256,6 +334,9 @@ public class SwordDocumentFacade {
 		if (!book.getIndexStatus().equals(IndexStatus.CREATING) && !book.getIndexStatus().equals(IndexStatus.SCHEDULED)) {
 
 			PdaLuceneIndexManager lim = new PdaLuceneIndexManager();
+			if (lim.isIndexCreationResumable(book)) {
+				log.info("Resuming index creation for "+book.getInitials());
+			}
 	        lim.scheduleIndexCreation(book);
 		}
 	}
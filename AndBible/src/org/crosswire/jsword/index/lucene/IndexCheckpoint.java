@@ -0,0 +1,228 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import net.bible.service.common.Logger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.crosswire.jsword.passage.Key;
+
+/**
+ * Record which partitions of a book have been committed to a partly created
+ * index so index creation can resume after the app is killed instead of
+ * starting again from the beginning.
+ * 
+ * The completed partitions are stored in the commit user data of each index
+ * so they are committed atomically with the index entries and a partition can
+ * never be indexed twice.  The checkpoint file only identifies the book and
+ * version being indexed.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class IndexCheckpoint {
+
+    /**
+     * @param file where the checkpoint is saved
+     * @param stamp identifies the book and version being indexed so a checkpoint for a different version is ignored
+     */
+    public IndexCheckpoint(File file, String stamp) {
+        this.file = file;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Save the checkpoint before anything is committed to a new index
+     */
+    public synchronized void start() throws IOException {
+        completedPartitions.clear();
+        isMerged = false;
+        save();
+    }
+
+    /**
+     * Read a previously saved checkpoint and the partitions committed to the
+     * index and to any partition indexes
+     * 
+     * @return true if there is a checkpoint for the same book and version
+     */
+    public synchronized boolean load(File indexPath, File partitionsPath) {
+        completedPartitions.clear();
+        isMerged = false;
+        if (!file.exists()) {
+            return false;
+        }
+
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            Properties properties = new Properties();
+            properties.load(in);
+            if (!stamp.equals(properties.getProperty(PROPERTY_STAMP))) {
+                logger.info("Ignoring checkpoint for a different version");
+                return false;
+            }
+
+            loadCommitUserData(indexPath);
+            File[] partitionPaths = partitionsPath.listFiles();
+            if (partitionPaths != null) {
+                for (File partitionPath : partitionPaths) {
+                    loadCommitUserData(partitionPath);
+                }
+            }
+            logger.info("Loaded checkpoint with "+completedPartitions.size()+" completed partitions");
+            return true;
+        } catch (Exception e) {
+            logger.error("Error reading index checkpoint", e);
+            completedPartitions.clear();
+            isMerged = false;
+            return false;
+        } finally {
+            close(in);
+        }
+    }
+
+    public synchronized boolean isCompleted(Key partition) {
+        return completedPartitions.contains(partition.getOsisRef());
+    }
+
+    /**
+     * The user data to commit with an index containing partitionsInIndex.
+     * Each commit replaces the previous user data so all the partitions in
+     * the index must be passed, not just those added since the last commit.
+     */
+    public synchronized Map<String, String> getCommitUserData(Collection<Key> partitionsInIndex) {
+        Set<String> osisRefs = new HashSet<String>();
+        for (Key partition : partitionsInIndex) {
+            osisRefs.add(partition.getOsisRef());
+        }
+        completedPartitions.addAll(osisRefs);
+
+        Map<String, String> userData = new HashMap<String, String>();
+        userData.put(PROPERTY_COMPLETED, StringUtils.join(osisRefs.iterator(), SEPARATOR));
+        return userData;
+    }
+
+    /**
+     * The user data to commit with the index once the partition indexes have
+     * been merged into it so they are not merged again
+     */
+    public synchronized Map<String, String> getMergedCommitUserData() {
+        isMerged = true;
+        Map<String, String> userData = new HashMap<String, String>();
+        userData.put(PROPERTY_COMPLETED, StringUtils.join(completedPartitions.iterator(), SEPARATOR));
+        userData.put(PROPERTY_MERGED, Boolean.TRUE.toString());
+        return userData;
+    }
+
+    public synchronized boolean isMerged() {
+        return isMerged;
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    private void loadCommitUserData(File indexPath) throws IOException {
+        if (!indexPath.exists()) {
+            return;
+        }
+        Directory directory = FSDirectory.open(indexPath);
+        try {
+            if (IndexReader.indexExists(directory)) {
+                Map<String, String> userData = IndexReader.getCommitUserData(directory);
+                String completed = userData.get(PROPERTY_COMPLETED);
+                if (completed != null) {
+                    for (String osisRef : StringUtils.split(completed, SEPARATOR)) {
+                        completedPartitions.add(osisRef);
+                    }
+                }
+                isMerged |= Boolean.parseBoolean(userData.get(PROPERTY_MERGED));
+            }
+        } finally {
+            directory.close();
+        }
+    }
+
+    private void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(PROPERTY_STAMP, stamp);
+
+        // write to a temporary file so a partly written checkpoint is never loaded
+        File tempFile = new File(file.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+        try {
+            properties.store(out, "Index creation checkpoint");
+        } finally {
+            close(out);
+        }
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not save checkpoint "+file);
+            }
+        }
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                logger.warn("Error closing checkpoint file", e);
+            }
+        }
+    }
+
+    private static final String PROPERTY_STAMP = "stamp";
+    private static final String PROPERTY_COMPLETED = "completed";
+    private static final String PROPERTY_MERGED = "merged";
+    private static final String SEPARATOR = ",";
+
+    private File file;
+
+    private String stamp;
+
+    private Set<String> completedPartitions = new HashSet<String>();
+
+    private boolean isMerged;
+
+    private static final Logger logger = new Logger("IndexCheckpoint");
+}
@@ -0,0 +1,187 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.bible.service.common.Logger;
+
+/**
+ * Size the Lucene RAM buffer from the available heap and flush buffered
+ * documents when memory runs low instead of forcing garbage collections. Also
+ * collects indexing statistics.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class IndexMemoryPolicy {
+
+    /**
+     * @param numWriters the number of IndexWriters which will buffer documents at the same time
+     */
+    public IndexMemoryPolicy(int numWriters) {
+        Runtime runtime = Runtime.getRuntime();
+        double heapMB = runtime.maxMemory() / BYTES_PER_MB;
+        ramBufferSizeMB = Math.max(MIN_RAM_BUFFER_SIZE_MB, Math.min(MAX_RAM_BUFFER_SIZE_MB, heapMB * HEAP_FRACTION_FOR_BUFFERS / numWriters));
+        // leave room for the buffers of all writers and the documents being read
+        lowMemoryBytes = (long) Math.max(runtime.maxMemory() * LOW_MEMORY_HEAP_FRACTION, 2 * ramBufferSizeMB * numWriters * BYTES_PER_MB);
+
+        startGcMillis = getGcMillis();
+        startGcCount = getGcCount();
+        logger.info("Heap MB:" + heapMB + " RAM buffer MB:" + ramBufferSizeMB + " for " + numWriters + " writers");
+    }
+
+    public double getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * Called after each document is added. Flushes the writer's buffered
+     * documents to disk if the heap is nearly full.
+     */
+    public void documentAdded(PdaIndexWriter writer) throws IOException {
+        int count = docsIndexed.incrementAndGet();
+        if (count % MEMORY_CHECK_INTERVAL == 0 && isMemoryLow()) {
+            memoryFlushes.incrementAndGet();
+            writer.flushRamBuffer();
+        }
+    }
+
+    private boolean isMemoryLow() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return runtime.maxMemory() - used < lowMemoryBytes;
+    }
+
+    /**
+     * Called by writers whenever a segment is written
+     */
+    public void segmentFlushed() {
+        segmentsFlushed.incrementAndGet();
+    }
+
+    public int getDocsPerSecond() {
+        long elapsed = System.currentTimeMillis() - startMillis;
+        return elapsed > 0 ? (int) (docsIndexed.get() * 1000L / elapsed) : 0;
+    }
+
+    /**
+     * A short summary of indexing so far for the progress job e.g. "56/s, 3 flushes, 120ms GC"
+     */
+    public String getProgressStatistics() {
+        StringBuilder stats = new StringBuilder();
+        stats.append(getDocsPerSecond()).append("/s, ").append(segmentsFlushed.get()).append(" flushes");
+        long gcMillis = getGcMillis();
+        int gcCount = getGcCount();
+        if (gcMillis >= 0 && startGcMillis >= 0) {
+            stats.append(", ").append(gcMillis - startGcMillis).append("ms GC");
+        } else if (gcCount >= 0 && startGcCount >= 0) {
+            // GC time is not available on Android
+            stats.append(", ").append(gcCount - startGcCount).append(" GCs");
+        }
+        return stats.toString();
+    }
+
+    /**
+     * A summary of indexing so far for logging
+     */
+    public String getStatistics() {
+        StringBuilder stats = new StringBuilder();
+        stats.append(docsIndexed.get()).append(" docs, ").append(getDocsPerSecond()).append(" docs/s, ");
+        stats.append(segmentsFlushed.get()).append(" segments flushed (").append(memoryFlushes.get()).append(" for low memory)");
+        long gcMillis = getGcMillis();
+        if (gcMillis >= 0 && startGcMillis >= 0) {
+            stats.append(", ").append(gcMillis - startGcMillis).append(" ms in GC");
+        }
+        int gcCount = getGcCount();
+        if (gcCount >= 0 && startGcCount >= 0) {
+            stats.append(", ").append(gcCount - startGcCount).append(" GCs");
+        }
+        return stats.toString();
+    }
+
+    /**
+     * Total time spent in garbage collection or -1 if not available. The
+     * management classes are not available on Android so are accessed by
+     * reflection.
+     */
+    private static long getGcMillis() {
+        try {
+            Class<?> managementFactory = Class.forName("java.lang.management.ManagementFactory");
+            List<?> gcBeans = (List<?>) managementFactory.getMethod("getGarbageCollectorMXBeans").invoke(null);
+            long total = 0;
+            for (Object gcBean : gcBeans) {
+                Method getCollectionTime = Class.forName("java.lang.management.GarbageCollectorMXBean").getMethod("getCollectionTime");
+                total += ((Long) getCollectionTime.invoke(gcBean)).longValue();
+            }
+            return total;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Number of garbage collections on Android or -1 if not available
+     */
+    private static int getGcCount() {
+        try {
+            Class<?> debug = Class.forName("android.os.Debug");
+            return ((Integer) debug.getMethod("getGlobalGcInvocationCount").invoke(null)).intValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    /** the previous fixed buffer size is the minimum */
+    private static final double MIN_RAM_BUFFER_SIZE_MB = 1;
+
+    /** larger buffers give little further speed up */
+    private static final double MAX_RAM_BUFFER_SIZE_MB = 16;
+
+    private static final double HEAP_FRACTION_FOR_BUFFERS = 1.0 / 16;
+
+    private static final double LOW_MEMORY_HEAP_FRACTION = 1.0 / 8;
+
+    private static final int MEMORY_CHECK_INTERVAL = 50;
+
+    private double ramBufferSizeMB;
+
+    private long lowMemoryBytes;
+
+    private AtomicInteger docsIndexed = new AtomicInteger();
+
+    private AtomicInteger segmentsFlushed = new AtomicInteger();
+
+    private AtomicInteger memoryFlushes = new AtomicInteger();
+
+    private long startMillis = System.currentTimeMillis();
+
+    private long startGcMillis;
+
+    private int startGcCount;
+
+    private static final Logger logger = new Logger("IndexMemoryPolicy");
+}
@@ -0,0 +1,449 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import net.bible.service.common.Logger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.crosswire.common.util.NetUtil;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookCategory;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.lucene.analysis.LuceneAnalyzer;
+import org.crosswire.jsword.passage.NoSuchVerseException;
+import org.crosswire.jsword.passage.VerseBitSet;
+import org.crosswire.jsword.passage.VerseFactory;
+
+/**
+ * Keep a warmed IndexSearcher open for each indexed Bible so that queries do
+ * not wait for the index to be opened, and collect hits straight into a verse
+ * ordinal bitmap using a table of the verse ordinal of each Lucene document.
+ * Searchers are closed when memory is low and reopened when the index changes.
+ * Query latency is recorded and queries can be cancelled while hits are being
+ * collected e.g. when search-as-you-type supersedes them.
+ * 
+ * Searchers are opened under a lock for just that book and published once
+ * they are warmed so queries on other books, or on an already open searcher,
+ * never wait for a searcher to be opened.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class PdaIndexSearcherManager {
+
+    public static PdaIndexSearcherManager getInstance() {
+        return singleton;
+    }
+
+    private PdaIndexSearcherManager() {
+    }
+
+    /**
+     * Can the query be run directly against the Lucene index. Queries with
+     * JSword verse ranges or blur need JSword's query parser.
+     */
+    public boolean isSupported(Book book, String query) {
+        return BookCategory.BIBLE.equals(book.getBookCategory()) && IndexStatus.DONE.equals(book.getIndexStatus()) && query.trim().length() > 0
+                && !JSWORD_ONLY_SYNTAX.matcher(query).find();
+    }
+
+    /**
+     * Run a Lucene query
+     * 
+     * @return the verses which match
+     */
+    public VerseBitSet find(Book book, String query) throws BookException {
+        return find(book, query, null);
+    }
+
+    /**
+     * Run a Lucene query which stops collecting hits as soon as isCancelled is
+     * set
+     * 
+     * @param isCancelled
+     *            set by another thread to abandon the query, or null if the
+     *            query cannot be cancelled
+     * @return the verses which match or null if the query was cancelled
+     */
+    public VerseBitSet find(Book book, String query, final AtomicBoolean isCancelled) throws BookException {
+        // a query may have been superseded while waiting for the searcher
+        if (isCancelled != null && isCancelled.get()) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        final BookSearcher bookSearcher = acquireBookSearcher(book);
+        final VerseBitSet results = new VerseBitSet();
+        try {
+            QueryParser parser = new QueryParser(Version.LUCENE_29, PdaLuceneIndexCreator.FIELD_BODY, bookSearcher.analyzer);
+            parser.setAllowLeadingWildcard(true);
+            Query luceneQuery = parser.parse(query);
+
+            bookSearcher.searcher.search(luceneQuery, new Collector() {
+                @Override
+                public void setScorer(Scorer scorer) {
+                    // hits are not ranked
+                }
+
+                @Override
+                public void setNextReader(IndexReader reader, int docBase) {
+                    checkCancelled();
+                    this.docBase = docBase;
+                }
+
+                @Override
+                public void collect(int doc) {
+                    if (++numCollected % CANCEL_CHECK_INTERVAL == 0) {
+                        checkCancelled();
+                    }
+                    int ordinal = bookSearcher.docOrdinals[docBase + doc];
+                    if (ordinal > 0) {
+                        results.addOrdinal(ordinal);
+                    }
+                }
+
+                @Override
+                public boolean acceptsDocsOutOfOrder() {
+                    return true;
+                }
+
+                private void checkCancelled() {
+                    if (isCancelled != null && isCancelled.get()) {
+                        throw new QueryCancelledException();
+                    }
+                }
+
+                private int docBase;
+
+                private int numCollected;
+            });
+        } catch (QueryCancelledException e) {
+            logger.debug("Query '" + query + "' cancelled after " + (System.currentTimeMillis() - start) + "ms");
+            return null;
+        } catch (ParseException e) {
+            throw new BookException("Search failed.", e);
+        } catch (IOException e) {
+            throw new BookException("Search failed.", e);
+        } finally {
+            bookSearcher.release();
+        }
+
+        long millis = System.currentTimeMillis() - start;
+        recordQueryTime(millis);
+        logger.debug("Query '" + query + "' found " + results.countVerses() + " verses in " + millis + "ms");
+        return results;
+    }
+
+    /**
+     * Open the book's searcher now so the first query is fast
+     */
+    public void warm(Book book) {
+        try {
+            acquireBookSearcher(book).release();
+        } catch (BookException e) {
+            logger.error("Error warming searcher for " + book.getInitials(), e);
+        }
+    }
+
+    /**
+     * Warm at normal priority because a query on the book waits for the
+     * searcher being opened
+     */
+    public void warmInBackground(final Book book) {
+        warmExecutor.execute(new Runnable() {
+            public void run() {
+                warm(book);
+            }
+        });
+    }
+
+    /**
+     * Close a book's searcher e.g. because its index is being replaced or
+     * deleted. Queries already using the searcher finish first.
+     */
+    public void close(Book book) {
+        String initials = book.getInitials();
+        synchronized (getBookLock(initials)) {
+            BookSearcher bookSearcher = bookSearchers.remove(initials);
+            if (bookSearcher != null) {
+                bookSearcher.close();
+            }
+        }
+    }
+
+    /**
+     * Release all searchers e.g. when memory is low
+     */
+    public void closeAll() {
+        for (String initials : bookSearchers.keySet()) {
+            synchronized (getBookLock(initials)) {
+                BookSearcher bookSearcher = bookSearchers.remove(initials);
+                if (bookSearcher != null) {
+                    bookSearcher.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the term dictionary is read when a searcher is opened
+     */
+    public void setPreloadTerms(boolean isPreloadTerms) {
+        this.isPreloadTerms = isPreloadTerms;
+    }
+
+    public synchronized int getQueryCount() {
+        return queryCount;
+    }
+
+    public synchronized long getLastQueryMillis() {
+        return lastQueryMillis;
+    }
+
+    public synchronized long getMaxQueryMillis() {
+        return maxQueryMillis;
+    }
+
+    public synchronized long getAverageQueryMillis() {
+        return queryCount > 0 ? totalQueryMillis / queryCount : 0;
+    }
+
+    /**
+     * A summary of query latency for logging
+     */
+    public synchronized String getLatencyMetrics() {
+        return "Queries:" + queryCount + " last:" + lastQueryMillis + "ms average:" + getAverageQueryMillis() + "ms max:" + maxQueryMillis + "ms";
+    }
+
+    private synchronized void recordQueryTime(long millis) {
+        lastQueryMillis = millis;
+        totalQueryMillis += millis;
+        maxQueryMillis = Math.max(maxQueryMillis, millis);
+        queryCount++;
+    }
+
+    /**
+     * Get an open searcher for the book, opening it if necessary or if the
+     * index has changed since it was opened. The searcher must be released
+     * after use.
+     */
+    private BookSearcher acquireBookSearcher(Book book) throws BookException {
+        String initials = book.getInitials();
+        try {
+            // usually the searcher is open and current so no lock is needed
+            BookSearcher bookSearcher = bookSearchers.get(initials);
+            if (bookSearcher != null && bookSearcher.acquire()) {
+                boolean isCurrent = false;
+                try {
+                    isCurrent = bookSearcher.searcher.getIndexReader().isCurrent();
+                } finally {
+                    if (!isCurrent) {
+                        bookSearcher.release();
+                    }
+                }
+                if (isCurrent) {
+                    return bookSearcher;
+                }
+            }
+
+            // only queries on this book wait while its searcher is opened
+            synchronized (getBookLock(initials)) {
+                bookSearcher = bookSearchers.get(initials);
+                if (bookSearcher != null && !bookSearcher.searcher.getIndexReader().isCurrent()) {
+                    logger.info("Index changed, reopening searcher for " + initials);
+                    bookSearchers.remove(initials);
+                    bookSearcher.close();
+                    bookSearcher = null;
+                }
+                if (bookSearcher == null) {
+                    bookSearcher = open(book);
+                    bookSearchers.put(initials, bookSearcher);
+                }
+                // cannot have been closed because closing also needs the book lock
+                bookSearcher.acquire();
+                return bookSearcher;
+            }
+        } catch (IOException e) {
+            throw new BookException("Failed to initialize Lucene search engine.", e);
+        }
+    }
+
+    private Object getBookLock(String initials) {
+        Object lock = bookLocks.get(initials);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = bookLocks.putIfAbsent(initials, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private BookSearcher open(Book book) throws IOException {
+        long start = System.currentTimeMillis();
+        File indexDir = NetUtil.getAsFile(indexManager.getStorageArea(book));
+        IndexSearcher searcher = new IndexSearcher(FSDirectory.open(indexDir), true);
+        IndexReader reader = searcher.getIndexReader();
+
+        // each document's key field is parsed once here instead of for every hit
+        int[] docOrdinals = new int[reader.maxDoc()];
+        String[] docKeys = FieldCache.DEFAULT.getStrings(reader, PdaLuceneIndexCreator.FIELD_KEY);
+        for (int doc = 0; doc < docKeys.length; doc++) {
+            if (docKeys[doc] != null) {
+                try {
+                    docOrdinals[doc] = VerseFactory.fromString(docKeys[doc]).getOrdinal();
+                } catch (NoSuchVerseException e) {
+                    logger.warn("Unexpected key in index:" + docKeys[doc]);
+                }
+            }
+        }
+        FieldCache.DEFAULT.purge(reader);
+
+        if (isPreloadTerms) {
+            // read through the term dictionary so the first query does not wait for the disk
+            TermEnum terms = reader.terms();
+            try {
+                while (terms.next()) {
+                    // just load the terms
+                }
+            } finally {
+                terms.close();
+            }
+        }
+
+        logger.info("Opened searcher for " + book.getInitials() + " with " + reader.maxDoc() + " docs in " + (System.currentTimeMillis() - start) + "ms");
+        return new BookSearcher(searcher, docOrdinals, new LuceneAnalyzer(book));
+    }
+
+    private static class BookSearcher {
+        BookSearcher(IndexSearcher searcher, int[] docOrdinals, LuceneAnalyzer analyzer) {
+            this.searcher = searcher;
+            this.docOrdinals = docOrdinals;
+            this.analyzer = analyzer;
+        }
+
+        /**
+         * @return false if the searcher has been closed
+         */
+        synchronized boolean acquire() {
+            if (isClosed) {
+                return false;
+            }
+            numUsers++;
+            return true;
+        }
+
+        synchronized void release() {
+            numUsers--;
+            if (isClosed && numUsers == 0) {
+                closeSearcher();
+            }
+        }
+
+        /**
+         * Close the searcher once no queries are using it
+         */
+        synchronized void close() {
+            isClosed = true;
+            if (numUsers == 0) {
+                closeSearcher();
+            }
+        }
+
+        private void closeSearcher() {
+            try {
+                // also closes the reader because the searcher opened it
+                searcher.close();
+            } catch (IOException e) {
+                logger.error("Error closing searcher", e);
+            }
+        }
+
+        IndexSearcher searcher;
+
+        /** verse ordinal of each Lucene document */
+        int[] docOrdinals;
+
+        LuceneAnalyzer analyzer;
+
+        private int numUsers;
+
+        private boolean isClosed;
+    }
+
+    /**
+     * Thrown by the collector to stop Lucene scoring any more documents
+     */
+    private static class QueryCancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** JSword verse ranges like [Gen-Mal] and blur like ~2 */
+    private static final Pattern JSWORD_ONLY_SYNTAX = Pattern.compile("\\[|(^|\\s)~\\d");
+
+    /** hits collected between checks for cancellation */
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private ConcurrentMap<String, BookSearcher> bookSearchers = new ConcurrentHashMap<String, BookSearcher>();
+
+    /** searchers are opened and closed under a lock for each book */
+    private ConcurrentMap<String, Object> bookLocks = new ConcurrentHashMap<String, Object>();
+
+    /** warms searchers one at a time in the background */
+    private ExecutorService warmExecutor = Executors.newSingleThreadExecutor();
+
+    private PdaLuceneIndexManager indexManager = new PdaLuceneIndexManager();
+
+    private volatile boolean isPreloadTerms = true;
+
+    private int queryCount;
+
+    private long lastQueryMillis;
+
+    private long totalQueryMillis;
+
+    private long maxQueryMillis;
+
+    private static PdaIndexSearcherManager singleton = new PdaIndexSearcherManager();
+
+    private static final Logger logger = new Logger("PdaIndexSearcherManager");
+}
@@ -0,0 +1,59 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+
+/**
+ * An IndexWriter whose RAM buffer can be flushed when memory is low and which
+ * reports each flushed segment to the indexing memory policy.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class PdaIndexWriter extends IndexWriter {
+
+    public PdaIndexWriter(Directory directory, Analyzer analyzer, boolean create, IndexMemoryPolicy memoryPolicy) throws IOException {
+        super(directory, analyzer, create, IndexWriter.MaxFieldLength.UNLIMITED);
+        this.memoryPolicy = memoryPolicy;
+        setRAMBufferSizeMB(memoryPolicy.getRamBufferSizeMB());
+    }
+
+    /**
+     * Write buffered documents to a new segment without committing
+     */
+    public void flushRamBuffer() throws IOException {
+        if (numRamDocs() > 0) {
+            flush(true, false, false);
+        }
+    }
+
+    @Override
+    protected void doAfterFlush() throws IOException {
+        memoryPolicy.segmentFlushed();
+    }
+
+    private IndexMemoryPolicy memoryPolicy;
+}
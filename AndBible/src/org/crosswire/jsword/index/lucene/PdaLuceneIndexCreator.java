@@ -25,7 +25,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.bible.service.common.CommonUtils;
 import net.bible.service.common.Logger;
@@ -53,6 +63,10 @@ import org.crosswire.jsword.index.IndexStatus;
 import org.crosswire.jsword.index.lucene.analysis.LuceneAnalyzer;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.BibleInfo;
 import org.jdom.Element;
 
 /**
@@ -83,8 +97,18 @@ public class PdaLuceneIndexCreator {
      */
     public static final String FIELD_STRONG = "strong";
 
-    /** we are on a device with limited ram so don't use too much */
-    private static final int MAX_RAM_BUFFER_SIZE_MB = 1;
+    /** each thread has its own index writer and RAM buffer so limit the number of threads */
+    private static final int MAX_INDEX_THREADS = 4;
+    
+    /** Bibles are split into partitions which are indexed in parallel if there is more than one processor */
+    private static int numIndexThreads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_INDEX_THREADS);
+    
+    private static final String PARTITIONS_DIR_SUFFIX = ".partitions";
+    
+    private static final String CHECKPOINT_FILE_SUFFIX = ".checkpoint";
+    
+    /** commit the index and update the checkpoint after this many Bible books */
+    private static final int CHECKPOINT_INTERVAL = 5;
     
     private static final String TAG = "PdaLuceneIndexCreator";
     
@@ -121,6 +145,11 @@ public class PdaLuceneIndexCreator {
         IndexStatus finalStatus = IndexStatus.UNDONE;
         List<Key> errors = new ArrayList<Key>();
         File tempPath = new File(path + '.' + IndexStatus.CREATING.toString());
+        File partitionsPath = new File(path + PARTITIONS_DIR_SUFFIX);
+        IndexCheckpoint checkpoint = new IndexCheckpoint(new File(path + CHECKPOINT_FILE_SUFFIX), getBookStamp(book));
+        // committed Bible index data is kept so indexing can resume unless the user cancelled it
+        boolean isCheckpointed = false;
+        boolean isCancelled = false;
 
         try {
         	// this can throw an error if indexing is misconfigured so needs to be in the try/catch block
@@ -130,37 +159,81 @@ public class PdaLuceneIndexCreator {
 
                 book.setIndexStatus(IndexStatus.CREATING);
 
+                // Bibles are indexed in partitions, which are checkpointed, and by several writers at once, each with its own RAM buffer
+                boolean isBible = book.getBookCategory().equals(BookCategory.BIBLE);
+
+                // continue from where a previous attempt was stopped if possible
+                boolean isResuming = isBible && tempPath.exists() && checkpoint.load(tempPath, partitionsPath);
+                if (isResuming) {
+                	logger.info("Resuming index creation");
+                } else {
+                	checkpoint.delete();
+                	CommonUtils.deleteDirectory(tempPath);
+                	CommonUtils.deleteDirectory(partitionsPath);
+                	if (isBible) {
+                		checkpoint.start();
+                	}
+                }
+                isCheckpointed = isBible;
+
+                memoryPolicy = new IndexMemoryPolicy(isBible ? numIndexThreads : 1);
+
+                // collect Strong's number occurrences while the verses are being read, unless verses indexed before a restart would be missed
+                if (isBible && book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS) && !isResuming) {
+                	strongsBuilder = new StrongsOccurrenceIndex.Builder();
+                }
+
                // Create the index in core.
-                IndexWriter writer = null;
+                PdaIndexWriter writer = null;
                 try {
 	                Directory destination = FSDirectory.open(new File(tempPath.getCanonicalPath()));
-	                writer = new IndexWriter(destination, analyzer, true, IndexWriter.MaxFieldLength.UNLIMITED);
-	                writer.setRAMBufferSizeMB(MAX_RAM_BUFFER_SIZE_MB);
+	                if (isResuming && IndexWriter.isLocked(destination)) {
+	                	// the lock was left by the killed process, other indexing in this process is prevented by the CREATING lock
+	                	IndexWriter.unlock(destination);
+	                }
+	                writer = new PdaIndexWriter(destination, analyzer, !isResuming, memoryPolicy);
 	                logger.debug("Beginning indexing "+book.getName());
 	                try {
 	                	Key keyList = null;
-	                	if (book.getBookCategory().equals(BookCategory.BIBLE)) {
+	                	if (isBible) {
 	                		// this method is so much faster than getGlobalKeyList but not accurate e.g. some bibles are only NT
 	                		keyList = PassageKeyFactory.instance().getGlobalKeyList();
 	                	} else {
 	                		keyList = book.getGlobalKeyList();
 	                	}
-		                generateSearchIndexImpl(job, errors, writer, keyList, 0);
+	                	totalKeys = keyList.getCardinality();
+	                	logger.debug("Number of keys:"+totalKeys);
+	                	
+	                	if (isBible) {
+	                		if (numIndexThreads>1 || partitionsPath.exists()) {
+	                			generatePartitionedSearchIndex(job, errors, writer, getBiblePartitions(), partitionsPath, checkpoint);
+	                		} else {
+	                			generateCheckpointedSearchIndex(job, errors, writer, getBiblePartitions(), checkpoint);
+	                		}
+	                	} else {
+	                		generateSearchIndexImpl(job, errors, writer, keyList);
+	                	}
 	                } catch (Exception e) {
 	                	e.printStackTrace();
                         // TRANSLATOR: The search index could not be moved to it's final location.
                         throw new BookException(JSMsg.gettext("Installation failed."));
 	                }
-	                logger.info("Finished indexing "+book.getName()+" starting optimisation");
-	
-	                // TRANSLATOR: Progress label for optimizing a search index. This may take a bit of time, so we have a label for it.
-	                job.setSectionName(JSMsg.gettext("Optimizing"));
-	                // must be 1 more than 95 for the notification to be sent through to the listener
-	                job.setWork(96);
-	
-	                // Consolidate the index into the minimum number of files.
-	                // writer.optimize(); /* Optimize is done by addIndexes */
-	                writer.optimize();
+	                if (isStopped(job)) {
+	                	// a partly indexed partition must not be committed but earlier commits are kept so indexing can resume
+	                	logger.info("Indexing stopped "+book.getName());
+	                	writer.rollback();
+	                } else {
+		                logger.info("Finished indexing "+book.getName()+" "+memoryPolicy.getStatistics()+" starting optimisation");
+		
+		                // TRANSLATOR: Progress label for optimizing a search index. This may take a bit of time, so we have a label for it.
+		                job.setSectionName(JSMsg.gettext("Optimizing"));
+		                // must be 1 more than 95 for the notification to be sent through to the listener
+		                job.setWork(96);
+		
+		                // Consolidate the index into the minimum number of files.
+		                // writer.optimize(); /* Optimize is done by addIndexes */
+		                writer.optimize();
+	                }
                 } finally {
                 	// writer must be closed even on error to release the Lucene Lock
                 	if (writer!=null) {
@@ -169,16 +242,26 @@ public class PdaLuceneIndexCreator {
                 }
 
                 job.setCancelable(false);
-                if (!job.isFinished()) {
+                if (!isStopped(job)) {
                 	logger.debug("Renaming "+tempPath+" to "+finalPath);
                     if (!tempPath.renameTo(finalPath)) {
                         // TRANSLATOR: The search index could not be moved to it's final location.
                         throw new BookException(JSMsg.gettext("Installation failed."));
                     }
                 }
+                isCancelled = job.isFinished();
 
                 if (finalPath.exists()) {
                     finalStatus = IndexStatus.DONE;
+
+                    if (strongsBuilder!=null) {
+                    	try {
+                    		strongsBuilder.write(new File(path + StrongsOccurrenceIndex.FILE_SUFFIX), getBookStamp(book));
+                    	} catch (IOException e) {
+                    		// occurrences will be found using the Lucene index instead
+                    		logger.error("Error writing Strong's occurrence index", e);
+                    	}
+                    }
                 }
 
                 if (!errors.isEmpty()) {
@@ -193,22 +276,249 @@ public class PdaLuceneIndexCreator {
                 }
             }
         } catch (Exception ex) {
+            // the job is already finished if the user cancelled it
+            isCancelled = job.isFinished();
             job.cancel();
             // TRANSLATOR: Common error condition: Some error happened while creating a search index.
             throw new BookException(JSMsg.gettext("Failed to initialize Lucene search engine."), ex);
         } finally {
             book.setIndexStatus(finalStatus);
             job.done();
-            // ensure the temp path is gone - errors can leave it there and cause further problems
-            CommonUtils.deleteDirectory(tempPath);
+            // a Bible index stopped by an error, an interrupt or the app being killed is kept so creation can resume later
+            if (finalStatus==IndexStatus.DONE || isCancelled || !isCheckpointed) {
+	            // ensure the temp path is gone - errors can leave it there and cause further problems
+	            CommonUtils.deleteDirectory(tempPath);
+	            CommonUtils.deleteDirectory(partitionsPath);
+	            checkpoint.delete();
+            }
         }
     }
 
+    /**
+     * Index each partition in turn committing the index every few partitions.  The completed partitions are committed
+     * along with the index entries so a partition is never indexed twice.
+     */
+    private void generateCheckpointedSearchIndex(Progress job, List<Key> errors, PdaIndexWriter writer, List<Key> partitions, IndexCheckpoint checkpoint) throws Exception {
+    	List<Key> indexedPartitions = new ArrayList<Key>();
+    	int numUncommitted = 0;
+    	for (Key partition : partitions) {
+    		if (checkpoint.isCompleted(partition)) {
+    			indexedCount.addAndGet(partition.getCardinality());
+    			indexedPartitions.add(partition);
+    			continue;
+    		}
+    		
+    		generateSearchIndexImpl(job, errors, writer, partition);
+    		if (job.isFinished() || Thread.currentThread().isInterrupted()) {
+    			// partition may be incomplete so is rolled back by the caller
+    			return;
+    		}
+    		
+    		indexedPartitions.add(partition);
+    		if (++numUncommitted>=CHECKPOINT_INTERVAL) {
+    			writer.commit(checkpoint.getCommitUserData(indexedPartitions));
+    			numUncommitted = 0;
+    		}
+    	}
+    	writer.commit(checkpoint.getCommitUserData(indexedPartitions));
+    }
+
+    /**
+     * Index each partition into a separate index using a pool of threads, each with its own IndexWriter, then merge the
+     * partition indexes into the final index.  Only reading the book is serialised because the book's files and filter
+     * are shared.
+     * Partition indexes committed before the app was stopped are kept and merged along with the new ones.
+     */
+    private void generatePartitionedSearchIndex(final Progress job, final List<Key> errors, IndexWriter writer, List<Key> partitions, File partitionsPath, final IndexCheckpoint checkpoint) throws Exception {
+    	if (checkpoint.isMerged()) {
+    		logger.info("Partitions already merged");
+    		CommonUtils.deleteDirectory(partitionsPath);
+    		return;
+    	}
+    	
+    	final Queue<Key> partitionQueue = new ConcurrentLinkedQueue<Key>();
+    	for (Key partition : partitions) {
+    		if (checkpoint.isCompleted(partition)) {
+    			indexedCount.addAndGet(partition.getCardinality());
+    		} else {
+    			partitionQueue.add(partition);
+    		}
+    	}
+    	logger.info("Indexing "+partitionQueue.size()+" partitions using "+numIndexThreads+" threads");
+    	final List<Key> syncErrors = Collections.synchronizedList(errors);
+
+    	// do not overwrite partition indexes from a previous attempt
+    	int firstPartitionDirNo = getNextPartitionDirNo(partitionsPath);
+    	ExecutorService executor = Executors.newFixedThreadPool(numIndexThreads);
+    	try {
+	    	List<Future<Void>> futures = new ArrayList<Future<Void>>();
+	    	for (int i=0; i<numIndexThreads; i++) {
+	    		final File partitionPath = new File(partitionsPath, Integer.toString(firstPartitionDirNo+i));
+	    		futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+		    			Key partition = partitionQueue.poll();
+		    			if (partition==null) {
+		    				return null;
+		    			}
+		    			
+						PdaIndexWriter partitionWriter = new PdaIndexWriter(FSDirectory.open(partitionPath), new LuceneAnalyzer(book), true, memoryPolicy);
+						boolean isOk = false;
+						try {
+							// the partitions in this partition index, which are committed with it
+							List<Key> indexedPartitions = new ArrayList<Key>();
+							int numUncommitted = 0;
+							do {
+								generateSearchIndexImpl(job, syncErrors, partitionWriter, partition);
+					    		if (job.isFinished() || Thread.currentThread().isInterrupted()) {
+					    			// partition may be incomplete
+					    			return null;
+					    		}
+					    		indexedPartitions.add(partition);
+					    		if (++numUncommitted>=CHECKPOINT_INTERVAL) {
+					    			partitionWriter.commit(checkpoint.getCommitUserData(indexedPartitions));
+					    			numUncommitted = 0;
+					    		}
+							} while ((partition = partitionQueue.poll())!=null);
+							
+			    			partitionWriter.commit(checkpoint.getCommitUserData(indexedPartitions));
+							isOk = true;
+						} finally {
+							if (isOk) {
+								partitionWriter.close();
+							} else {
+								// do not commit a partly indexed partition
+								partitionWriter.rollback();
+							}
+						}
+						return null;
+					}
+	    		}));
+	    	}
+	    	
+	    	// wait for all partitions and pass on any failure
+	    	for (Future<Void> future : futures) {
+	    		try {
+	    			future.get();
+	    		} catch (ExecutionException e) {
+	    			Throwable cause = e.getCause();
+	    			if (cause instanceof Error) {
+	    				throw (Error)cause;
+	    			}
+	    			throw (cause instanceof Exception) ? (Exception)cause : e;
+	    		}
+	    	}
+    	} finally {
+    		executor.shutdownNow();
+    	}
+    	
+    	if (job.isFinished()) {
+    		return;
+    	}
+
+    	logger.info("Merging partition indexes");
+    	File[] partitionPaths = partitionsPath.listFiles();
+    	if (partitionPaths!=null && partitionPaths.length>0) {
+	    	Directory[] partitionDirs = new Directory[partitionPaths.length];
+	    	try {
+	    		for (int i=0; i<partitionPaths.length; i++) {
+	    			partitionDirs[i] = FSDirectory.open(partitionPaths[i]);
+	    		}
+		    	writer.addIndexesNoOptimize(partitionDirs);
+		    	// if the app is killed before this commit the partitions are merged again from the start
+		    	writer.commit(checkpoint.getMergedCommitUserData());
+	    	} finally {
+	    		for (Directory partitionDir : partitionDirs) {
+	    			if (partitionDir!=null) {
+	    				partitionDir.close();
+	    			}
+	    		}
+	    	}
+    	}
+    	CommonUtils.deleteDirectory(partitionsPath);
+    }
+
+    /**
+     * true if the user cancelled indexing or the thread was interrupted e.g. because the app is closing
+     */
+    private boolean isStopped(Progress job) {
+    	return job.isFinished() || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Partition index directories are numbered
+     */
+    private int getNextPartitionDirNo(File partitionsPath) {
+    	int nextPartitionDirNo = 0;
+    	String[] partitionDirNames = partitionsPath.list();
+    	if (partitionDirNames!=null) {
+	    	for (String partitionDirName : partitionDirNames) {
+	    		try {
+	    			nextPartitionDirNo = Math.max(nextPartitionDirNo, Integer.parseInt(partitionDirName)+1);
+	    		} catch (NumberFormatException nfe) {
+	    			logger.warn("Unexpected file in partitions dir:"+partitionDirName);
+	    		}
+	    	}
+    	}
+    	return nextPartitionDirNo;
+    }
+
+    /**
+     * Identifies the book and version so files created for a different version are ignored
+     */
+    static String getBookStamp(Book book) {
+    	Object version = book.getBookMetaData().getProperty("Version");
+    	return book.getInitials()+" "+version;
+    }
+
+    /**
+     * Split the Bible into one partition per book, largest first so the threads finish at about the same time
+     */
+    private List<Key> getBiblePartitions() throws Exception {
+    	List<Key> partitions = new ArrayList<Key>();
+    	for (BibleBook bibleBook : BibleInfo.getBooks()) {
+    		int lastChapter = BibleInfo.chaptersInBook(bibleBook);
+    		int lastVerse = BibleInfo.versesInChapter(bibleBook, lastChapter);
+    		partitions.add(new VerseRange(new Verse(bibleBook, 1, 1), new Verse(bibleBook, lastChapter, lastVerse)));
+    	}
+    	Collections.sort(partitions, new Comparator<Key>() {
+			public int compare(Key key1, Key key2) {
+				return key2.getCardinality()-key1.getCardinality();
+			}
+    	});
+    	return partitions;
+    }
+
+    /**
+     * true if an earlier attempt to create the index was stopped part way through and can be continued
+     */
+    public static boolean isResumable(Book book, URI storage) {
+    	try {
+    		String indexPath = NetUtil.getAsFile(storage).getCanonicalPath();
+    		File tempPath = new File(indexPath + '.' + IndexStatus.CREATING.toString());
+    		IndexCheckpoint checkpoint = new IndexCheckpoint(new File(indexPath + CHECKPOINT_FILE_SUFFIX), getBookStamp(book));
+    		return tempPath.exists() && checkpoint.load(tempPath, new File(indexPath + PARTITIONS_DIR_SUFFIX));
+    	} catch (IOException e) {
+    		logger.error("Error checking for index checkpoint", e);
+    		return false;
+    	}
+    }
+
+    /**
+     * Set the number of threads used to index Bibles.  1 indexes serially.
+     */
+    public static void setNumIndexThreads(int numIndexThreads) {
+    	PdaLuceneIndexCreator.numIndexThreads = Math.max(1, numIndexThreads);
+    }
+
+    public static int getNumIndexThreads() {
+    	return numIndexThreads;
+    }
+
 
     /**
      * Dig down into a Key indexing as we go.
      */
-    private void generateSearchIndexImpl(Progress job, List<Key> errors, IndexWriter writer, Key key, int count) throws BookException, IOException {
+    private void generateSearchIndexImpl(Progress job, List<Key> errors, PdaIndexWriter writer, Key key) throws BookException, IOException {
         logger.debug("Generating search Index");
         boolean hasStrongs = book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS);
 
@@ -224,24 +534,24 @@ public class PdaLuceneIndexCreator {
         Field bodyField = new Field(FIELD_BODY, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
         Field strongField = new Field(FIELD_STRONG, "", Field.Store.NO, Field.Index.ANALYZED, Field.TermVector.NO);
 
-        int size = key.getCardinality();
-        logger.debug("Number of keys:"+size);
-        int subCount = count;
         for (Key subkey : key) {
             if (subkey.canHaveChildren()) {
-                generateSearchIndexImpl(job, errors, writer, subkey, subCount);
+                generateSearchIndexImpl(job, errors, writer, subkey);
             } else {
-                // Set up DataPolice for this key.
-                DataPolice.setKey(subkey);
-
                 data = new BookData(book, subkey);
                 osis = null;
 
-                try {
-                    osis = data.getOsisFragment();
-                } catch (BookException e) {
-                    errors.add(subkey);
-                    continue;
+                // the book's files and filter are shared by all indexing threads so only one thread may read at a time
+                synchronized (book) {
+	                // Set up DataPolice for this key.
+	                DataPolice.setKey(subkey);
+	
+	                try {
+	                    osis = data.getOsisFragment();
+	                } catch (BookException e) {
+	                    errors.add(subkey);
+	                    continue;
+	                }
                 }
 
                 // Remove all fields from the document
@@ -255,28 +565,31 @@ public class PdaLuceneIndexCreator {
                 addField(doc, bodyField, OSISUtil.getCanonicalText(osis));
 
                 if (hasStrongs) {
-                    addField(doc, strongField, OSISUtil.getStrongsNumbers(osis));
+                    String strongsNumbers = OSISUtil.getStrongsNumbers(osis);
+                    addField(doc, strongField, strongsNumbers);
+                    if (strongsBuilder!=null && subkey instanceof Verse) {
+                    	strongsBuilder.add(((Verse)subkey).getOrdinal(), strongsNumbers);
+                    }
                 }
 
                 // Add the document if we added more than just the key.
                 if (doc.getFields().size() > 1) {
                     writer.addDocument(doc);
                 }
+                // flush buffered documents rather than garbage collect if memory is low
+                memoryPolicy.documentAdded(writer);
 
-                 subCount++;
+                int subCount = indexedCount.incrementAndGet();
 
                 // report progress but not all the time for efficiency
                 if (subCount%50 ==0) {
 	                rootName = subkey.getRootName();
 	                if (!rootName.equals(oldRootName)) {
 	                    oldRootName = rootName;
-	                    job.setSectionName(rootName);
+	                    job.setSectionName(rootName+" ("+memoryPolicy.getProgressStatistics()+")");
 	                }
-	                percent = 95 * subCount / size;
+	                percent = 95 * subCount / totalKeys;
 	                job.setWork(percent);
-
-	                // and force a garbage collect every so often
-	                System.gc();
                 }
 
                 // This could take a long time ...
@@ -301,6 +614,26 @@ public class PdaLuceneIndexCreator {
      */
     private static final Object CREATING = new Object();
 
+    /**
+     * Number of keys indexed so far by all threads
+     */
+    private AtomicInteger indexedCount = new AtomicInteger();
+
+    /**
+     * Number of keys to index
+     */
+    private int totalKeys;
+
+    /**
+     * Sizes writer RAM buffers from the heap and collects indexing statistics
+     */
+    private IndexMemoryPolicy memoryPolicy;
+
+    /**
+     * Collects the verses containing each Strong's number or null if not required
+     */
+    private StrongsOccurrenceIndex.Builder strongsBuilder;
+
     /**
      * Are we active
      */
@@ -21,8 +21,11 @@
  */
 package org.crosswire.jsword.index.lucene;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.crosswire.common.activate.Activator;
 import org.crosswire.common.util.CWProject;
@@ -59,6 +62,8 @@ public class PdaLuceneIndexManager  {
                 try {
                     URI storage = getStorageArea(book);
 
+                    // release any searcher on an old index
+                    PdaIndexSearcherManager.getInstance().close(book);
                     PdaLuceneIndexCreator index = new PdaLuceneIndexCreator(book, storage, true);
                     // We were successful if the directory exists.
                     if (NetUtil.getAsFile(storage).exists()) {
@@ -86,6 +91,74 @@ public class PdaLuceneIndexManager  {
         work.start();
     }
 
+    /**
+     * true if index creation was stopped part way through e.g. because the app was killed and will continue from the last checkpoint
+     */
+    public boolean isIndexCreationResumable(Book book) {
+        try {
+            return PdaLuceneIndexCreator.isResumable(book, getStorageArea(book));
+        } catch (IOException e) {
+            log.error("Error finding index storage area", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get the precomputed Strong's number occurrences of a Bible
+     * 
+     * @return the occurrence index or null if it has not been created
+     */
+    public StrongsOccurrenceIndex getStrongsOccurrenceIndex(Book book) {
+        synchronized (strongsOccurrenceIndexes) {
+            String stamp = PdaLuceneIndexCreator.getBookStamp(book);
+            StrongsOccurrenceIndex occurrenceIndex = strongsOccurrenceIndexes.get(stamp);
+            if (occurrenceIndex == null) {
+                try {
+                    occurrenceIndex = StrongsOccurrenceIndex.load(getStrongsOccurrenceFile(book), stamp);
+                    if (occurrenceIndex != null) {
+                        strongsOccurrenceIndexes.put(stamp, occurrenceIndex);
+                    }
+                } catch (IOException e) {
+                    log.error("Error loading Strong's occurrence index", e);
+                }
+            }
+            return occurrenceIndex;
+        }
+    }
+
+    /**
+     * Scan a Strong's tagged Bible in the background to create its occurrence index e.g. if the Lucene index was
+     * downloaded
+     */
+    public void scheduleStrongsOccurrenceIndexCreation(final Book book) {
+        synchronized (strongsOccurrenceIndexes) {
+            if (creatingStrongsOccurrenceIndexes.containsKey(book.getInitials())) {
+                return;
+            }
+            creatingStrongsOccurrenceIndexes.put(book.getInitials(), Boolean.TRUE);
+        }
+
+        Thread work = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    StrongsOccurrenceIndex.create(book, getStrongsOccurrenceFile(book), PdaLuceneIndexCreator.getBookStamp(book));
+                } catch (Exception e) {
+                    log.error("Error creating Strong's occurrence index", e);
+                } finally {
+                    synchronized (strongsOccurrenceIndexes) {
+                        creatingStrongsOccurrenceIndexes.remove(book.getInitials());
+                    }
+                }
+            }
+        });
+        work.setPriority(Thread.MIN_PRIORITY);
+        work.start();
+    }
+
+    private File getStrongsOccurrenceFile(Book book) throws IOException {
+        return new File(NetUtil.getAsFile(getStorageArea(book)).getCanonicalPath() + StrongsOccurrenceIndex.FILE_SUFFIX);
+    }
+
     /**
      * Determine where an index should be stored
      * 
@@ -109,6 +182,16 @@ public class PdaLuceneIndexManager  {
         return NetUtil.lengthenURI(driver, bookName);
     }
 
+    /**
+     * Loaded Strong's occurrence indexes keyed by book stamp
+     */
+    private static Map<String, StrongsOccurrenceIndex> strongsOccurrenceIndexes = new HashMap<String, StrongsOccurrenceIndex>();
+
+    /**
+     * Books whose Strong's occurrence index is being created
+     */
+    private static Map<String, Boolean> creatingStrongsOccurrenceIndexes = new HashMap<String, Boolean>();
+
     /**
      * The lucene search index directory
      */
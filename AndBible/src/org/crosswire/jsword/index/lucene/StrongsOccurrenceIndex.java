@@ -0,0 +1,386 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.index.lucene;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.bible.service.common.Logger;
+
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseBitSet;
+import org.jdom.Element;
+
+/**
+ * The verses containing each Strong's number in a Bible so that all
+ * occurrences of a Greek or Hebrew word can be found and counted without a
+ * Lucene query.
+ * 
+ * <p>
+ * The file starts with a header containing a stamp of the book version. A
+ * directory of Strong's numbers sorted by number follows, each record being a 4
+ * byte number and the 4 byte position of its first verse. The sorted verse
+ * ordinals, 2 bytes each, follow the directory. The file is memory mapped and
+ * numbers are found by a binary search of the directory.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class StrongsOccurrenceIndex {
+    /**
+     * Load an index previously written for the same book stamp
+     * 
+     * @return the index or null if it is missing or was built for a different
+     *         version of the book
+     */
+    public static StrongsOccurrenceIndex load(File file, String bookStamp) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, FileUtil.MODE_READ);
+        try {
+            if (raf.length() < HEADER_MIN_SIZE || raf.readInt() != MAGIC || raf.readInt() != FORMAT_VERSION || !bookStamp.equals(raf.readUTF())) {
+                return null;
+            }
+            int numNumbers = raf.readInt();
+            long directoryStart = raf.getFilePointer();
+            long directorySize = (long) (numNumbers + 1) * DIRECTORY_RECORD_SIZE;
+            if (raf.length() < directoryStart + directorySize) {
+                return null;
+            }
+
+            // the mapping remains valid after the file is closed
+            ByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, directoryStart, raf.length() - directoryStart);
+            return new StrongsOccurrenceIndex(data, numNumbers);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Scan every verse of a Strong's tagged Bible, for example if its Lucene
+     * index was downloaded rather than created, and write the index.
+     */
+    public static void create(Book book, File file, String bookStamp) throws IOException {
+        String jobName = "Finding Strong's numbers in " + book.getInitials();
+        Progress job = JobManager.createJob(jobName, Thread.currentThread());
+        Key keyList = PassageKeyFactory.instance().getGlobalKeyList();
+        job.beginJob(jobName, keyList.getCardinality());
+        try {
+            Builder builder = new Builder();
+            for (Key verse : keyList) {
+                Element osis = null;
+                synchronized (book) {
+                    try {
+                        osis = new BookData(book, verse).getOsisFragment();
+                    } catch (BookException e) {
+                        // verse may not be in the book
+                        continue;
+                    }
+                }
+                builder.add(((Verse) verse).getOrdinal(), OSISUtil.getStrongsNumbers(osis));
+                job.incrementWorkDone(1);
+
+                if (job.isFinished() || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+            builder.write(file, bookStamp);
+        } finally {
+            job.done();
+        }
+    }
+
+    private StrongsOccurrenceIndex(ByteBuffer data, int numNumbers) {
+        this.data = data;
+        this.numNumbers = numNumbers;
+        this.ordinalsStart = (numNumbers + 1) * DIRECTORY_RECORD_SIZE;
+    }
+
+    /**
+     * @param strongsNumber
+     *            e.g. G746, h07225
+     * @return the number of verses containing the Strong's number
+     */
+    public int getCount(String strongsNumber) {
+        int record = findRecord(parseNumber(strongsNumber, 0, strongsNumber.length()));
+        if (record < 0) {
+            return 0;
+        }
+        return getFirstOrdinalIndex(record + 1) - getFirstOrdinalIndex(record);
+    }
+
+    /**
+     * @return the sorted ordinals of verses containing the Strong's number
+     */
+    public int[] getOrdinals(String strongsNumber) {
+        int record = findRecord(parseNumber(strongsNumber, 0, strongsNumber.length()));
+        if (record < 0) {
+            return new int[0];
+        }
+        int first = getFirstOrdinalIndex(record);
+        int[] ordinals = new int[getFirstOrdinalIndex(record + 1) - first];
+        for (int i = 0; i < ordinals.length; i++) {
+            // absolute gets do not change the buffer so it can be shared by threads
+            ordinals[i] = data.getChar(ordinalsStart + (first + i) * ORDINAL_SIZE);
+        }
+        return ordinals;
+    }
+
+    /**
+     * @return the verses containing the Strong's number
+     */
+    public VerseBitSet getOccurrences(String strongsNumber) {
+        return VerseBitSet.fromOrdinals(getOrdinals(strongsNumber));
+    }
+
+    /**
+     * binary search of the directory
+     * 
+     * @return the directory record of the number or -1 if not found
+     */
+    private int findRecord(int number) {
+        if (number < 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = numNumbers - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midNumber = data.getInt(mid * DIRECTORY_RECORD_SIZE);
+            if (midNumber < number) {
+                low = mid + 1;
+            } else if (midNumber > number) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int getFirstOrdinalIndex(int record) {
+        return data.getInt(record * DIRECTORY_RECORD_SIZE + 4);
+    }
+
+    /**
+     * Convert a Strong's number like G746, h07225 or H1234a to a single int
+     * with Hebrew numbers offset from Greek numbers. Any part letter is
+     * ignored.
+     * 
+     * @return the number or -1 if it is not a valid Strong's number
+     */
+    static int parseNumber(CharSequence strongsNumber, int start, int end) {
+        if (end - start < 2) {
+            return -1;
+        }
+        int number;
+        switch (strongsNumber.charAt(start)) {
+        case 'g':
+        case 'G':
+            number = 0;
+            break;
+        case 'h':
+        case 'H':
+            number = HEBREW_OFFSET;
+            break;
+        default:
+            return -1;
+        }
+
+        int digits = 0;
+        int value = 0;
+        for (int i = start + 1; i < end && digits < MAX_DIGITS; i++) {
+            char ch = strongsNumber.charAt(i);
+            if (ch < '0' || ch > '9') {
+                break;
+            }
+            value = value * 10 + (ch - '0');
+            digits++;
+        }
+        return digits > 0 ? number + value : -1;
+    }
+
+    /**
+     * Collects Strong's numbers verse by verse, possibly from several indexing
+     * threads, and writes the index.
+     */
+    public static class Builder {
+        /**
+         * @param strongsNumbers
+         *            space separated Strong's numbers from
+         *            OSISUtil.getStrongsNumbers
+         */
+        public synchronized void add(int ordinal, String strongsNumbers) {
+            int length = strongsNumbers.length();
+            int start = 0;
+            while (start < length) {
+                int end = strongsNumbers.indexOf(' ', start);
+                if (end < 0) {
+                    end = length;
+                }
+                int number = parseNumber(strongsNumbers, start, end);
+                if (number >= 0) {
+                    OrdinalList ordinals = occurrences.get(Integer.valueOf(number));
+                    if (ordinals == null) {
+                        ordinals = new OrdinalList();
+                        occurrences.put(Integer.valueOf(number), ordinals);
+                    }
+                    ordinals.add(ordinal);
+                }
+                start = end + 1;
+            }
+        }
+
+        public synchronized void write(File file, String bookStamp) throws IOException {
+            // write to a temporary file so a partly written index is never loaded
+            File tempFile = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(bookStamp);
+                out.writeInt(occurrences.size());
+
+                // verses were added by several threads so sort and remove duplicates before writing the directory
+                int firstOrdinalIndex = 0;
+                for (Map.Entry<Integer, OrdinalList> entry : occurrences.entrySet()) {
+                    entry.getValue().sort();
+                    out.writeInt(entry.getKey().intValue());
+                    out.writeInt(firstOrdinalIndex);
+                    firstOrdinalIndex += entry.getValue().size;
+                }
+                // sentinel marking the end of the last number's verses
+                out.writeInt(Integer.MAX_VALUE);
+                out.writeInt(firstOrdinalIndex);
+
+                for (OrdinalList ordinals : occurrences.values()) {
+                    for (int i = 0; i < ordinals.size; i++) {
+                        out.writeChar(ordinals.ordinals[i]);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                // renameTo will not replace an existing file on all platforms
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    tempFile.delete();
+                    throw new IOException("Could not create " + file);
+                }
+            }
+            logger.info("Wrote " + occurrences.size() + " Strong's numbers with " + getOccurrenceCount() + " occurrences");
+        }
+
+        private int getOccurrenceCount() {
+            int count = 0;
+            for (OrdinalList ordinals : occurrences.values()) {
+                count += ordinals.size;
+            }
+            return count;
+        }
+
+        private Map<Integer, OrdinalList> occurrences = new TreeMap<Integer, OrdinalList>();
+    }
+
+    /**
+     * A growable array of verse ordinals avoiding an Integer per occurrence
+     */
+    private static class OrdinalList {
+        void add(int ordinal) {
+            // a word is often repeated in a verse
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                int[] larger = new int[size * 2];
+                System.arraycopy(ordinals, 0, larger, 0, size);
+                ordinals = larger;
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        void sort() {
+            Arrays.sort(ordinals, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || ordinals[unique - 1] != ordinals[i]) {
+                    ordinals[unique++] = ordinals[i];
+                }
+            }
+            size = unique;
+        }
+
+        int[] ordinals = new int[4];
+
+        int size;
+    }
+
+    /**
+     * The suffix of the index file, which is stored next to the Lucene index
+     */
+    public static final String FILE_SUFFIX = ".strongs";
+
+    private static final int MAGIC = 0x41425343;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_MIN_SIZE = 14;
+
+    private static final int DIRECTORY_RECORD_SIZE = 8;
+
+    /** verse ordinals are at most 31102 so fit in an unsigned short */
+    private static final int ORDINAL_SIZE = 2;
+
+    private static final int HEBREW_OFFSET = 100000;
+
+    private static final int MAX_DIGITS = 5;
+
+    private ByteBuffer data;
+
+    private int numNumbers;
+
+    private int ordinalsStart;
+
+    private static final Logger logger = new Logger("StrongsOccurrenceIndex");
+}
@@ -0,0 +1,169 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.passage;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.crosswire.jsword.versification.BibleInfo;
+
+/**
+ * MJD A set of verses stored as a bitmap of verse ordinals which adds
+ * operations on ordinals to BitwisePassage so that search results can be
+ * filtered, counted and listed without creating a Key for each verse.
+ * 
+ * <p>
+ * It is in the passage package to share the BitSet of other BitwisePassages,
+ * which include the usual search results, without copying them verse by
+ * verse.
+ * </p>
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class VerseBitSet extends BitwisePassage {
+    public VerseBitSet() {
+        super();
+    }
+
+    /**
+     * Create a set containing the same verses as a key
+     */
+    public static VerseBitSet valueOf(Key key) {
+        VerseBitSet verses = new VerseBitSet();
+        if (key instanceof BitwisePassage) {
+            verses.store.or(((BitwisePassage) key).store);
+        } else if (key != null) {
+            verses.addAll(key);
+        }
+        return verses;
+    }
+
+    /**
+     * Create a set containing the verses from start to end inclusive
+     */
+    public static VerseBitSet range(Verse start, Verse end) {
+        VerseBitSet verses = new VerseBitSet();
+        verses.store.set(start.getOrdinal(), end.getOrdinal() + 1);
+        return verses;
+    }
+
+    /**
+     * Create a set from sorted or unsorted verse ordinals
+     */
+    public static VerseBitSet fromOrdinals(int[] ordinals) {
+        VerseBitSet verses = new VerseBitSet();
+        for (int ordinal : ordinals) {
+            verses.store.set(ordinal);
+        }
+        return verses;
+    }
+
+    /**
+     * Add a verse by ordinal. No change events are fired so this is intended
+     * for filling a new set e.g. from search hits.
+     */
+    public void addOrdinal(int ordinal) {
+        store.set(ordinal);
+    }
+
+    /**
+     * Remove a verse by ordinal. As with addOrdinal no change events are
+     * fired.
+     */
+    public void removeOrdinal(int ordinal) {
+        store.clear(ordinal);
+    }
+
+    public boolean containsOrdinal(int ordinal) {
+        return store.get(ordinal);
+    }
+
+    /**
+     * Keep only verses which are also in other
+     */
+    public void and(VerseBitSet other) {
+        store.and(other.store);
+    }
+
+    /**
+     * Count the verses which are also in other without changing either set
+     * e.g. the number of hits in each testament
+     */
+    public int countVersesIn(VerseBitSet other) {
+        BitSet common = (BitSet) store.clone();
+        common.and(other.store);
+        return common.cardinality();
+    }
+
+    /**
+     * Add all the verses in other
+     */
+    public void or(VerseBitSet other) {
+        store.or(other.store);
+    }
+
+    /**
+     * @return the first ordinal in the set from fromOrdinal inclusive or -1 if
+     *         there are no more
+     */
+    public int nextOrdinal(int fromOrdinal) {
+        return store.nextSetBit(fromOrdinal);
+    }
+
+    /**
+     * Get the first verses in Bible order
+     * 
+     * @param max
+     *            the maximum number of verses to return
+     */
+    public List<Key> getVerses(int max) {
+        return getVerses(0, max);
+    }
+
+    /**
+     * Get verses in Bible order starting from an ordinal e.g. a page of search
+     * results
+     * 
+     * @param fromOrdinal
+     *            the ordinal of the first verse to include if it is in the set
+     * @param max
+     *            the maximum number of verses to return
+     */
+    public List<Key> getVerses(int fromOrdinal, int max) {
+        List<Key> verses = new ArrayList<Key>(Math.min(max, countVerses()));
+        try {
+            for (int ordinal = store.nextSetBit(fromOrdinal); ordinal >= 0 && verses.size() < max; ordinal = store.nextSetBit(ordinal + 1)) {
+                verses.add(BibleInfo.decodeOrdinal(ordinal));
+            }
+        } catch (NoSuchVerseException e) {
+            // only valid ordinals are ever set
+            throw new IllegalStateException(e);
+        }
+        return verses;
+    }
+
+    /**
+     * Serialization ID
+     */
+    private static final long serialVersionUID = 4384717293845234881L;
+}
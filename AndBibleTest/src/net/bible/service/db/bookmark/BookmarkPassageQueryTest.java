@@ -0,0 +1,113 @@
+package net.bible.service.db.bookmark;
+
+import junit.framework.TestCase;
+import net.bible.service.db.VerseOrdinalColumns;
+import net.bible.service.db.bookmark.BookmarkDatabaseDefinition.BookmarkColumn;
+import net.bible.service.db.bookmark.BookmarkDatabaseDefinition.Table;
+
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleInfo;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/** Compare finding bookmarks in a chapter using the verse ordinal columns with the old LIKE query on the key
+ */
+public class BookmarkPassageQueryTest extends TestCase {
+
+	private static final int NUM_BOOKMARKS = 10000;
+	private static final int NUM_QUERIES = 100;
+
+	private SQLiteDatabase db;
+	private VerseOrdinalColumns verseOrdinalColumns = BookmarkDatabaseDefinition.VERSE_ORDINAL_COLUMNS;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		// a version 2 database which is then upgraded
+		db = SQLiteDatabase.create(null);
+		BookmarkDatabaseDefinition.getInstance().onCreate(db);
+
+		// spread the bookmarks through the Bible
+		int step = BibleInfo.versesInBible()/NUM_BOOKMARKS;
+		db.beginTransaction();
+		try {
+			for (int i=1; i<=NUM_BOOKMARKS; i++) {
+				ContentValues values = new ContentValues();
+				values.put(BookmarkColumn.KEY, BibleInfo.decodeOrdinal(i*step).getOsisID());
+				db.insert(Table.BOOKMARK, null, values);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+
+		BookmarkDatabaseDefinition.getInstance().upgradeToVersion3(db);
+	}
+
+	protected void tearDown() throws Exception {
+		db.close();
+		super.tearDown();
+	}
+
+	public void testVerse1DoesNotMatchVerse10() throws Exception {
+		insert("Gen.50.1");
+		insert("Gen.50.10");
+		assertEquals(1, countInPassage(PassageKeyFactory.instance().getKey("Gen.50.1")));
+		assertEquals(2, countLike(PassageKeyFactory.instance().getKey("Gen.50.1")));
+	}
+
+	public void testBackfilledRowsAreFound() throws Exception {
+		Key chapter = PassageKeyFactory.instance().getKey("Ps.119");
+		assertTrue(countInPassage(chapter)>0);
+	}
+
+	public void testQueryTime() throws Exception {
+		Key[] chapters = new Key[NUM_QUERIES];
+		for (int i=0; i<NUM_QUERIES; i++) {
+			Verse verse = BibleInfo.decodeOrdinal(1+i*(BibleInfo.versesInBible()/NUM_QUERIES));
+			chapters[i] = PassageKeyFactory.instance().getKey(verse.getBook().getOSIS()+"."+verse.getChapter());
+		}
+
+		long start = System.currentTimeMillis();
+		int ordinalCount = 0;
+		for (Key chapter : chapters) {
+			ordinalCount += countInPassage(chapter);
+		}
+		long ordinalMillis = System.currentTimeMillis()-start;
+
+		start = System.currentTimeMillis();
+		for (Key chapter : chapters) {
+			countLike(chapter);
+		}
+		long likeMillis = System.currentTimeMillis()-start;
+
+		System.out.println("Chapter bookmark query ms for "+NUM_BOOKMARKS+" bookmarks. Ordinal range:"+ordinalMillis/(double)NUM_QUERIES+" LIKE:"+likeMillis/(double)NUM_QUERIES);
+		assertTrue(ordinalCount>0);
+	}
+
+	private void insert(String osisId) throws Exception {
+		ContentValues values = new ContentValues();
+		values.put(BookmarkColumn.KEY, osisId);
+		verseOrdinalColumns.putOrdinals(values, PassageKeyFactory.instance().getKey(osisId));
+		db.insert(Table.BOOKMARK, null, values);
+	}
+
+	private int countInPassage(Key passage) {
+		return count(db.query(Table.BOOKMARK, new String[] {BookmarkColumn._ID}, verseOrdinalColumns.getInPassageSelection(), verseOrdinalColumns.getInPassageSelectionArgs(passage), null, null, null));
+	}
+
+	private int countLike(Key passage) {
+		return count(db.query(Table.BOOKMARK, new String[] {BookmarkColumn._ID}, BookmarkColumn.KEY+" LIKE ?", new String[] {passage.getOsisID()+"%"}, null, null, null));
+	}
+
+	private int count(Cursor c) {
+		try {
+			return c.getCount();
+		} finally {
+			c.close();
+		}
+	}
+}
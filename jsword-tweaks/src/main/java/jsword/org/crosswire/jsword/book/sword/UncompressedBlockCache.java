@@ -0,0 +1,111 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MJD A size bounded least recently used cache of uncompressed blocks keyed by
+ * testament and block number. The single last block cache in ZVerseBackend was
+ * thrashed whenever a Bible, a commentary, search results and speech read
+ * different parts of the same book.
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class UncompressedBlockCache {
+    /**
+     * Create a cache which holds up to maxBytes of uncompressed data, although
+     * the most recent block is always kept however large it is.
+     */
+    public UncompressedBlockCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the uncompressed block or null if it is not cached
+     */
+    public synchronized byte[] get(int testament, long blockNum) {
+        byte[] block = blocks.get(getCacheKey(testament, blockNum));
+        if (block != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return block;
+    }
+
+    /**
+     * Add a block, removing the least recently used blocks if the cache is too
+     * large
+     */
+    public synchronized void put(int testament, long blockNum, byte[] block) {
+        byte[] previous = blocks.put(getCacheKey(testament, blockNum), block);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += block.length;
+
+        Iterator<byte[]> iter = blocks.values().iterator();
+        while (size > maxBytes && blocks.size() > 1) {
+            size -= iter.next().length;
+            iter.remove();
+        }
+    }
+
+    /**
+     * Release all blocks e.g. when the book is deactivated
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static Long getCacheKey(int testament, long blockNum) {
+        return Long.valueOf(((long) testament << 32) | blockNum);
+    }
+
+    /**
+     * Blocks in least recently used order
+     */
+    private Map<Long, byte[]> blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+
+    /**
+     * Total bytes of all cached blocks
+     */
+    private int size;
+
+    private int maxBytes;
+
+    private long hits;
+
+    private long misses;
+}
@@ -0,0 +1,177 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2011
+ *     The copyright to this program is held by it's authors.
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.Logger;
+
+/**
+ * MJD A precompiled table, stored next to the module, giving the block
+ * number, start and size of every verse indexed by verse ordinal. This
+ * replaces the testament/book/chapter arithmetic of SwordConstants.getIndex and
+ * the comp file reads with a single lookup in a memory mapped file.
+ *
+ * <p>
+ * The file starts with a header containing a stamp of the module version and
+ * index file sizes so the table is rebuilt whenever the module changes. Each
+ * following record is a 4 byte block number, a 4 byte verse start and a 2 byte
+ * verse size.
+ * </p>
+ *
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Martin Denham [mjdenham at gmail dot com]
+ */
+public class VerseOffsetTable {
+    /**
+     * Load a table previously written for the same module stamp. A table
+     * written for a different version of the module, by an older version of
+     * this class or which is damaged is deleted so that it can be rebuilt.
+     *
+     * @return the table or null if there is no usable table
+     */
+    public static VerseOffsetTable load(File file, String moduleStamp) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, FileUtil.MODE_READ);
+            try {
+                if (raf.length() >= HEADER_MIN_SIZE && raf.readInt() == MAGIC && raf.readInt() == FORMAT_VERSION && moduleStamp.equals(raf.readUTF())) {
+                    int numVerses = raf.readInt();
+                    long recordsStart = raf.getFilePointer();
+                    long recordsSize = (long) (numVerses + 1) * RECORD_SIZE;
+                    if (numVerses > 0 && raf.length() == recordsStart + recordsSize) {
+                        // the mapping remains valid after the file is closed
+                        ByteBuffer records = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, recordsStart, recordsSize);
+                        return new VerseOffsetTable(records, numVerses);
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            // a damaged header e.g. a truncated stamp
+            log.warn("Could not read " + file, e);
+        }
+
+        log.info("Deleting out of date verse offset table " + file);
+        file.delete();
+        return null;
+    }
+
+    /**
+     * Write a table. Each array is indexed by verse ordinal and verses not in
+     * the module have a block number of MISSING.
+     */
+    public static void write(File file, String moduleStamp, int[] blockNums, int[] verseStarts, int[] verseSizes) throws IOException {
+        int numVerses = blockNums.length - 1;
+
+        // write to a temporary file so a partly written table is never loaded
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(moduleStamp);
+            out.writeInt(numVerses);
+            for (int ordinal = 0; ordinal <= numVerses; ordinal++) {
+                out.writeInt(blockNums[ordinal]);
+                out.writeInt(verseStarts[ordinal]);
+                out.writeShort(verseSizes[ordinal]);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            // renameTo will not replace an existing file on all platforms
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Could not create " + file);
+            }
+        }
+    }
+
+    private VerseOffsetTable(ByteBuffer records, int numVerses) {
+        this.records = records;
+        this.numVerses = numVerses;
+    }
+
+    /**
+     * Find where a verse is stored
+     *
+     * @param entry
+     *            receives the block number at [0], the verse start in the
+     *            uncompressed block at [1] and the verse size at [2]
+     * @return false if the module does not contain the verse
+     */
+    public boolean getEntry(int ordinal, int[] entry) {
+        if (ordinal < 1 || ordinal > numVerses) {
+            return false;
+        }
+
+        // absolute gets do not change the buffer so it can be shared by threads
+        int pos = ordinal * RECORD_SIZE;
+        int blockNum = records.getInt(pos);
+        if (blockNum == MISSING) {
+            return false;
+        }
+        entry[0] = blockNum;
+        entry[1] = records.getInt(pos + 4);
+        entry[2] = records.getShort(pos + 8) & 0xFFFF;
+        return true;
+    }
+
+    /**
+     * The name of the table file in the module data directory
+     */
+    public static final String FILE_NAME = "verse_offsets.dat";
+
+    /**
+     * Block number of a verse which is not in the module
+     */
+    public static final int MISSING = -1;
+
+    private static final int MAGIC = 0x41425654;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int RECORD_SIZE = 10;
+
+    private static final int HEADER_MIN_SIZE = 14;
+
+    private ByteBuffer records;
+
+    private int numVerses;
+
+    private static final Logger log = Logger.getLogger(VerseOffsetTable.class);
+}
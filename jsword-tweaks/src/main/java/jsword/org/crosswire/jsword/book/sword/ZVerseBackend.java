@@ -0,0 +1,824 @@
+/**
+ * Distribution License:
+ * JSword is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License, version 2.1 as published by
+ * the Free Software Foundation. This program is distributed in the hope
+ * that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The License is available on the internet at:
+ *       http://www.gnu.org/copyleft/lgpl.html
+ * or by writing to:
+ *      Free Software Foundation, Inc.
+ *      59 Temple Place - Suite 330
+ *      Boston, MA 02111-1307, USA
+ *
+ * Copyright: 2005
+ *     The copyright to this program is held by it's authors.
+ *
+ * ID: $Id: ZVerseBackend.java 2099 2011-03-07 17:13:00Z dmsmith $
+ */
+package org.crosswire.jsword.book.sword;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+//MJD START
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+//MJD END
+
+import org.crosswire.common.activate.Activator;
+import org.crosswire.common.activate.Lock;
+import org.crosswire.common.compress.CompressorType;
+import org.crosswire.common.util.FileUtil;
+import org.crosswire.common.util.Logger;
+import org.crosswire.common.util.NetUtil;
+import org.crosswire.jsword.JSMsg;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.DataPolice;
+import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Verse;
+//MJD START
+import org.crosswire.jsword.versification.BibleInfo;
+//MJD END
+
+/**
+ * A backend to read compressed data verse based files. While the text file
+ * contains data compressed with ZIP or LZSS, it cannot be uncompressed using a
+ * stand alone zip utility, such as WinZip or gzip. The reason for this is that
+ * the data file is a concatenation of blocks of compressed data.
+ * 
+ * <p>
+ * The blocks can either be "b", book (aka testament); "c", chapter or "v",
+ * verse. The choice is a matter of trade offs. The program needs to uncompress
+ * a block into memory. Having it at the book level is very memory expensive.
+ * Having it at the verse level is very disk expensive, but takes the least
+ * amount of memory. The most common is chapter.
+ * </p>
+ * 
+ * <p>
+ * In order to find the data in the text file, we need to find the block. The
+ * first index (comp) is used for this. Each verse is indexed to a tuple (block
+ * number, verse start, verse size). This data allows us to find the correct
+ * block, and to extract the verse from the uncompressed block, but it does not
+ * help us uncompress the block.
+ * </p>
+ * 
+ * <p>
+ * Once the block is known, then the next index (idx) gives the location of the
+ * compressed block, its compressed size and its uncompressed size.
+ * </p>
+ * 
+ * <p>
+ * There are 3 files for each testament, 2 (comp and idx) are indexes into the
+ * third (text) which contains the data. The key into each index is the verse
+ * index within that testament, which is determined by book, chapter and verse
+ * of that key.
+ * </p>
+ * 
+ * <p>
+ * All numbers are stored 2-complement, little endian.
+ * </p>
+ * <p>
+ * Then proceed as follows, at all times working on the set of files for the
+ * testament in question:
+ * </p>
+ * 
+ * <pre>
+ * in the comp file, seek to the index * 10
+ * read 10 bytes.
+ * the block-index is the first 4 bytes (32-bit number)
+ * the next bytes are the verse offset and length of the uncompressed block.
+ * in the idx file seek to block-index * 12
+ * read 12 bytes
+ * the text-block-index is the first 4 bytes
+ * the data-size is the next 4 bytes
+ * the uncompressed-size is the next 4 bytes
+ * in the text file seek to the text-block-index
+ * read data-size bytes
+ * decipher them if they are encrypted
+ * unGZIP them into a byte array of uncompressed-size
+ * </pre>
+ * 
+ * TODO(DM): Testament 0 is used to index an README file for the bible. At this
+ * time it is ignored.
+ * 
+ * @see gnu.lgpl.License for license details.<br>
+ *      The copyright to this program is held by it's authors.
+ * @author Joe Walker [joe at eireneh dot com]
+ */
+public class ZVerseBackend extends AbstractBackend {
+    private static final String SUFFIX_COMP = "v";
+    private static final String SUFFIX_INDEX = "s";
+    private static final String SUFFIX_PART1 = "z";
+    private static final String SUFFIX_TEXT = "z";
+
+    /**
+     * Simple ctor
+     */
+    public ZVerseBackend(SwordBookMetaData sbmd, BlockType blockType) {
+        super(sbmd);
+        this.blockType = blockType;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.crosswire.common.activate.Activatable#activate(org.crosswire.common
+     * .activate.Lock)
+     */
+    public final void activate(Lock lock) {
+        try {
+            if (idxFile[SwordConstants.TESTAMENT_OLD] == null) {
+                URI path = getExpandedDataPath();
+                String otAllButLast = NetUtil.lengthenURI(path, File.separator + SwordConstants.FILE_OT + '.' + blockType.getIndicator() + SUFFIX_PART1)
+                        .getPath();
+                idxFile[SwordConstants.TESTAMENT_OLD] = new File(otAllButLast + SUFFIX_INDEX);
+                textFile[SwordConstants.TESTAMENT_OLD] = new File(otAllButLast + SUFFIX_TEXT);
+                compFile[SwordConstants.TESTAMENT_OLD] = new File(otAllButLast + SUFFIX_COMP);
+
+                String ntAllButLast = NetUtil.lengthenURI(path, File.separator + SwordConstants.FILE_NT + '.' + blockType.getIndicator() + SUFFIX_PART1)
+                        .getPath();
+                idxFile[SwordConstants.TESTAMENT_NEW] = new File(ntAllButLast + SUFFIX_INDEX);
+                textFile[SwordConstants.TESTAMENT_NEW] = new File(ntAllButLast + SUFFIX_TEXT);
+                compFile[SwordConstants.TESTAMENT_NEW] = new File(ntAllButLast + SUFFIX_COMP);
+            }
+        } catch (BookException e) {
+            idxFile[SwordConstants.TESTAMENT_OLD] = null;
+            textFile[SwordConstants.TESTAMENT_OLD] = null;
+            compFile[SwordConstants.TESTAMENT_OLD] = null;
+
+            idxFile[SwordConstants.TESTAMENT_NEW] = null;
+            textFile[SwordConstants.TESTAMENT_NEW] = null;
+            compFile[SwordConstants.TESTAMENT_NEW] = null;
+
+            return;
+        }
+
+        if (idxFile[SwordConstants.TESTAMENT_OLD].canRead()) {
+            try {
+                idxRaf[SwordConstants.TESTAMENT_OLD] = new RandomAccessFile(idxFile[SwordConstants.TESTAMENT_OLD], FileUtil.MODE_READ);
+                textRaf[SwordConstants.TESTAMENT_OLD] = new RandomAccessFile(textFile[SwordConstants.TESTAMENT_OLD], FileUtil.MODE_READ);
+                compRaf[SwordConstants.TESTAMENT_OLD] = new RandomAccessFile(compFile[SwordConstants.TESTAMENT_OLD], FileUtil.MODE_READ);
+            } catch (FileNotFoundException ex) {
+                assert false : ex;
+                log.error("Could not open OT", ex);
+                idxRaf[SwordConstants.TESTAMENT_OLD] = null;
+                textRaf[SwordConstants.TESTAMENT_OLD] = null;
+                compRaf[SwordConstants.TESTAMENT_OLD] = null;
+            }
+        }
+
+        if (idxFile[SwordConstants.TESTAMENT_NEW].canRead()) {
+            try {
+                idxRaf[SwordConstants.TESTAMENT_NEW] = new RandomAccessFile(idxFile[SwordConstants.TESTAMENT_NEW], FileUtil.MODE_READ);
+                textRaf[SwordConstants.TESTAMENT_NEW] = new RandomAccessFile(textFile[SwordConstants.TESTAMENT_NEW], FileUtil.MODE_READ);
+                compRaf[SwordConstants.TESTAMENT_NEW] = new RandomAccessFile(compFile[SwordConstants.TESTAMENT_NEW], FileUtil.MODE_READ);
+            } catch (FileNotFoundException ex) {
+                assert false : ex;
+                log.error("Could not open NT", ex);
+                idxRaf[SwordConstants.TESTAMENT_NEW] = null;
+                textRaf[SwordConstants.TESTAMENT_NEW] = null;
+                compRaf[SwordConstants.TESTAMENT_NEW] = null;
+            }
+        }
+
+        //MJD START - map the small index files once per activation
+        if (isMemoryMapIndexes) {
+            if (compRaf[SwordConstants.TESTAMENT_OLD] != null) {
+                mapIndexes(SwordConstants.TESTAMENT_OLD);
+            }
+            if (compRaf[SwordConstants.TESTAMENT_NEW] != null) {
+                mapIndexes(SwordConstants.TESTAMENT_NEW);
+            }
+        }
+        if (isUseVerseOffsetTable) {
+            openVerseOffsetTable();
+        }
+        //MJD END
+
+        active = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.crosswire.common.activate.Activatable#deactivate(org.crosswire.common
+     * .activate.Lock)
+     */
+    public final void deactivate(Lock lock) {
+        if (idxRaf[SwordConstants.TESTAMENT_NEW] != null) {
+            try {
+                idxRaf[SwordConstants.TESTAMENT_NEW].close();
+                textRaf[SwordConstants.TESTAMENT_NEW].close();
+                compRaf[SwordConstants.TESTAMENT_NEW].close();
+            } catch (IOException ex) {
+                log.error("failed to close nt files", ex);
+            } finally {
+                idxRaf[SwordConstants.TESTAMENT_NEW] = null;
+                textRaf[SwordConstants.TESTAMENT_NEW] = null;
+                compRaf[SwordConstants.TESTAMENT_NEW] = null;
+            }
+        }
+
+        if (idxRaf[SwordConstants.TESTAMENT_OLD] != null) {
+            try {
+                idxRaf[SwordConstants.TESTAMENT_OLD].close();
+                textRaf[SwordConstants.TESTAMENT_OLD].close();
+                compRaf[SwordConstants.TESTAMENT_OLD].close();
+            } catch (IOException ex) {
+                log.error("failed to close ot files", ex);
+            } finally {
+                idxRaf[SwordConstants.TESTAMENT_OLD] = null;
+                textRaf[SwordConstants.TESTAMENT_OLD] = null;
+                compRaf[SwordConstants.TESTAMENT_OLD] = null;
+            }
+        }
+
+        //MJD START - free the memory used by uncompressed blocks and mapped indexes
+        blockCache.clear();
+        compMapped[SwordConstants.TESTAMENT_OLD] = null;
+        idxMapped[SwordConstants.TESTAMENT_OLD] = null;
+        compMapped[SwordConstants.TESTAMENT_NEW] = null;
+        idxMapped[SwordConstants.TESTAMENT_NEW] = null;
+        synchronized (verseOffsetTableLock) {
+            // a table being built for this activation is not used
+            activationCount++;
+            verseOffsets = null;
+        }
+        //MJD END
+
+        active = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.crosswire.jsword.passage.Key#contains(org.crosswire.jsword.passage
+     * .Key)
+     */
+    @Override
+    public boolean contains(Key key) {
+        checkActive();
+        try {
+            DataPolice.setKey(key);
+            Verse verse = KeyUtil.getVerse(key);
+
+            try {
+                int testament = SwordConstants.getTestament(verse);
+
+                // If Bible does not contain the desired testament, then false
+                if (compRaf[testament] == null) {
+                    return false;
+                }
+
+                //MJD START - use memory mapped index if available
+                int[] verseEntry = new int[3];
+                if (!readVerseEntry(verse, testament, verseEntry)) {
+                    return false;
+                }
+
+                return verseEntry[2] > 0;
+                //MJD END
+
+            } catch (IOException e) {
+                return false;
+            }
+        } finally {
+            DataPolice.setKey(null);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.crosswire.jsword.book.sword.AbstractBackend#getRawText(org.crosswire
+     * .jsword.passage.Key, java.lang.String)
+     */
+    @Override
+    public String getRawText(Key key) throws BookException {
+        //MJD START - share block lookup with getRawVerseBlock
+        String charset = getBookMetaData().getBookCharset();
+
+        int[] verseLocation = new int[2];
+        byte[] uncompressed = getRawVerseBlock(key, verseLocation);
+        if (uncompressed == null) {
+            return "";
+        }
+
+        // and cut out the required section.
+        byte[] chopped = new byte[verseLocation[1]];
+        System.arraycopy(uncompressed, verseLocation[0], chopped, 0, verseLocation[1]);
+
+        return SwordUtil.decode(key.getName(), chopped, charset);
+    }
+
+    /**
+     * Find the uncompressed block containing a verse without copying or
+     * decoding the verse text. A block is never altered once it has been
+     * uncompressed so the returned array may be read after later calls, but
+     * calls must not overlap because the files and block cache are shared.
+     * 
+     * @param key
+     *            the verse to find
+     * @param verseLocation
+     *            receives the offset of the verse in the block at [0] and the
+     *            length of the verse at [1]
+     * @return the uncompressed block or null if the verse is not in the book
+     */
+    public byte[] getRawVerseBlock(Key key, int[] verseLocation) throws BookException {
+        //MJD END
+        checkActive();
+        try {
+            DataPolice.setKey(key);
+
+            SwordBookMetaData sbmd = getBookMetaData();
+            String compressType = (String) sbmd.getProperty(ConfigEntryType.COMPRESS_TYPE);
+
+            Verse verse = KeyUtil.getVerse(key);
+
+            try {
+                int testament = SwordConstants.getTestament(verse);
+
+                // If Bible does not contain the desired testament, return
+                // nothing.
+                if (compRaf[testament] == null) {
+                    return null;
+                }
+
+                //MJD START - use memory mapped index if available
+                int[] entry = new int[3];
+                if (!readVerseEntry(verse, testament, entry)) {
+                    return null;
+                }
+                long blockNum = entry[0];
+                int verseStart = entry[1];
+                int verseSize = entry[2];
+                //MJD END
+
+                // Can we get the data from the cache
+                //MJD START - cache many blocks rather than just the last one
+                byte[] uncompressed = blockCache.get(testament, blockNum);
+                if (uncompressed == null) {
+                //MJD END
+                    // Then seek using this index into the idx file
+                    //MJD START - use memory mapped index if available
+                    if (!readBlockEntry(testament, blockNum, entry)) {
+                        return null;
+                    }
+
+                    int blockStart = entry[0];
+                    int blockSize = entry[1];
+                    int uncompressedSize = entry[2];
+                    //MJD END
+
+                    // Read from the data file.
+                    byte[] data = SwordUtil.readRAF(textRaf[testament], blockStart, blockSize);
+
+                    decipher(data);
+
+                    uncompressed = CompressorType.fromString(compressType).getCompressor(data).uncompress(uncompressedSize).toByteArray();
+
+                    // cache the uncompressed data for next time
+                    //MJD START
+                    blockCache.put(testament, blockNum, uncompressed);
+                    //MJD END
+                }
+
+                //MJD START - return the location of the verse instead of a copy
+                verseLocation[0] = verseStart;
+                verseLocation[1] = verseSize;
+                return uncompressed;
+                //MJD END
+            } catch (IOException e) {
+                // TRANSLATOR: Common error condition: The file could not be read. There can be many reasons.
+                // {0} is a placeholder for the file.
+                throw new BookException(JSMsg.gettext("Error reading {0}", verse.getName()), e);
+            }
+        } finally {
+            DataPolice.setKey(key);
+        }
+    }
+
+    //MJD START
+    /**
+     * Find where a verse is stored.
+     * 
+     * @param entry
+     *            receives the block number at [0], the verse start in the
+     *            uncompressed block at [1] and the verse size at [2]
+     * @return false if the book does not contain the verse
+     */
+    private boolean readVerseEntry(Verse verse, int testament, int[] entry) throws IOException {
+        if (verseOffsets != null) {
+            return verseOffsets.getEntry(verse.getOrdinal(), entry);
+        }
+
+        long pos = (long) SwordConstants.getIndex(verse) * COMP_ENTRY_SIZE;
+        ByteBuffer compMap = compMapped[testament];
+        if (compMap != null) {
+            // Some Bibles have different versification, so the requested
+            // verse may not exist.
+            if (pos + COMP_ENTRY_SIZE > compMap.limit()) {
+                return false;
+            }
+            entry[0] = compMap.getInt((int) pos);
+            entry[1] = compMap.getInt((int) pos + 4);
+            entry[2] = compMap.getShort((int) pos + 8) & 0xFFFF;
+            return true;
+        }
+
+        // 10 because the index is 10 bytes long for each verse
+        byte[] temp = SwordUtil.readRAF(compRaf[testament], pos, COMP_ENTRY_SIZE);
+
+        // If the Bible does not contain the desired verse, return
+        // nothing.
+        // Some Bibles have different versification, so the requested
+        // verse
+        // may not exist.
+        if (temp == null || temp.length == 0) {
+            return false;
+        }
+
+        // The data is little endian - extract the blockNum, verseStart
+        // and
+        // verseSize
+        entry[0] = SwordUtil.decodeLittleEndian32(temp, 0);
+        entry[1] = SwordUtil.decodeLittleEndian32(temp, 4);
+        entry[2] = SwordUtil.decodeLittleEndian16(temp, 8);
+        return true;
+    }
+
+    /**
+     * Find where a compressed block is stored.
+     * 
+     * @param entry
+     *            receives the block start in the text file at [0], the
+     *            compressed block size at [1] and the uncompressed size at [2]
+     * @return false if the block does not exist
+     */
+    private boolean readBlockEntry(int testament, long blockNum, int[] entry) throws IOException {
+        long pos = blockNum * IDX_ENTRY_SIZE;
+        ByteBuffer idxMap = idxMapped[testament];
+        if (idxMap != null) {
+            if (pos + IDX_ENTRY_SIZE > idxMap.limit()) {
+                return false;
+            }
+            entry[0] = idxMap.getInt((int) pos);
+            entry[1] = idxMap.getInt((int) pos + 4);
+            entry[2] = idxMap.getInt((int) pos + 8);
+            return true;
+        }
+
+        byte[] temp = SwordUtil.readRAF(idxRaf[testament], pos, IDX_ENTRY_SIZE);
+        if (temp == null || temp.length == 0) {
+            return false;
+        }
+
+        entry[0] = SwordUtil.decodeLittleEndian32(temp, 0);
+        entry[1] = SwordUtil.decodeLittleEndian32(temp, 4);
+        entry[2] = SwordUtil.decodeLittleEndian32(temp, 8);
+        return true;
+    }
+
+    /**
+     * Map the small comp and idx files into memory so verse lookups need no
+     * file seeks or reads. If mapping fails the files are read as before.
+     */
+    private void mapIndexes(int testament) {
+        try {
+            compMapped[testament] = mapFile(compRaf[testament]);
+            idxMapped[testament] = mapFile(idxRaf[testament]);
+        } catch (IOException ex) {
+            log.warn("Could not memory map index files", ex);
+            compMapped[testament] = null;
+            idxMapped[testament] = null;
+        }
+    }
+
+    /**
+     * Open the precompiled verse offset table. If this is the first use of
+     * the module since it was installed or updated, or the table is out of
+     * date, it is built in the background and until then verses are found
+     * using the comp files.
+     */
+    private void openVerseOffsetTable() {
+        final File file = new File(compFile[SwordConstants.TESTAMENT_OLD].getParentFile(), VerseOffsetTable.FILE_NAME);
+        final String moduleStamp = getModuleStamp();
+        VerseOffsetTable table = VerseOffsetTable.load(file, moduleStamp);
+        synchronized (verseOffsetTableLock) {
+            verseOffsets = table;
+            if (table != null) {
+                return;
+            }
+
+            final int activation = activationCount;
+            final File[] compFiles = compFile.clone();
+            verseOffsetTableBuild = verseOffsetTableBuilder.submit(new Runnable() {
+                public void run() {
+                    synchronized (verseOffsetTableLock) {
+                        // the book was deactivated before its turn came
+                        if (activation != activationCount) {
+                            return;
+                        }
+                    }
+                    try {
+                        log.info("Building verse offset table for " + getBookMetaData().getInitials());
+                        buildVerseOffsetTable(file, moduleStamp, compFiles);
+                        VerseOffsetTable builtTable = VerseOffsetTable.load(file, moduleStamp);
+                        synchronized (verseOffsetTableLock) {
+                            if (activation == activationCount) {
+                                verseOffsets = builtTable;
+                            }
+                        }
+                    } catch (Exception e) {
+                        log.warn("Verse offset table not available", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Write the verse offset table using a copy of each comp file, which is
+     * small, so the files being used to read verses are not touched.
+     */
+    private static void buildVerseOffsetTable(File file, String moduleStamp, File[] compFiles) throws Exception {
+        byte[][] comps = new byte[compFiles.length][];
+        for (int testament = SwordConstants.TESTAMENT_OLD; testament <= SwordConstants.TESTAMENT_NEW; testament++) {
+            if (compFiles[testament].canRead()) {
+                RandomAccessFile raf = new RandomAccessFile(compFiles[testament], FileUtil.MODE_READ);
+                try {
+                    comps[testament] = SwordUtil.readRAF(raf, 0, (int) raf.length());
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+
+        int numVerses = BibleInfo.versesInBible();
+        int[] blockNums = new int[numVerses + 1];
+        int[] verseStarts = new int[numVerses + 1];
+        int[] verseSizes = new int[numVerses + 1];
+
+        blockNums[0] = VerseOffsetTable.MISSING;
+        for (int ordinal = 1; ordinal <= numVerses; ordinal++) {
+            Verse verse = BibleInfo.decodeOrdinal(ordinal);
+            byte[] comp = comps[SwordConstants.getTestament(verse)];
+            int pos = SwordConstants.getIndex(verse) * COMP_ENTRY_SIZE;
+            if (comp != null && pos + COMP_ENTRY_SIZE <= comp.length) {
+                blockNums[ordinal] = SwordUtil.decodeLittleEndian32(comp, pos);
+                verseStarts[ordinal] = SwordUtil.decodeLittleEndian32(comp, pos + 4);
+                verseSizes[ordinal] = SwordUtil.decodeLittleEndian16(comp, pos + 8);
+            } else {
+                blockNums[ordinal] = VerseOffsetTable.MISSING;
+            }
+        }
+
+        VerseOffsetTable.write(file, moduleStamp, blockNums, verseStarts, verseSizes);
+    }
+
+    /**
+     * Wait for a verse offset table being built in the background e.g. in
+     * tests
+     *
+     * @return true if the table is in use
+     */
+    boolean awaitVerseOffsetTable(long timeoutMillis) throws Exception {
+        Future<?> build;
+        synchronized (verseOffsetTableLock) {
+            build = verseOffsetTableBuild;
+        }
+        if (build != null) {
+            build.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return verseOffsets != null;
+    }
+
+    /**
+     * Identify the installed module so the verse offset table is rebuilt if
+     * the module is replaced
+     */
+    private String getModuleStamp() {
+        StringBuilder stamp = new StringBuilder();
+        stamp.append(getBookMetaData().getProperty(ConfigEntryType.VERSION));
+        for (int testament = SwordConstants.TESTAMENT_OLD; testament <= SwordConstants.TESTAMENT_NEW; testament++) {
+            File file = compFile[testament];
+            stamp.append('|').append(file.length()).append('|').append(file.lastModified());
+        }
+        return stamp.toString();
+    }
+
+    private static ByteBuffer mapFile(RandomAccessFile raf) throws IOException {
+        // absolute gets do not change the buffer so it can be shared by threads
+        return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Choose whether books activated in future memory map their comp and idx
+     * files
+     */
+    public static void setMemoryMapIndexes(boolean isMemoryMapIndexes) {
+        ZVerseBackend.isMemoryMapIndexes = isMemoryMapIndexes;
+    }
+
+    /**
+     * Choose whether books activated in future find verses using the
+     * precompiled verse offset table
+     */
+    public static void setUseVerseOffsetTable(boolean isUseVerseOffsetTable) {
+        ZVerseBackend.isUseVerseOffsetTable = isUseVerseOffsetTable;
+    }
+
+    /**
+     * Bulk read of all the verses in a key, such as a chapter. Each block is
+     * uncompressed at most once, and callers only need to lock the book once
+     * instead of once per verse.
+     * 
+     * @param key
+     *            the verses to read
+     * @param verseLocations
+     *            receives the offset of each verse in its block at [2*i] and
+     *            the length of the verse at [2*i+1], in key order. Must have at
+     *            least 2*key.getCardinality() elements.
+     * @return the uncompressed block for each verse in key order, or null
+     *         where the verse is not in the book
+     */
+    public byte[][] getRawVerseBlocks(Key key, int[] verseLocations) throws BookException {
+        byte[][] verseBlocks = new byte[key.getCardinality()][];
+        int[] verseLocation = new int[2];
+        int i = 0;
+        for (Key verse : key) {
+            verseBlocks[i] = getRawVerseBlock(verse, verseLocation);
+            verseLocations[2 * i] = verseLocation[0];
+            verseLocations[2 * i + 1] = verseBlocks[i] == null ? 0 : verseLocation[1];
+            i++;
+        }
+        return verseBlocks;
+    }
+
+    /**
+     * @return the number of verse lookups which found their block already
+     *         uncompressed
+     */
+    public long getBlockCacheHits() {
+        return blockCache.getHits();
+    }
+
+    /**
+     * @return the number of verse lookups which had to read and uncompress a
+     *         block
+     */
+    public long getBlockCacheMisses() {
+        return blockCache.getMisses();
+    }
+    //MJD END
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#setAliasKey(org.crosswire.jsword.passage.Key, org.crosswire.jsword.passage.Key)
+     */
+    @Override
+    public void setAliasKey(Key alias, Key source) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /* (non-Javadoc)
+     * @see org.crosswire.jsword.book.sword.AbstractBackend#setRawText(org.crosswire.jsword.passage.Key, java.lang.String)
+     */
+    @Override
+    public void setRawText(Key key, String text) throws BookException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Helper method so we can quickly activate ourselves on access
+     */
+    protected final void checkActive() {
+        if (!active) {
+            Activator.activate(this);
+        }
+    }
+
+    /**
+     * Whether the book is blocked by Book, Chapter or Verse.
+     */
+    private BlockType blockType;
+
+    //MJD START
+    /**
+     * Recently uncompressed blocks. Chapter blocks are a few kb but book
+     * blocks can be much larger.
+     */
+    private UncompressedBlockCache blockCache = new UncompressedBlockCache(BLOCK_CACHE_MAX_BYTES);
+
+    private static final int BLOCK_CACHE_MAX_BYTES = 512 * 1024;
+
+    /**
+     * Memory mapped comp files, or null if the file is read instead
+     */
+    private ByteBuffer[] compMapped = new ByteBuffer[3];
+
+    /**
+     * Memory mapped idx files, or null if the file is read instead
+     */
+    private ByteBuffer[] idxMapped = new ByteBuffer[3];
+
+    /**
+     * Precompiled block, start and size of every verse, or null if not
+     * available
+     */
+    private volatile VerseOffsetTable verseOffsets;
+
+    /**
+     * Guards publishing a table built in the background against the book
+     * being deactivated meanwhile
+     */
+    private final Object verseOffsetTableLock = new Object();
+
+    private int activationCount;
+
+    private Future<?> verseOffsetTableBuild;
+
+    /**
+     * Tables are built one at a time at low priority so activating a book
+     * never waits for a table
+     */
+    private static final ExecutorService verseOffsetTableBuilder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "VerseOffsetTableBuilder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private static boolean isMemoryMapIndexes = true;
+
+    private static boolean isUseVerseOffsetTable = true;
+    //MJD END
+
+    /**
+     * Are we active
+     */
+    private boolean active;
+
+    /**
+     * The log stream
+     */
+    private static final Logger log = Logger.getLogger(ZVerseBackend.class);
+
+    /**
+     * The array of index random access files
+     */
+    private RandomAccessFile[] idxRaf = new RandomAccessFile[3];
+
+    /**
+     * The array of data random access files
+     */
+    private RandomAccessFile[] textRaf = new RandomAccessFile[3];
+
+    /**
+     * The array of compressed random access files
+     */
+    private RandomAccessFile[] compRaf = new RandomAccessFile[3];
+
+    /**
+     * The array of index random access files
+     */
+    private File[] idxFile = new File[3];
+
+    /**
+     * The array of data random access files
+     */
+    private File[] textFile = new File[3];
+
+    /**
+     * The array of compressed random access files
+     */
+    private File[] compFile = new File[3];
+
+    /**
+     * How many bytes in the comp index?
+     */
+    private static final int COMP_ENTRY_SIZE = 10;
+
+    /**
+     * How many bytes in the idx index?
+     */
+    private static final int IDX_ENTRY_SIZE = 12;
+}